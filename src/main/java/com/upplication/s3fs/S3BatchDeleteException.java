@@ -0,0 +1,38 @@
+package com.upplication.s3fs;
+
+import java.nio.file.FileSystemException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Some objects could not be deleted by a batched delete, see {@link S3FileSystemProvider#deleteRecursive(java.nio.file.Path)}
+ * and {@link S3FileSystemProvider#moveRecursive(java.nio.file.Path, java.nio.file.Path, S3ProgressListener, java.nio.file.CopyOption...)}.
+ * The rest of the objects were deleted.
+ */
+public class S3BatchDeleteException extends FileSystemException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, String> failures;
+
+    /**
+     * @param file     String the path deleted
+     * @param failures Map with the key of every object not deleted and the reason (code and message of S3)
+     */
+    public S3BatchDeleteException(String file, Map<String, String> failures) {
+        super(file, null, failures.size() + " objects could not be deleted, the first one " + first(failures));
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    private static String first(Map<String, String> failures) {
+        Map.Entry<String, String> first = failures.entrySet().iterator().next();
+        return first.getKey() + ": " + first.getValue();
+    }
+
+    /**
+     * @return Map with the key of every object not deleted and the reason, in key order
+     */
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,369 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import com.google.common.collect.AbstractIterator;
+import com.upplication.s3fs.attribute.S3BasicFileAttributeView;
+import com.upplication.s3fs.util.ParallelTasks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import static java.lang.String.format;
+
+/**
+ * Uploads and downloads of many files: the files are transferred at the same time, and the big ones by parts
+ * at the same time too. All the requests of a transfer, of any file, share the same budget of
+ * {@link S3FileSystem#getMaxConcurrentRequests()} requests at the same time, and so of memory, because every
+ * request streams from or to its file with a fixed size buffer.
+ *
+ * @see S3FileSystemProvider#uploadRecursive(Path, Path, S3ProgressListener)
+ * @see S3FileSystemProvider#downloadRecursive(Path, Path, S3ProgressListener)
+ */
+class S3BulkTransfer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final S3FileSystem fileSystem;
+    private final AmazonS3 client;
+    private final Semaphore requests;
+    private final S3ProgressListener listener;
+    private final long started = System.currentTimeMillis();
+    private long objects;
+    private long bytes;
+
+    S3BulkTransfer(S3FileSystem fileSystem, S3ProgressListener listener) {
+        this.fileSystem = fileSystem;
+        this.client = fileSystem.getClient();
+        // fair: the requests of the files started first go first
+        this.requests = new Semaphore(fileSystem.getMaxConcurrentRequests(), true);
+        this.listener = listener;
+    }
+
+    /**
+     * Upload the files of a local directory and its sub directories, and a marker for every empty directory
+     *
+     * @param localDir   Path of the default fileSystem
+     * @param bucketName String
+     * @param prefix     String key of the target directory, empty or ending with slash
+     */
+    S3TransferSummary upload(Path localDir, final String bucketName, final String prefix) throws IOException {
+        Map<Path, String> keys = localKeys(localDir, prefix);
+        ParallelTasks.forEach(fileSystem.getExecutor(), fileSystem.getMaxConcurrentRequests(), keys.entrySet().iterator(),
+                new ParallelTasks.Task<Map.Entry<Path, String>>() {
+                    @Override
+                    public void run(Map.Entry<Path, String> file) throws Exception {
+                        if (file.getValue().endsWith(S3Path.PATH_SEPARATOR))
+                            uploadMarker(bucketName, file.getValue());
+                        else
+                            uploadFile(file.getKey(), bucketName, file.getValue());
+                    }
+                });
+        return summary();
+    }
+
+    /**
+     * @param localDir Path of the default fileSystem
+     * @param prefix   String key of the target directory, empty or ending with slash
+     * @return Map with the key of every regular file and every empty directory (ending with slash) under the local directory
+     */
+    static Map<Path, String> localKeys(Path localDir, final String prefix) throws IOException {
+        final Path root = localDir.toAbsolutePath();
+        final Map<Path, String> keys = new LinkedHashMap<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root)) {
+                    try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                        if (!children.iterator().hasNext())
+                            keys.put(dir, key(root, dir, prefix) + S3Path.PATH_SEPARATOR);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile())
+                    keys.put(file, key(root, file, prefix));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * @return String key of a local file or directory (without the ending slash) under the target prefix
+     */
+    static String key(Path root, Path local, String prefix) {
+        StringBuilder key = new StringBuilder(prefix);
+        for (Path name : root.relativize(local)) {
+            if (key.length() > prefix.length())
+                key.append(S3Path.PATH_SEPARATOR);
+            key.append(name.toString());
+        }
+        return key.toString();
+    }
+
+    void uploadMarker(String bucketName, String key) throws InterruptedException {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(0);
+        requests.acquire();
+        try {
+            client.putObject(bucketName, key, new ByteArrayInputStream(new byte[0]), metadata);
+        } finally {
+            requests.release();
+        }
+        done(1, 0);
+    }
+
+    /**
+     * Upload a local file with one request, or by parts of {@link S3FileSystem#getUploadPartSize()} at the same time
+     * if it is bigger. The last modified time of the file is stored in the metadata, see {@link S3BasicFileAttributeView#LABKEY_LAST_MODIFIED}
+     */
+    void uploadFile(final Path file, final String bucketName, final String key) throws Exception {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final long size = attributes.size();
+        final long partSize = fileSystem.getUploadPartSize();
+        ObjectMetadata metadata = S3BasicFileAttributeView.setMetadataTimes(new ObjectMetadata(), attributes.lastModifiedTime(), null, attributes.lastModifiedTime());
+        if (size <= partSize) {
+            requests.acquire();
+            try {
+                client.putObject(new PutObjectRequest(bucketName, key, file.toFile()).withMetadata(metadata));
+            } finally {
+                requests.release();
+            }
+            done(1, size);
+            return;
+        }
+
+        final String uploadId;
+        requests.acquire();
+        try {
+            uploadId = client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key, metadata)).getUploadId();
+        } finally {
+            requests.release();
+        }
+        final List<PartETag> eTags = Collections.synchronizedList(new ArrayList<PartETag>());
+        try {
+            ParallelTasks.forEach(fileSystem.getExecutor(), fileSystem.getMaxConcurrentRequests(), ranges(size, partSize),
+                    new ParallelTasks.Task<Long>() {
+                        @Override
+                        public void run(Long offset) throws InterruptedException {
+                            long length = Math.min(partSize, size - offset);
+                            UploadPartRequest request = new UploadPartRequest().withBucketName(bucketName).withKey(key)
+                                    .withUploadId(uploadId).withPartNumber((int) (offset / partSize) + 1)
+                                    .withFile(file.toFile()).withFileOffset(offset).withPartSize(length);
+                            requests.acquire();
+                            try {
+                                eTags.add(client.uploadPart(request).getPartETag());
+                            } finally {
+                                requests.release();
+                            }
+                            done(0, length);
+                        }
+                    });
+            List<PartETag> sorted = new ArrayList<>(eTags);
+            Collections.sort(sorted, new Comparator<PartETag>() {
+                @Override
+                public int compare(PartETag first, PartETag second) {
+                    return Integer.compare(first.getPartNumber(), second.getPartNumber());
+                }
+            });
+            requests.acquire();
+            try {
+                client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, sorted));
+            } finally {
+                requests.release();
+            }
+        } catch (Exception e) {
+            // the parts uploaded are kept (and charged) until the upload is aborted
+            try {
+                client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+            } catch (RuntimeException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+        done(1, 0);
+    }
+
+    /**
+     * Download the objects of a listing to the same relative paths of a local directory, creating the directories
+     *
+     * @param source   S3Path of the directory listed
+     * @param prefix   String key of the directory listed, empty or ending with slash
+     * @param listing  Iterator with the objects under the prefix
+     * @param localDir Path of the default fileSystem
+     */
+    S3TransferSummary download(final S3Path source, final String prefix, Iterator<S3ObjectSummary> listing, Path localDir) throws IOException {
+        final Path root = localDir.toAbsolutePath().normalize();
+        ParallelTasks.forEach(fileSystem.getExecutor(), fileSystem.getMaxConcurrentRequests(), listing,
+                new ParallelTasks.Task<S3ObjectSummary>() {
+                    @Override
+                    public void run(S3ObjectSummary summary) throws Exception {
+                        String key = summary.getKey();
+                        Path local = localPath(root, prefix, key);
+                        if (key.endsWith(S3Path.PATH_SEPARATOR)) {
+                            Files.createDirectories(local);
+                            done(1, 0);
+                            return;
+                        }
+                        Files.createDirectories(local.getParent());
+                        downloadFile(S3Path.forKey(source.getFileStore(), key), summary.getSize(), summary.getETag(), null, local);
+                    }
+                });
+        return summary();
+    }
+
+    /**
+     * @param root   Path absolute and normalized of the local directory
+     * @param prefix String key of the directory listed, empty or ending with slash
+     * @param key    String key under the prefix
+     * @return Path of the key under the local directory
+     * @throws IOException if the key would be out of the local directory (with ..)
+     */
+    static Path localPath(Path root, String prefix, String key) throws IOException {
+        Path local = root;
+        for (String name : key.substring(prefix.length()).split(S3Path.PATH_SEPARATOR)) {
+            if (!name.isEmpty())
+                local = local.resolve(name);
+        }
+        local = local.normalize();
+        if (!local.startsWith(root))
+            throw new IOException(format("the key %s is out of the directory %s", key, root));
+        return local;
+    }
+
+    /**
+     * Get the metadata of an object within the budget of requests
+     */
+    ObjectMetadata getObjectMetadata(String bucketName, String key) throws InterruptedException {
+        requests.acquire();
+        try {
+            return client.getObjectMetadata(bucketName, key);
+        } finally {
+            requests.release();
+        }
+    }
+
+    /**
+     * Download an object with ranged requests of {@link S3FileSystem#getDownloadPartSize()} bytes at the same time,
+     * every one writing its range at its position of a temp file next to the target. The temp file is renamed to
+     * the target once complete, so the target never has a partial content. All the ranges are of the version of
+     * the object with the given ETag.
+     *
+     * @param source       S3Path of the object
+     * @param size         long size of the object
+     * @param eTag         String ETag of the object, null to not check it
+     * @param lastModified FileTime for the file, null to keep the time of the download
+     * @param target       Path of the default fileSystem, replaced if it exists
+     */
+    void downloadFile(final S3Path source, final long size, final String eTag, FileTime lastModified, Path target) throws IOException {
+        final long partSize = fileSystem.getDownloadPartSize();
+        Path absoluteTarget = target.toAbsolutePath();
+        Path temp = Files.createTempFile(absoluteTarget.getParent(), "." + absoluteTarget.getFileName(), ".part");
+        try {
+            try (final FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ParallelTasks.forEach(fileSystem.getExecutor(), fileSystem.getMaxConcurrentRequests(), ranges(size, partSize),
+                        new ParallelTasks.Task<Long>() {
+                            @Override
+                            public void run(Long start) throws Exception {
+                                long end = Math.min(start + partSize, size) - 1;
+                                requests.acquire();
+                                try {
+                                    downloadRange(source, eTag, start, end, channel);
+                                } finally {
+                                    requests.release();
+                                }
+                                done(0, end + 1 - start);
+                            }
+                        });
+            }
+            if (lastModified != null)
+                Files.setLastModifiedTime(temp, lastModified);
+            try {
+                Files.move(temp, absoluteTarget, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, absoluteTarget, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        done(1, 0);
+    }
+
+    /**
+     * Download the bytes from start to end (both included) of an object and write them at the same position of the channel
+     */
+    private void downloadRange(S3Path source, String eTag, long start, long end, FileChannel channel) throws IOException {
+        GetObjectRequest request = new GetObjectRequest(source.getFileStore().name(), source.getKey()).withRange(start, end);
+        if (eTag != null)
+            request.withMatchingETagConstraint(eTag);
+        S3Object object;
+        try {
+            object = client.getObject(request);
+        } catch (AmazonS3Exception e) {
+            S3FileSystemProvider.translateAndThrowS3Exception(e, source);
+            return;
+        }
+        // the client returns null when the constraint is not met
+        if (object == null)
+            throw new IOException(format("%s changed during the download", source));
+        try (InputStream in = object.getObjectContent()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = start;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                while (bytes.hasRemaining()) {
+                    position += channel.write(bytes, position);
+                }
+            }
+            if (position != end + 1)
+                throw new IOException(format("%s changed during the download: %d bytes instead of %d from %d", source, position - start, end + 1 - start, start));
+        }
+    }
+
+    /**
+     * @return Iterator with the start of every range of partSize bytes, none if size is 0
+     */
+    private static Iterator<Long> ranges(final long size, final long partSize) {
+        return new AbstractIterator<Long>() {
+            private long next = 0;
+
+            @Override
+            protected Long computeNext() {
+                if (next >= size)
+                    return endOfData();
+                long start = next;
+                next += partSize;
+                return start;
+            }
+        };
+    }
+
+    private synchronized void done(long objectsDone, long bytesDone) {
+        objects += objectsDone;
+        bytes += bytesDone;
+        listener.progress(objects, bytes);
+    }
+
+    synchronized S3TransferSummary summary() {
+        return new S3TransferSummary(objects, bytes, System.currentTimeMillis() - started);
+    }
+}
@@ -0,0 +1,51 @@
+package com.upplication.s3fs;
+
+import java.nio.file.Path;
+
+/**
+ * Total size and number of the objects under a directory, at any depth, computed from a listing.
+ * The directory markers are not counted.
+ *
+ * @see S3FileSystemProvider#getDiskUsage(Path, int)
+ */
+public class S3DiskUsage {
+
+    private final S3Path path;
+    private long size;
+    private long count;
+
+    S3DiskUsage(S3Path path) {
+        this.path = path;
+    }
+
+    void add(long objectSize) {
+        size += objectSize;
+        count++;
+    }
+
+    /**
+     * @return S3Path of the directory
+     */
+    public S3Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return long sum of the size of the objects, in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return long number of objects
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return path + ": " + count + " objects, " + size + " bytes";
+    }
+}
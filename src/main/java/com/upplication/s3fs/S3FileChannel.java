@@ -1,6 +1,7 @@
 package com.upplication.s3fs;
 
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.util.IOUtils;
 import org.apache.tika.Tika;
@@ -14,6 +15,7 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -28,7 +30,7 @@ public class S3FileChannel extends FileChannel {
 
     public S3FileChannel(S3Path path, Set<? extends OpenOption> options) throws IOException {
         this.path = path;
-        this.options = Collections.unmodifiableSet(new HashSet<>(options));
+        this.options = Collections.unmodifiableSet(S3OpenOption.withoutS3OpenOptions(options));
         String key = path.getKey();
         boolean exists = path.getFileSystem().provider().exists(path);
 
@@ -42,9 +44,7 @@ public class S3FileChannel extends FileChannel {
         boolean removeTempFile = true;
         try {
             if (exists) {
-                try (S3Object object = path.getFileSystem()
-                        .getClient()
-                        .getObject(path.getFileStore().getBucket().getName(), key)) {
+                try (S3Object object = S3OpenOption.getObject(path, S3OpenOption.find(options))) {
                     Files.copy(object.getObjectContent(), tempFile, StandardCopyOption.REPLACE_EXISTING);
                 }
             }
@@ -163,7 +163,9 @@ public class S3FileChannel extends FileChannel {
 
             String bucket = path.getFileStore().name();
             String key = path.getKey();
-            path.getFileSystem().getClient().putObject(bucket, key, stream, metadata);
+            PutObjectResult result = path.getFileSystem().getClient().putObject(bucket, key, stream, metadata);
+            path.getFileSystem().getMetadataCache().written(path, result != null ? result.getETag() : null,
+                    metadata.getContentLength(), new Date());
         }
     }
 }
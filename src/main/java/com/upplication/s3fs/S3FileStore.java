@@ -5,7 +5,6 @@ import java.nio.file.FileStore;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.attribute.FileStoreAttributeView;
 
-import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.Bucket;
 import com.amazonaws.services.s3.model.Owner;
 import com.google.common.collect.ImmutableList;
@@ -84,18 +83,20 @@ public class S3FileStore extends FileStore implements Comparable<S3FileStore> {
     }
 
     private Bucket getBucket(String bucketName) {
-        for (Bucket buck : getClient().listBuckets())
-            if (buck.getName().equals(bucketName))
-                return buck;
-        return null;
+        return fileSystem.getBucketCache().getBucket(bucketName);
     }
 
-    public S3Path getRootDirectory() {
-        return new S3Path(fileSystem, "/" + this.name());
+    /**
+     * check if the bucket exists without listing all the buckets of the account
+     *
+     * @return true if exists
+     */
+    public boolean exists() {
+        return fileSystem.getBucketCache().exists(name);
     }
 
-    private AmazonS3 getClient() {
-        return fileSystem.getClient();
+    public S3Path getRootDirectory() {
+        return new S3Path(fileSystem, "/" + this.name());
     }
 
     public Owner getOwner() {
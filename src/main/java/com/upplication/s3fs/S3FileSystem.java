@@ -3,18 +3,32 @@ package com.upplication.s3fs;
 import static com.upplication.s3fs.S3Path.PATH_SEPARATOR;
 
 import java.io.IOException;
+import java.nio.file.ClosedFileSystemException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.NavigableSet;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.Bucket;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.upplication.s3fs.util.BucketCache;
+import com.upplication.s3fs.util.InFlightRequests;
+import com.upplication.s3fs.util.ListingEngine;
+import com.upplication.s3fs.util.ListingSnapshot;
+import com.upplication.s3fs.util.S3MetadataCache;
 
 /**
  * S3FileSystem with a concrete client configured and ready to use.
@@ -28,13 +42,57 @@ public class S3FileSystem extends FileSystem implements Comparable<S3FileSystem>
     private final AmazonS3 client;
     private final String endpoint;
     private int cache;
+    private int maxConcurrentRequests;
+    private int bulkPrefixListingThreshold;
+    private final int downloadPartSize;
+    private final int uploadPartSize;
+    private final BucketCache bucketCache;
+    private final InFlightRequests inFlightRequests = new InFlightRequests();
+    private final boolean immutableObjects;
+    private final boolean listingPrefetch;
+    private final ListingEngine s3ListingEngine;
+    private volatile ListingEngine listingEngine;
+    private final S3MetadataCache metadataCache;
+    private ExecutorService executor;
+    private boolean executorClosed;
 
     public S3FileSystem(S3FileSystemProvider provider, String key, AmazonS3 client, String endpoint) {
+        this(provider, key, client, endpoint, new Properties());
+    }
+
+    public S3FileSystem(S3FileSystemProvider provider, String key, AmazonS3 client, String endpoint, Properties props) {
         this.provider = provider;
         this.key = key;
         this.client = client;
         this.endpoint = endpoint;
         this.cache = 60000; // 1 minute cache for the s3Path
+        this.maxConcurrentRequests = getIntProperty(props, S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, 10);
+        this.bulkPrefixListingThreshold = getIntProperty(props, S3FileSystemProvider.BULK_PREFIX_LISTING_THRESHOLD, 50);
+        this.bucketCache = new BucketCache(client, getIntProperty(props, S3FileSystemProvider.BUCKET_CACHE_TTL, 300000));
+        this.immutableObjects = getBooleanProperty(props, S3FileSystemProvider.IMMUTABLE_OBJECTS, false);
+        this.listingPrefetch = getBooleanProperty(props, S3FileSystemProvider.LISTING_PREFETCH, true);
+        this.s3ListingEngine = ListingEngine.forVersion(getIntProperty(props, S3FileSystemProvider.LISTING_VERSION, 1));
+        this.listingEngine = s3ListingEngine;
+        this.downloadPartSize = getIntProperty(props, S3FileSystemProvider.DOWNLOAD_PART_SIZE, 8 * 1024 * 1024);
+        this.uploadPartSize = getIntProperty(props, S3FileSystemProvider.UPLOAD_PART_SIZE, 8 * 1024 * 1024);
+        // nothing to revalidate if the objects never change
+        this.metadataCache = new S3MetadataCache(immutableObjects ? -1 : getIntProperty(props, S3FileSystemProvider.METADATA_CACHE_TTL, 0), inFlightRequests);
+    }
+
+    private static int getIntProperty(Properties props, String key, int defaultValue) {
+        String value = props != null ? props.getProperty(key) : null;
+        if (value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer: " + value, e);
+        }
+    }
+
+    private static boolean getBooleanProperty(Properties props, String key, boolean defaultValue) {
+        String value = props != null ? props.getProperty(key) : null;
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
     }
 
     @Override
@@ -48,6 +106,13 @@ public class S3FileSystem extends FileSystem implements Comparable<S3FileSystem>
 
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            executorClosed = true;
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
         this.provider.close(this);
     }
 
@@ -78,7 +143,7 @@ public class S3FileSystem extends FileSystem implements Comparable<S3FileSystem>
     @Override
     public Iterable<FileStore> getFileStores() {
         ImmutableList.Builder<FileStore> builder = ImmutableList.builder();
-        for (Bucket bucket : client.listBuckets()) {
+        for (Bucket bucket : bucketCache.getBuckets()) {
             builder.add(new S3FileStore(this, bucket.getName()));
         }
         return builder.build();
@@ -100,7 +165,7 @@ public class S3FileSystem extends FileSystem implements Comparable<S3FileSystem>
 
     @Override
     public PathMatcher getPathMatcher(String syntaxAndPattern) {
-        throw new UnsupportedOperationException();
+        return new S3PathMatcher(syntaxAndPattern);
     }
 
     @Override
@@ -117,6 +182,81 @@ public class S3FileSystem extends FileSystem implements Comparable<S3FileSystem>
         return client;
     }
 
+    /**
+     * Buckets of the client, with their owner and creation date, cached for
+     * {@link S3FileSystemProvider#BUCKET_CACHE_TTL} milliseconds.
+     *
+     * @return BucketCache never null
+     */
+    public BucketCache getBucketCache() {
+        return bucketCache;
+    }
+
+    /**
+     * Requests running now for this fileSystem, used to join identical concurrent requests
+     *
+     * @return InFlightRequests never null
+     */
+    public InFlightRequests getInFlightRequests() {
+        return inFlightRequests;
+    }
+
+    /**
+     * @return true if the objects are declared write once with {@link S3FileSystemProvider#IMMUTABLE_OBJECTS}
+     */
+    public boolean isImmutableObjects() {
+        return immutableObjects;
+    }
+
+    /**
+     * @return true if the listings request the next page while the current one is iterated,
+     * see {@link S3FileSystemProvider#LISTING_PREFETCH}
+     */
+    public boolean isListingPrefetch() {
+        return listingPrefetch;
+    }
+
+    /**
+     * @return ListingEngine used to list the objects, see {@link S3FileSystemProvider#LISTING_VERSION}
+     */
+    public ListingEngine getListingEngine() {
+        return listingEngine;
+    }
+
+    /**
+     * @return ListingEngine that always requests S3, even with a snapshot in use: for the lookups of single paths and
+     * the operations that change the objects they list (recursive delete, copy, move and sync)
+     */
+    public ListingEngine getS3ListingEngine() {
+        return s3ListingEngine;
+    }
+
+    /**
+     * Serve the listings of the prefix of the snapshot from it from now on, without requests to S3: the directory
+     * streams, walks and recursive listings of the prefix return the objects of the snapshot. The lookups of single
+     * paths (exists, readAttributes...) and the operations that change many objects still request S3.
+     * The fileSystem reads its own writes: once it changes an object, the listings of the prefixes with that key
+     * request S3 too. A snapshot replaces the previous one.
+     *
+     * @param snapshot ListingSnapshot of a prefix of a bucket of this fileSystem, or null to request S3 again
+     */
+    public synchronized void useSnapshot(ListingSnapshot snapshot) {
+        SnapshotListingEngine engine = snapshot != null ? new SnapshotListingEngine(snapshot, s3ListingEngine) : null;
+        metadataCache.setChangeListener(engine);
+        listingEngine = engine != null ? engine : s3ListingEngine;
+    }
+
+    /**
+     * Metadata of the paths of this fileSystem, cached for
+     * {@link S3FileSystemProvider#METADATA_CACHE_TTL} milliseconds (disabled by default).
+     * Every change made through this fileSystem must update it.
+     *
+     * @return S3MetadataCache never null
+     */
+    public S3MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
     /**
      * get the endpoint associated with this fileSystem.
      *
@@ -176,4 +316,134 @@ public class S3FileSystem extends FileSystem implements Comparable<S3FileSystem>
     public int getCache() {
         return cache;
     }
-}
\ No newline at end of file
+
+    /**
+     * Max number of requests a single bulk operation runs against S3 at the same time.
+     * Set with {@link S3FileSystemProvider#MAX_CONCURRENT_REQUESTS}.
+     *
+     * @return int greater than zero
+     */
+    public int getMaxConcurrentRequests() {
+        return Math.max(1, maxConcurrentRequests);
+    }
+
+    /**
+     * Size of the ranges downloaded at the same time when an object is copied to a local file.
+     * Set with {@link S3FileSystemProvider#DOWNLOAD_PART_SIZE}.
+     *
+     * @return int greater than zero
+     */
+    public int getDownloadPartSize() {
+        return Math.max(1, downloadPartSize);
+    }
+
+    /**
+     * Size of the parts uploaded at the same time by a bulk upload, the files up to this size are uploaded with one request.
+     * Set with {@link S3FileSystemProvider#UPLOAD_PART_SIZE}.
+     *
+     * @return int greater than zero
+     */
+    public int getUploadPartSize() {
+        return Math.max(1, uploadPartSize);
+    }
+
+    /**
+     * Number of keys sharing the same parent above which bulk operations list the parent
+     * instead of issuing one request per key. Zero or less disables the listing.
+     * Set with {@link S3FileSystemProvider#BULK_PREFIX_LISTING_THRESHOLD}.
+     *
+     * @return int
+     */
+    public int getBulkPrefixListingThreshold() {
+        return bulkPrefixListingThreshold;
+    }
+
+    /**
+     * Executor shared by the bulk operations of this fileSystem. The pool has no fixed size: each operation limits
+     * its own concurrency (see {@link #getMaxConcurrentRequests()}), so the threads are bounded by the operations
+     * running, and nested operations (files and their parts, listings consumed by workers) can't starve each other
+     * waiting for a thread. Threads are daemons and the pool is shut down when the fileSystem is closed.
+     *
+     * @return ExecutorService never null
+     * @throws ClosedFileSystemException if the fileSystem is closed
+     */
+    public synchronized ExecutorService getExecutor() {
+        if (executorClosed)
+            throw new ClosedFileSystemException();
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("s3fs-worker-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return executor;
+    }
+
+    /**
+     * Serves the listings from a snapshot, except the ones of the prefixes with keys changed through this fileSystem
+     * since the snapshot was attached, that request S3.
+     */
+    private static class SnapshotListingEngine extends ListingEngine implements S3MetadataCache.ChangeListener {
+
+        private final ListingSnapshot snapshot;
+        private final ListingEngine s3ListingEngine;
+        private final ListingEngine snapshotEngine;
+        private final NavigableSet<String> changedKeys = new ConcurrentSkipListSet<>();
+        /**
+         * prefixes of the directories changed by recursive operations, empty or ended with a slash
+         */
+        private final Set<String> changedTrees = new ConcurrentSkipListSet<>();
+
+        private SnapshotListingEngine(ListingSnapshot snapshot, ListingEngine s3ListingEngine) {
+            this.snapshot = snapshot;
+            this.s3ListingEngine = s3ListingEngine;
+            this.snapshotEngine = snapshot.asListingEngine(s3ListingEngine);
+        }
+
+        @Override
+        public ObjectListing list(AmazonS3 client, ListObjectsRequest request, String startAfter) {
+            if (isChanged(request.getBucketName(), request.getPrefix() == null ? "" : request.getPrefix()))
+                return s3ListingEngine.list(client, request, startAfter);
+            return snapshotEngine.list(client, request, startAfter);
+        }
+
+        @Override
+        public ObjectListing next(AmazonS3 client, ObjectListing previous) {
+            // the pages of the snapshot continue from it, the rest from S3
+            return snapshotEngine.next(client, previous);
+        }
+
+        @Override
+        public void changed(String bucket, String key) {
+            if (!snapshot.getBucket().equals(bucket))
+                return;
+            String trimmed = key.endsWith(PATH_SEPARATOR) ? key.substring(0, key.length() - 1) : key;
+            changedKeys.add(trimmed);
+            changedKeys.add(trimmed + PATH_SEPARATOR);
+        }
+
+        @Override
+        public void changedTree(String bucket, String prefix) {
+            if (!snapshot.getBucket().equals(bucket))
+                return;
+            changedTrees.add(prefix);
+            changedKeys.add(prefix);
+        }
+
+        /**
+         * @return true if a key with the prefix has changed, or the prefix is inside a directory changed by a recursive operation
+         */
+        private boolean isChanged(String bucket, String prefix) {
+            if (!snapshot.getBucket().equals(bucket))
+                return false;
+            String first = changedKeys.ceiling(prefix);
+            if (first != null && first.startsWith(prefix))
+                return true;
+            for (int end = prefix.indexOf(PATH_SEPARATOR); end >= 0; end = prefix.indexOf(PATH_SEPARATOR, end + 1)) {
+                if (changedTrees.contains(prefix.substring(0, end + 1)))
+                    return true;
+            }
+            return changedTrees.contains("");
+        }
+    }
+}
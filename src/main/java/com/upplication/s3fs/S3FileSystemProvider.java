@@ -7,17 +7,27 @@ import com.amazonaws.services.s3.model.*;
 import com.amazonaws.services.s3.transfer.Copy;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import com.upplication.s3fs.attribute.S3BasicFileAttributeView;
+import com.upplication.s3fs.attribute.S3FileTimes;
 import com.upplication.s3fs.attribute.S3BasicFileAttributes;
 import com.upplication.s3fs.attribute.S3PosixFileAttributeView;
 import com.upplication.s3fs.attribute.S3PosixFileAttributes;
 import com.upplication.s3fs.util.AttributesUtils;
+import com.upplication.s3fs.util.BatchDeleter;
 import com.upplication.s3fs.util.Cache;
+import com.upplication.s3fs.util.ListingEngine;
+import com.upplication.s3fs.util.ListingSnapshot;
+import com.upplication.s3fs.util.ParallelListing;
+import com.upplication.s3fs.util.ParallelTasks;
 import com.upplication.s3fs.util.S3Utils;
+import com.upplication.s3fs.util.SplittableListing;
 
 import java.io.*;
 import java.net.URI;
@@ -67,11 +77,53 @@ public class S3FileSystemProvider extends FileSystemProvider {
     public static final String CHARSET_KEY = "s3fs_charset";
     public static final String AMAZON_S3_FACTORY_CLASS = "s3fs_amazon_s3_factory";
     public static final long PARALLEL_SIZE_THRESHOLD = 16 * 1024 * 1024l;
+    /**
+     * max number of keys of a multi-object delete request, the limit of S3
+     */
+    public static final int DELETE_BATCH_SIZE = 1000;
+    /**
+     * max number of requests that a bulk operation sends to S3 at the same time
+     */
+    public static final String MAX_CONCURRENT_REQUESTS = "s3fs_max_concurrent_requests";
+    /**
+     * min number of paths with the same parent that makes a bulk read that accepts the listing times list the parent
+     * instead of a request per path, see {@link #readAttributes(Collection, boolean)}
+     */
+    public static final String BULK_PREFIX_LISTING_THRESHOLD = "s3fs_bulk_prefix_listing_threshold";
+    /**
+     * time in milliseconds that the buckets (existence, owner and creation date) are cached, -1 to never expire
+     */
+    public static final String BUCKET_CACHE_TTL = "s3fs_bucket_cache_ttl";
+    /**
+     * time in milliseconds that the metadata of the paths is cached, -1 to never expire and 0 (default) to disable it
+     */
+    public static final String METADATA_CACHE_TTL = "s3fs_metadata_cache_ttl";
+    /**
+     * true to declare that the objects are never overwritten (write once): their metadata is cached forever
+     */
+    public static final String IMMUTABLE_OBJECTS = "s3fs_immutable_objects";
+    /**
+     * false to not request the next page of a listing while the current one is iterated
+     */
+    public static final String LISTING_PREFETCH = "s3fs_listing_prefetch";
+    /**
+     * version of the ListObjects API used to list the buckets: 1 (default) or 2
+     */
+    public static final String LISTING_VERSION = "s3fs_listing_version";
+    /**
+     * size in bytes of the ranges downloaded at the same time when an object is copied to a local file
+     */
+    public static final String DOWNLOAD_PART_SIZE = "s3fs_download_part_size";
+    /**
+     * size in bytes of the parts uploaded at the same time by a bulk upload, at least 5 MB for S3
+     */
+    public static final String UPLOAD_PART_SIZE = "s3fs_upload_part_size";
 
     private static final ConcurrentMap<String, S3FileSystem> fileSystems = new ConcurrentHashMap<>();
     private static final List<String> PROPS_TO_OVERLOAD = Arrays.asList(ACCESS_KEY, SECRET_KEY, REQUEST_METRIC_COLLECTOR_CLASS, CONNECTION_TIMEOUT, MAX_CONNECTIONS, MAX_ERROR_RETRY, PROTOCOL, PROXY_DOMAIN,
             PROXY_HOST, PROXY_PASSWORD, PROXY_PORT, PROXY_USERNAME, PROXY_WORKSTATION, SOCKET_SEND_BUFFER_SIZE_HINT, SOCKET_RECEIVE_BUFFER_SIZE_HINT, SOCKET_TIMEOUT,
-            USER_AGENT, AMAZON_S3_FACTORY_CLASS, SIGNER_OVERRIDE, PATH_STYLE_ACCESS);
+            USER_AGENT, AMAZON_S3_FACTORY_CLASS, SIGNER_OVERRIDE, PATH_STYLE_ACCESS, MAX_CONCURRENT_REQUESTS, BULK_PREFIX_LISTING_THRESHOLD, BUCKET_CACHE_TTL,
+            METADATA_CACHE_TTL, IMMUTABLE_OBJECTS, LISTING_PREFETCH, LISTING_VERSION, DOWNLOAD_PART_SIZE, UPLOAD_PART_SIZE);
 
     private S3Utils s3Utils = new S3Utils();
     private Cache cache = new Cache();
@@ -300,8 +352,75 @@ public class S3FileSystemProvider extends FileSystemProvider {
         return fileSystem.getPath(uri.getPath());
     }
 
+    /**
+     * Open a directory stream with the entries accepted by the filter.
+     * When the filter is a {@link S3PathMatcher} (see {@link S3FileSystem#getPathMatcher(String)}) its pattern is
+     * matched against the path of the entries relative to the directory and only the keys that start with its
+     * literal prefix are listed. If the pattern has a slash (or the glob **) the entries of every level below the
+     * directory are matched, so the glob logs/2026-10-{01,02}/part-*.gz only lists the keys starting with logs/2026-10-.
+     *
+     * @param dir    Path of the directory
+     * @param filter DirectoryStream.Filter with the entries to return, null to return all of them
+     * @return DirectoryStream with the entries of the directory accepted by the filter
+     */
     @Override
-    public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+    public DirectoryStream<Path> newDirectoryStream(Path dir, final DirectoryStream.Filter<? super Path> filter) throws IOException {
+        final S3Path s3Path = toS3Path(dir);
+        return new DirectoryStream<Path>() {
+            @Override
+            public void close() throws IOException {
+                // nothing to do here
+            }
+
+            @Override
+            public Iterator<Path> iterator() {
+                if (filter instanceof S3PathMatcher)
+                    return matching(s3Path, (S3PathMatcher) filter);
+                if (filter == null)
+                    return new S3Iterator(s3Path);
+                return filter(new S3Iterator(s3Path), filter);
+            }
+        };
+    }
+
+    /**
+     * list the keys below the directory that start with the literal prefix of the matcher
+     */
+    private Iterator<Path> matching(final S3Path dir, final S3PathMatcher matcher) {
+        String prefix = dir.getKey().isEmpty() || dir.getKey().endsWith(S3Path.PATH_SEPARATOR) ? dir.getKey() : dir.getKey() + S3Path.PATH_SEPARATOR;
+        String listed = prefix + matcher.getLiteralPrefix();
+        boolean recursive = matcher.isMultiLevel();
+        return filter(new S3Iterator(dir.getFileStore(), listed, recursive), new DirectoryStream.Filter<Path>() {
+            @Override
+            public boolean accept(Path entry) {
+                return matcher.accept(dir, (S3Path) entry);
+            }
+        });
+    }
+
+    private static Iterator<Path> filter(Iterator<Path> iterator, final DirectoryStream.Filter<? super Path> filter) {
+        return Iterators.filter(iterator, new Predicate<Path>() {
+            @Override
+            public boolean apply(Path entry) {
+                try {
+                    return filter.accept(entry);
+                } catch (IOException e) {
+                    throw new DirectoryIteratorException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Open a directory stream that continues a previous listing of the same directory.
+     * The iterator of the stream is a {@link S3Iterator}: {@link S3Iterator#getResumeKey()} gives the
+     * value of startAfter to continue it later, for example to checkpoint a long scan.
+     *
+     * @param dir        Path of the directory
+     * @param startAfter String key after which the listing starts, null to list from the beginning
+     * @return DirectoryStream with the children of the directory after the key
+     */
+    public DirectoryStream<Path> newDirectoryStream(Path dir, final String startAfter) {
         final S3Path s3Path = toS3Path(dir);
         return new DirectoryStream<Path>() {
             @Override
@@ -311,21 +430,167 @@ public class S3FileSystemProvider extends FileSystemProvider {
 
             @Override
             public Iterator<Path> iterator() {
-                return new S3Iterator(s3Path);
+                return new S3Iterator(s3Path, false, startAfter);
             }
         };
     }
 
+    /**
+     * List all the objects under a directory, at any depth, listing its sub directories at the same time.
+     * See {@link ParallelListing}: at most {@link S3FileSystem#getMaxConcurrentRequests()} listings run at the same
+     * time in the executor of the fileSystem. Close the listing if it is not iterated until the end.
+     *
+     * @param dir    Path of the directory or the bucket
+     * @param sorted boolean true to get the objects in key order, false to get them as soon as they are listed
+     * @return ParallelListing with the summaries of the objects, including the directory markers
+     * @throws IOException if the sub directories cannot be listed
+     */
+    public ParallelListing listRecursive(Path dir, boolean sorted) throws IOException {
+        S3Path s3Path = toS3Path(dir);
+        return listRecursive(s3Path, sorted, s3Path.getFileSystem().getListingEngine());
+    }
+
+    /**
+     * {@link #listRecursive(Path, boolean)} with the given ListingEngine, {@link S3FileSystem#getS3ListingEngine()}
+     * to list S3 even if the fileSystem uses a snapshot
+     */
+    private ParallelListing listRecursive(S3Path s3Path, boolean sorted, ListingEngine listingEngine) throws IOException {
+        S3FileSystem fileSystem = s3Path.getFileSystem();
+        String prefix = s3Path.getKey();
+        if (!prefix.isEmpty() && !prefix.endsWith(S3Path.PATH_SEPARATOR))
+            prefix += S3Path.PATH_SEPARATOR;
+        return new ParallelListing(fileSystem.getClient(), listingEngine, fileSystem.getExecutor(),
+                fileSystem.getMaxConcurrentRequests(), s3Path.getFileStore().name(), prefix, sorted);
+    }
+
+    /**
+     * Compute the size and number of the objects under a directory and under its sub directories up to a depth,
+     * like du, from a recursive listing of the directory (see {@link #listRecursive(Path, boolean)}): one request
+     * for every 1000 objects and sub directories listed at the same time, instead of one request per object.
+     *
+     * @param dir   Path of the directory or the bucket
+     * @param depth int levels of sub directories with their own totals, 0 for the total of dir only
+     * @return Map with the usage of dir and of its sub directories up to the depth, in key order
+     * @throws IOException if the directory cannot be listed
+     */
+    public Map<Path, S3DiskUsage> getDiskUsage(Path dir, int depth) throws IOException {
+        Preconditions.checkArgument(depth >= 0, "depth must not be negative: %s", depth);
+        S3Path s3Path = toS3Path(dir);
+        String prefix = s3Path.getKey();
+        if (!prefix.isEmpty() && !prefix.endsWith(S3Path.PATH_SEPARATOR))
+            prefix += S3Path.PATH_SEPARATOR;
+
+        S3DiskUsage total = new S3DiskUsage(s3Path);
+        SortedMap<String, S3DiskUsage> directories = new TreeMap<>();
+        try (ParallelListing listing = listRecursive(s3Path, false)) {
+            while (listing.hasNext()) {
+                S3ObjectSummary summary = listing.next();
+                String key = summary.getKey();
+                boolean marker = key.endsWith(S3Path.PATH_SEPARATOR);
+                if (!marker)
+                    total.add(summary.getSize());
+                // the directories between dir and the object, up to the depth
+                int end = prefix.length();
+                for (int level = 1; level <= depth; level++) {
+                    int slash = key.indexOf(S3Path.PATH_SEPARATOR, end);
+                    if (slash < 0)
+                        break;
+                    String directoryKey = key.substring(0, slash + 1);
+                    S3DiskUsage usage = directories.get(directoryKey);
+                    if (usage == null) {
+                        usage = new S3DiskUsage(S3Path.forKey(s3Path.getFileStore(), directoryKey));
+                        directories.put(directoryKey, usage);
+                    }
+                    if (!marker)
+                        usage.add(summary.getSize());
+                    end = slash + 1;
+                }
+            }
+        }
+
+        Map<Path, S3DiskUsage> result = new LinkedHashMap<>();
+        result.put(s3Path, total);
+        for (S3DiskUsage usage : directories.values()) {
+            result.put(usage.getPath(), usage);
+        }
+        return result;
+    }
+
+    /**
+     * Take a snapshot of all the objects under a directory, at any depth, with a recursive listing of the directory
+     * of S3 (see {@link #listRecursive(Path, boolean)}), to save it and serve the next listings of the directory from it.
+     *
+     * @param dir Path of the directory or the bucket
+     * @return ListingSnapshot of the directory
+     * @throws IOException if the directory cannot be listed
+     * @see S3FileSystem#useSnapshot(ListingSnapshot)
+     */
+    public ListingSnapshot newListingSnapshot(Path dir) throws IOException {
+        S3Path s3Path = toS3Path(dir);
+        String prefix = s3Path.getKey();
+        if (!prefix.isEmpty() && !prefix.endsWith(S3Path.PATH_SEPARATOR))
+            prefix += S3Path.PATH_SEPARATOR;
+        // not from the snapshot in use, if any
+        try (ParallelListing listing = listRecursive(s3Path, false, s3Path.getFileSystem().getS3ListingEngine())) {
+            return ListingSnapshot.create(s3Path.getFileStore().name(), prefix, listing);
+        }
+    }
+
+    /**
+     * List all the objects under a directory, at any depth, with a listing that can be split to list the parts in
+     * different threads (see {@link SplittableListing#trySplit()}).
+     *
+     * @param dir Path of the directory or the bucket
+     * @return SplittableListing with the summaries of the objects in key order, including the directory markers
+     */
+    public SplittableListing newSplittableListing(Path dir) {
+        S3Path s3Path = toS3Path(dir);
+        S3FileSystem fileSystem = s3Path.getFileSystem();
+        String prefix = s3Path.getKey();
+        if (!prefix.isEmpty() && !prefix.endsWith(S3Path.PATH_SEPARATOR))
+            prefix += S3Path.PATH_SEPARATOR;
+        return new SplittableListing(fileSystem.getClient(), fileSystem.getListingEngine(), s3Path.getFileStore().name(), prefix);
+    }
+
+    /**
+     * Same as {@link Files#walkFileTree(Path, FileVisitor)} but with one recursive listing of the start directory
+     * (see {@link #listRecursive(Path, boolean)}) instead of one listing per directory and one request per entry.
+     *
+     * @param start   Path where the walk starts
+     * @param visitor FileVisitor to invoke for every file and directory
+     * @return Path the start path
+     * @throws IOException if the visitor throws it
+     */
+    public Path walkFileTree(Path start, FileVisitor<? super Path> visitor) throws IOException {
+        return walkFileTree(start, Integer.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Same as {@link Files#walkFileTree(Path, Set, int, FileVisitor)} but with one recursive listing of the start
+     * directory. There are no links in S3, so there are no options.
+     *
+     * @param start    Path where the walk starts
+     * @param maxDepth int max number of directory levels to visit
+     * @param visitor  FileVisitor to invoke for every file and directory
+     * @return Path the start path
+     * @throws IOException if the visitor throws it
+     */
+    public Path walkFileTree(Path start, int maxDepth, FileVisitor<? super Path> visitor) throws IOException {
+        new S3FileTreeWalker(maxDepth, visitor).walk(toS3Path(start));
+        return start;
+    }
+
     @Override
     public InputStream newInputStream(Path path, OpenOption... options) throws IOException {
         S3Path s3Path = toS3Path(path);
         String key = s3Path.getKey();
 
-        Preconditions.checkArgument(options.length == 0, "OpenOptions not yet supported: %s", ImmutableList.copyOf(options)); // TODO
+        Set<OpenOption> optionSet = ImmutableSet.copyOf(options);
+        Preconditions.checkArgument(S3OpenOption.withoutS3OpenOptions(optionSet).isEmpty(), "OpenOptions not yet supported: %s", ImmutableList.copyOf(options)); // TODO
         Preconditions.checkArgument(!key.equals(""), "cannot create InputStream for root directory: %s", path);
 
         try {
-            S3Object object = s3Path.getFileSystem().getClient().getObject(s3Path.getFileStore().name(), key);
+            S3Object object = S3OpenOption.getObject(s3Path, S3OpenOption.find(optionSet));
             InputStream res = object.getObjectContent();
 
             if (res == null)
@@ -342,9 +607,9 @@ public class S3FileSystemProvider extends FileSystemProvider {
     @Override
     public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
         S3Path s3Path = toS3Path(path);
-        if (RANGE_SEEK_OPEN_OPTIONS.equals(options))
+        if (RANGE_SEEK_OPEN_OPTIONS.equals(S3OpenOption.withoutS3OpenOptions(options)))
         {
-            return new S3RangeBasedSeekableByteChannel(s3Path);
+            return new S3RangeBasedSeekableByteChannel(s3Path, S3OpenOption.find(options));
         }
         return new S3SeekableByteChannel(s3Path, options);
     }
@@ -367,16 +632,17 @@ public class S3FileSystemProvider extends FileSystemProvider {
         if (exists(s3Path))
             throw new FileAlreadyExistsException(format("target already exists: %s", s3Path));
         // create bucket if necesary
-        Bucket bucket = s3Path.getFileStore().getBucket();
         String bucketName = s3Path.getFileStore().name();
-        if (bucket == null) {
+        if (!s3Path.getFileStore().exists()) {
             s3Path.getFileSystem().getClient().createBucket(bucketName);
+            s3Path.getFileSystem().getBucketCache().invalidate();
         }
         // create the object as directory
         ObjectMetadata metadata = new ObjectMetadata();
         metadata.setContentLength(0);
         String directoryKey = s3Path.getKey().endsWith("/") ? s3Path.getKey() : s3Path.getKey() + "/";
         s3Path.getFileSystem().getClient().putObject(bucketName, directoryKey, new ByteArrayInputStream(new byte[0]), metadata);
+        s3Path.getFileSystem().getMetadataCache().invalidate(s3Path);
     }
 
     @Override
@@ -399,6 +665,55 @@ public class S3FileSystemProvider extends FileSystemProvider {
         deleteWithoutExistsCheck(s3Path);
     }
 
+    /**
+     * Delete a directory and all the objects under it, at any depth, without checking them one by one: the keys of
+     * a recursive listing of S3 (see {@link #listRecursive(Path, boolean)}) are deleted in batches of
+     * {@link #DELETE_BATCH_SIZE} with multi-object delete requests, at most {@link S3FileSystem#getMaxConcurrentRequests()}
+     * at the same time. The path itself is deleted too, as a file or as a directory.
+     *
+     * @param path Path of the directory, the bucket or a file
+     * @throws S3BatchDeleteException if some objects could not be deleted, with the reason of every one.
+     *                                The rest of the objects are deleted anyway
+     * @throws IOException            if the listing or a request fails, some objects can be deleted already
+     */
+    public void deleteRecursive(Path path) throws IOException {
+        final S3Path s3Path = toS3Path(path);
+        final String bucketName = s3Path.getFileStore().name();
+        final AmazonS3 client = s3Path.getFileSystem().getClient();
+        final SortedMap<String, String> failures = new TreeMap<>();
+        // S3 itself, a snapshot in use would miss the objects created since it was taken
+        try (ParallelListing listing = listRecursive(s3Path, false, s3Path.getFileSystem().getS3ListingEngine())) {
+            Iterator<DeleteObjectsRequest.KeyVersion> keys = Iterators.transform(listing, new Function<S3ObjectSummary, DeleteObjectsRequest.KeyVersion>() {
+                @Override
+                public DeleteObjectsRequest.KeyVersion apply(S3ObjectSummary summary) {
+                    return new DeleteObjectsRequest.KeyVersion(summary.getKey());
+                }
+            });
+            if (!s3Path.getKey().isEmpty() && !s3Path.getKey().endsWith(S3Path.PATH_SEPARATOR))
+                keys = Iterators.concat(keys, Iterators.singletonIterator(new DeleteObjectsRequest.KeyVersion(s3Path.getKey())));
+            ParallelTasks.forEach(s3Path.getFileSystem().getExecutor(), s3Path.getFileSystem().getMaxConcurrentRequests(),
+                    Iterators.partition(keys, DELETE_BATCH_SIZE), new ParallelTasks.Task<List<DeleteObjectsRequest.KeyVersion>>() {
+                        @Override
+                        public void run(List<DeleteObjectsRequest.KeyVersion> batch) {
+                            try {
+                                // quiet: the response only has the keys not deleted
+                                client.deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(batch).withQuiet(true));
+                            } catch (MultiObjectDeleteException e) {
+                                synchronized (failures) {
+                                    for (MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                                        failures.put(error.getKey(), error.getCode() + ": " + error.getMessage());
+                                    }
+                                }
+                            }
+                        }
+                    });
+        } finally {
+            s3Path.getFileSystem().getMetadataCache().invalidateTree(s3Path);
+        }
+        if (!failures.isEmpty())
+            throw new S3BatchDeleteException(s3Path.toString(), failures);
+    }
+
     @Override
     public OutputStream newOutputStream(Path path, OpenOption... options) throws IOException {
         // Override to return a subclass that gives access to the S3 PUT result
@@ -426,81 +741,419 @@ public class S3FileSystemProvider extends FileSystemProvider {
         return new S3FSOutputStream(Channels.newOutputStream(wbc), wbc);
     }
 
-    private void deleteWithoutExistsCheck(final S3Path s3Path) {
-        final String key = s3Path.getKey();
-        final String bucketName = s3Path.getFileStore().name();
-
-        // Spin up a small thread pool to execute the two deletes in parallel
-        ExecutorService executor = Executors.newFixedThreadPool(2);
+    private void deleteWithoutExistsCheck(S3Path s3Path) {
+        String key = s3Path.getKey();
         try {
-            List<Future<Object>> futures = executor.invokeAll(Arrays.asList(
-                    new Callable<Object>() {
-                        @Override
-                        public Object call() {
-                            s3Path.getFileSystem().getClient().deleteObject(bucketName, key);
-                            return null;
-                        }
-                    },
-                    new Callable<Object>() {
-                        @Override
-                        public Object call() {
-                            // we delete the two objects (sometimes exists the key '/' and sometimes not)
-                            s3Path.getFileSystem().getClient().deleteObject(bucketName, key + "/");
-                            return null;
-                        }
-                }));
-            // Thread pool will already be done will all work because invokeAll() blocks until its full list is complete
-            executor.shutdownNow();
-            for (Future<Object> future : futures) {
-                try {
-                    future.get();
-                }
-                catch (ExecutionException e) {
-                    throw new RuntimeException(e);
-                }
-            }
+            // we delete the two objects (sometimes exists the key '/' and sometimes not) with one request.
+            // quiet: the response only has the keys not deleted, and a missing key is not an error
+            s3Path.getFileSystem().getClient().deleteObjects(new DeleteObjectsRequest(s3Path.getFileStore().name())
+                    .withKeys(key, key + "/")
+                    .withQuiet(true));
+        } finally {
+            s3Path.getFileSystem().getMetadataCache().invalidate(s3Path);
         }
-        catch (InterruptedException e) { throw new RuntimeException(e); }
     }
 
+    /**
+     * Copy a file with its metadata. The only metadata request is the HEAD of the source, that tells a file from a
+     * directory too. With REPLACE_EXISTING one listing of a single key checks that the target is not a directory,
+     * see {@link #checkNotDirectory(S3Path)}. Without it the target is checked before.
+     * <p>
+     * A source of the default fileSystem is uploaded straight from its file, see {@link #upload(Path, S3Path, CopyOption...)},
+     * and a target of the default fileSystem is downloaded by ranges in parallel, see {@link #download(S3Path, Path, CopyOption...)}.
+     * {@link Files#copy(Path, Path, CopyOption...)} only calls this method when both paths are of this provider,
+     * so to copy from or to a local file call it on the provider: {@code s3Path.getFileSystem().provider().copy(localPath, s3Path)}
+     */
     @Override
     public void copy(Path source, Path target, CopyOption... options) throws IOException {
+        if (!(source instanceof S3Path) && source.getFileSystem() == FileSystems.getDefault()) {
+            upload(source, toS3Path(target), options);
+            return;
+        }
+        if (!(target instanceof S3Path) && target.getFileSystem() == FileSystems.getDefault()) {
+            download(toS3Path(source), target, options);
+            return;
+        }
         if (isSameFile(source, target))
             return;
 
         S3Path s3Source = toS3Path(source);
         S3Path s3Target = toS3Path(target);
-        // TODO: implements support for copying directories
-
-        Preconditions.checkArgument(!Files.isDirectory(source), "copying directories is not yet supported: %s", source);
-        Preconditions.checkArgument(!Files.isDirectory(target), "copying directories is not yet supported: %s", target);
+        Preconditions.checkArgument(!s3Target.getKey().endsWith(S3Path.PATH_SEPARATOR), "use copyRecursive to copy directories: %s", target);
 
         ImmutableSet<CopyOption> actualOptions = ImmutableSet.copyOf(options);
         verifySupportedOptions(EnumSet.of(StandardCopyOption.REPLACE_EXISTING), actualOptions);
 
-        if (exists(s3Target) && !actualOptions.contains(StandardCopyOption.REPLACE_EXISTING)) {
-            throw new FileAlreadyExistsException(format("target already exists: %s", target));
-        }
-
         String bucketNameOrigin = s3Source.getFileStore().name();
         String keySource = s3Source.getKey();
         String bucketNameTarget = s3Target.getFileStore().name();
         String keyTarget = s3Target.getKey();
 
         AmazonS3 client = s3Source.getFileSystem().getClient();
-        ObjectMetadata metadata = client.getObjectMetadata(bucketNameOrigin, keySource);
-        copy(client, metadata.clone(), bucketNameOrigin, keySource, bucketNameTarget, keyTarget, source);
+        ObjectMetadata metadata = getFileMetadata(client, s3Source);
+
+        if (!actualOptions.contains(StandardCopyOption.REPLACE_EXISTING)) {
+            try {
+                BasicFileAttributes attributes = readAttributes(s3Target, BasicFileAttributes.class);
+                Preconditions.checkArgument(!attributes.isDirectory(), "use copyRecursive to copy directories: %s", target);
+                throw new FileAlreadyExistsException(format("target already exists: %s", target));
+            } catch (NoSuchFileException e) {
+                // the target is free
+            }
+        } else {
+            checkNotDirectory(s3Target);
+        }
+
+        try {
+            copy(client, metadata.clone(), bucketNameOrigin, keySource, bucketNameTarget, keyTarget, source);
+        } finally {
+            s3Target.getFileSystem().getMetadataCache().invalidate(s3Target);
+        }
+    }
+
+    /**
+     * Check that a target replaced by a copy is not a directory, with one listing of S3 of the first key below it,
+     * so the copy doesn't write an object with the same name than the directory.
+     *
+     * @param target S3Path to replace
+     * @throws DirectoryNotEmptyException if the target is a directory with objects
+     * @throws FileAlreadyExistsException if the target is an empty directory
+     */
+    private static void checkNotDirectory(S3Path target) throws IOException {
+        S3FileSystem fileSystem = target.getFileSystem();
+        String directoryKey = target.getKey() + S3Path.PATH_SEPARATOR;
+        ListObjectsRequest request = new ListObjectsRequest(target.getFileStore().name(), directoryKey, null, null, 1);
+        ObjectListing listing = fileSystem.getS3ListingEngine().list(fileSystem.getClient(), request, null);
+        List<S3ObjectSummary> summaries = listing.getObjectSummaries();
+        if (summaries.isEmpty())
+            return;
+        if (listing.isTruncated() || summaries.size() > 1 || !summaries.get(0).getKey().equals(directoryKey))
+            throw new DirectoryNotEmptyException(format("target is a directory and is not empty: %s", target));
+        throw new FileAlreadyExistsException(format("target is a directory: %s", target));
+    }
+
+    /**
+     * Upload a local file without copying it to a temp file first, like {@link #newOutputStream(Path, OpenOption...)} does:
+     * in one request, or by parts in parallel when it is bigger than {@link #PARALLEL_SIZE_THRESHOLD}.
+     *
+     * @param source  Path of the default fileSystem
+     * @param target  S3Path
+     * @param options REPLACE_EXISTING and COPY_ATTRIBUTES, that keeps the last modified time of the file
+     */
+    private void upload(Path source, S3Path target, CopyOption... options) throws IOException {
+        ImmutableSet<CopyOption> actualOptions = ImmutableSet.copyOf(options);
+        verifySupportedOptions(EnumSet.of(StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES), actualOptions);
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        Preconditions.checkArgument(!attributes.isDirectory(), "use uploadRecursive to upload directories: %s", source);
+        Preconditions.checkArgument(!target.getKey().isEmpty() && !target.getKey().endsWith(S3Path.PATH_SEPARATOR),
+                "use uploadRecursive to upload directories: %s", target);
+        if (!actualOptions.contains(StandardCopyOption.REPLACE_EXISTING) && exists(target))
+            throw new FileAlreadyExistsException(format("target already exists: %s", target));
+        if (actualOptions.contains(StandardCopyOption.REPLACE_EXISTING))
+            checkNotDirectory(target);
+
+        Date lastModified = null;
+        if (actualOptions.contains(StandardCopyOption.COPY_ATTRIBUTES))
+            lastModified = new Date(attributes.lastModifiedTime().toMillis());
+        try {
+            S3SeekableByteChannel.upload(target, source.toFile(), lastModified);
+        } catch (AmazonS3Exception e) {
+            translateAndThrowS3Exception(e, target);
+        }
+    }
+
+    /**
+     * Download an object to a local file with ranged requests of {@link S3FileSystem#getDownloadPartSize()} bytes,
+     * at most {@link S3FileSystem#getMaxConcurrentRequests()} at the same time, every one writing its range at its
+     * position of a temp file next to the target. The temp file is renamed to the target once complete, so the
+     * target never has a partial content. All the ranges are of the version of the object seen by the first request.
+     *
+     * @param source  S3Path
+     * @param target  Path of the default fileSystem
+     * @param options REPLACE_EXISTING and COPY_ATTRIBUTES, that keeps the last modified time of the object
+     */
+    private void download(S3Path source, Path target, CopyOption... options) throws IOException {
+        ImmutableSet<CopyOption> actualOptions = ImmutableSet.copyOf(options);
+        verifySupportedOptions(EnumSet.of(StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES), actualOptions);
+        boolean replaceExisting = actualOptions.contains(StandardCopyOption.REPLACE_EXISTING);
+        if (!replaceExisting && Files.exists(target, LinkOption.NOFOLLOW_LINKS))
+            throw new FileAlreadyExistsException(format("target already exists: %s", target));
+
+        ObjectMetadata metadata = getFileMetadata(source.getFileSystem().getClient(), source);
+        // the time is in the metadata already read, no need of the HEAD and ACL of readAttributes
+        FileTime lastModified = null;
+        if (actualOptions.contains(StandardCopyOption.COPY_ATTRIBUTES))
+            lastModified = S3BasicFileAttributeView.getMetadataLastModified(metadata);
+        new S3BulkTransfer(source.getFileSystem(), S3ProgressListener.NONE)
+                .downloadFile(source, metadata.getContentLength(), metadata.getETag(), lastModified, target);
+    }
+
+    /**
+     * Upload a local directory and all its files and sub directories, at any depth, to a directory. Many files are
+     * uploaded at the same time, and the ones bigger than {@link S3FileSystem#getUploadPartSize()} by parts at the same
+     * time too: all the requests of the upload share the budget of {@link S3FileSystem#getMaxConcurrentRequests()} requests
+     * at the same time. The objects with the same key are replaced, and an empty directory gets a marker.
+     *
+     * @param localDir Path of a directory of the default fileSystem
+     * @param target   Path of the directory, the bucket or a directory of it
+     * @param listener S3ProgressListener notified with the files done and the bytes uploaded, parts included
+     * @return S3TransferSummary with the totals and the throughput of the upload
+     * @throws IOException if a request fails, some files can be uploaded already
+     */
+    public S3TransferSummary uploadRecursive(Path localDir, Path target, S3ProgressListener listener) throws IOException {
+        Preconditions.checkArgument(localDir.getFileSystem() == FileSystems.getDefault(), "not a local path: %s", localDir);
+        if (!Files.isDirectory(localDir))
+            throw new NotDirectoryException(localDir.toString());
+        S3Path s3Target = toS3Path(target);
+        String prefix = s3Target.getKey().isEmpty() || s3Target.getKey().endsWith(S3Path.PATH_SEPARATOR) ? s3Target.getKey() : s3Target.getKey() + S3Path.PATH_SEPARATOR;
+        try {
+            return new S3BulkTransfer(s3Target.getFileSystem(), listener).upload(localDir, s3Target.getFileStore().name(), prefix);
+        } finally {
+            s3Target.getFileSystem().getMetadataCache().invalidateTree(s3Target);
+        }
+    }
+
+    /**
+     * Download a directory and all the objects under it, at any depth, to the same relative paths of a local directory,
+     * creating the sub directories. The keys of a recursive listing (see {@link #listRecursive(Path, boolean)}) are
+     * downloaded at the same time, and every object by ranges of {@link S3FileSystem#getDownloadPartSize()} bytes like
+     * {@link #copy(Path, Path, CopyOption...)} to a local file: all the requests of the download share the budget of
+     * {@link S3FileSystem#getMaxConcurrentRequests()} requests at the same time. The local files are replaced.
+     *
+     * @param source   Path of the directory
+     * @param localDir Path of a directory of the default fileSystem, created if it does not exist
+     * @param listener S3ProgressListener notified with the objects done and the bytes downloaded, ranges included
+     * @return S3TransferSummary with the totals and the throughput of the download
+     * @throws IOException if the listing or a request fails, some files can be downloaded already
+     */
+    public S3TransferSummary downloadRecursive(Path source, Path localDir, S3ProgressListener listener) throws IOException {
+        Preconditions.checkArgument(localDir.getFileSystem() == FileSystems.getDefault(), "not a local path: %s", localDir);
+        S3Path s3Source = toS3Path(source);
+        if (!readAttributes(s3Source, BasicFileAttributes.class).isDirectory())
+            throw new NotDirectoryException(source.toString());
+        String prefix = s3Source.getKey().isEmpty() || s3Source.getKey().endsWith(S3Path.PATH_SEPARATOR) ? s3Source.getKey() : s3Source.getKey() + S3Path.PATH_SEPARATOR;
+        Files.createDirectories(localDir);
+        try (ParallelListing listing = listRecursive(s3Source, false)) {
+            return new S3BulkTransfer(s3Source.getFileSystem(), listener).download(s3Source, prefix, listing, localDir);
+        }
+    }
+
+    /**
+     * Mirror a local directory to a directory, or a directory to a local directory, transferring only the files new or
+     * changed like {@link #uploadRecursive(Path, Path, S3ProgressListener)} and {@link #downloadRecursive(Path, Path, S3ProgressListener)}
+     * do. The objects are compared from a recursive listing of S3 (see {@link #listRecursive(Path, boolean)}) by their size,
+     * the last modified time of the listing, their ETag (a hash of the local content) and as last resort their
+     * {@link S3BasicFileAttributeView#LABKEY_LAST_MODIFIED} metadata. The files uploaded keep their last modified time in
+     * that metadata and the files downloaded get the time of the listing, so the next sync skips them without reading them.
+     *
+     * @param source       Path of the directory to mirror, of this provider or of the default fileSystem
+     * @param target       Path of the mirror, of the default fileSystem or of this provider
+     * @param deleteExtras boolean true to delete the files and directories that are only in the target
+     * @param listener     S3ProgressListener notified with the objects done and the bytes transferred
+     * @return S3TransferSummary with the totals and the throughput of the files transferred
+     * @throws S3BatchDeleteException if some objects only in the target could not be deleted
+     * @throws IOException            if the listing or a request fails, some files can be transferred already
+     */
+    public S3TransferSummary syncRecursive(Path source, Path target, boolean deleteExtras, S3ProgressListener listener) throws IOException {
+        if (source.getFileSystem() == FileSystems.getDefault()) {
+            if (!Files.isDirectory(source))
+                throw new NotDirectoryException(source.toString());
+            S3Path s3Target = toS3Path(target);
+            String prefix = s3Target.getKey().isEmpty() || s3Target.getKey().endsWith(S3Path.PATH_SEPARATOR) ? s3Target.getKey() : s3Target.getKey() + S3Path.PATH_SEPARATOR;
+            // S3 itself, a snapshot in use would be compared instead of the current objects
+            try (ParallelListing listing = listRecursive(s3Target, false, s3Target.getFileSystem().getS3ListingEngine())) {
+                return new S3Sync(s3Target.getFileSystem(), listener, deleteExtras).upload(source, s3Target, prefix, listing);
+            } finally {
+                s3Target.getFileSystem().getMetadataCache().invalidateTree(s3Target);
+            }
+        }
+        Preconditions.checkArgument(target.getFileSystem() == FileSystems.getDefault(), "not a local path: %s", target);
+        S3Path s3Source = toS3Path(source);
+        if (!readAttributes(s3Source, BasicFileAttributes.class).isDirectory())
+            throw new NotDirectoryException(source.toString());
+        String prefix = s3Source.getKey().isEmpty() || s3Source.getKey().endsWith(S3Path.PATH_SEPARATOR) ? s3Source.getKey() : s3Source.getKey() + S3Path.PATH_SEPARATOR;
+        Files.createDirectories(target);
+        try (ParallelListing listing = listRecursive(s3Source, false, s3Source.getFileSystem().getS3ListingEngine())) {
+            return new S3Sync(s3Source.getFileSystem(), listener, deleteExtras).download(s3Source, prefix, listing, target);
+        }
+    }
+
+    /**
+     * Set the times of many objects at the same time, like {@link S3BasicFileAttributeView#setTimes(FileTime, FileTime, FileTime)}
+     * does for one: at most {@link S3FileSystem#getMaxConcurrentRequests()} objects are read and copied in place with
+     * the new times in their metadata. The objects that have these times already are not copied. The objects bigger than
+     * {@link #PARALLEL_SIZE_THRESHOLD} are copied by parts with one TransferManager shared by all of them.
+     *
+     * @param times    Map with the paths of the objects, all of the same fileSystem, and the times to set
+     * @param listener S3ProgressListener notified with the objects updated and their size
+     * @return S3TransferSummary with the objects updated, the objects skipped are not counted
+     * @throws NoSuchFileException if an object does not exist, the previous ones can be updated already
+     * @throws IOException         if a request fails, some objects can be updated already
+     */
+    public S3TransferSummary setTimes(Map<? extends Path, S3FileTimes> times, final S3ProgressListener listener) throws IOException {
+        final long start = System.currentTimeMillis();
+        if (times.isEmpty())
+            return new S3TransferSummary(0, 0, 0);
+        final S3FileSystem fileSystem = toS3Path(times.keySet().iterator().next()).getFileSystem();
+        for (Path path : times.keySet()) {
+            Preconditions.checkArgument(toS3Path(path).getFileSystem() == fileSystem, "paths of different fileSystems: %s", path);
+        }
+        final AmazonS3 client = fileSystem.getClient();
+        final int parallelism = fileSystem.getMaxConcurrentRequests();
+        final TransferManager transferManager = newTransferManager(client, parallelism);
+        final long[] updated = new long[2];
+        try {
+            ParallelTasks.forEach(fileSystem.getExecutor(), parallelism, times.entrySet().iterator(),
+                    new ParallelTasks.Task<Map.Entry<? extends Path, S3FileTimes>>() {
+                        @Override
+                        public void run(Map.Entry<? extends Path, S3FileTimes> entry) throws IOException {
+                            S3Path path = toS3Path(entry.getKey());
+                            String bucketName = path.getFileStore().name();
+                            ObjectMetadata metadata;
+                            try {
+                                metadata = client.getObjectMetadata(bucketName, path.getKey()).clone();
+                            } catch (AmazonS3Exception e) {
+                                translateAndThrowS3Exception(e, path);
+                                return;
+                            }
+                            if (entry.getValue().matches(metadata))
+                                return;
+                            try {
+                                copy(client, transferManager, entry.getValue().applyTo(metadata), bucketName, path.getKey(), bucketName, path.getKey(), path);
+                            } finally {
+                                fileSystem.getMetadataCache().invalidate(path);
+                            }
+                            synchronized (updated) {
+                                updated[0]++;
+                                updated[1] += metadata.getContentLength();
+                                listener.progress(updated[0], updated[1]);
+                            }
+                        }
+                    });
+        } finally {
+            transferManager.shutdownNow(false);
+        }
+        return new S3TransferSummary(updated[0], updated[1], System.currentTimeMillis() - start);
+    }
+
+    /**
+     * The metadata of the object of a file, a directory has no object with its key (or only a marker ending with slash)
+     *
+     * @throws IllegalArgumentException if it is a directory
+     * @throws NoSuchFileException      if it does not exist
+     */
+    private ObjectMetadata getFileMetadata(AmazonS3 client, S3Path s3Path) throws IOException {
+        Preconditions.checkArgument(!s3Path.getKey().isEmpty() && !s3Path.getKey().endsWith(S3Path.PATH_SEPARATOR),
+                "use copyRecursive, moveRecursive or downloadRecursive for directories: %s", s3Path);
+        try {
+            return client.getObjectMetadata(s3Path.getFileStore().name(), s3Path.getKey());
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() != 404)
+                throw e;
+            // only to tell the reason
+            Preconditions.checkArgument(!Files.isDirectory(s3Path), "use copyRecursive, moveRecursive or downloadRecursive for directories: %s", s3Path);
+            return translateAndThrowS3Exception(e, s3Path);
+        }
+    }
+
+    /**
+     * Copy a directory and all the objects under it, at any depth, within or across buckets, without the data
+     * passing through this node: the keys of a recursive listing of S3 (see {@link #listRecursive(Path, boolean)})
+     * are copied by S3, at most {@link S3FileSystem#getMaxConcurrentRequests()} at the same time. The objects up to
+     * {@link #PARALLEL_SIZE_THRESHOLD} are copied with their metadata in one request, the bigger ones by parts with one
+     * TransferManager for all of them, copying at most {@link S3FileSystem#getMaxConcurrentRequests()} parts at the same time.
+     * A file is copied like {@link #copy(Path, Path, CopyOption...)}.
+     *
+     * @param source  Path of the directory
+     * @param target  Path of the new directory
+     * @param options REPLACE_EXISTING to copy into an existing directory, overwriting the objects with the same key
+     * @throws FileAlreadyExistsException if the target exists and REPLACE_EXISTING is not given
+     * @throws IOException                if the listing or a copy fails, some objects can be copied already
+     */
+    public void copyRecursive(Path source, Path target, CopyOption... options) throws IOException {
+        final S3Path s3Source = toS3Path(source);
+        S3Path s3Target = toS3Path(target);
+        ImmutableSet<CopyOption> actualOptions = ImmutableSet.copyOf(options);
+        verifySupportedOptions(EnumSet.of(StandardCopyOption.REPLACE_EXISTING), actualOptions);
+        if (!Files.isDirectory(s3Source)) {
+            copy(source, target, options);
+            return;
+        }
+        if (!actualOptions.contains(StandardCopyOption.REPLACE_EXISTING) && exists(s3Target))
+            throw new FileAlreadyExistsException(format("target already exists: %s", target));
+
+        final String sourceBucket = s3Source.getFileStore().name();
+        final String targetBucket = s3Target.getFileStore().name();
+        final String sourcePrefix = s3Source.getKey().isEmpty() || s3Source.getKey().endsWith(S3Path.PATH_SEPARATOR) ? s3Source.getKey() : s3Source.getKey() + S3Path.PATH_SEPARATOR;
+        final String targetPrefix = s3Target.getKey().isEmpty() || s3Target.getKey().endsWith(S3Path.PATH_SEPARATOR) ? s3Target.getKey() : s3Target.getKey() + S3Path.PATH_SEPARATOR;
+        // the listing would return the copies too
+        Preconditions.checkArgument(!sourceBucket.equals(targetBucket) || !targetPrefix.startsWith(sourcePrefix),
+                "cannot copy a directory into itself: %s to %s", source, target);
+
+        final AmazonS3 client = s3Source.getFileSystem().getClient();
+        final TransferManager transferManager = newTransferManager(client, s3Source.getFileSystem().getMaxConcurrentRequests());
+        // S3 itself, a snapshot in use would miss the objects created since it was taken
+        try (ParallelListing listing = listRecursive(s3Source, false, s3Source.getFileSystem().getS3ListingEngine())) {
+            ParallelTasks.forEach(s3Source.getFileSystem().getExecutor(), s3Source.getFileSystem().getMaxConcurrentRequests(),
+                    listing, new ParallelTasks.Task<S3ObjectSummary>() {
+                        @Override
+                        public void run(S3ObjectSummary summary) throws IOException {
+                            String targetKey = targetPrefix + summary.getKey().substring(sourcePrefix.length());
+                            copyObject(client, transferManager, summary.getSize(), sourceBucket, summary.getKey(), targetBucket, targetKey, s3Source);
+                        }
+                    });
+        } finally {
+            transferManager.shutdownNow(false);
+            s3Target.getFileSystem().getMetadataCache().invalidateTree(s3Target);
+        }
+    }
+
+    /**
+     * Copy an object of a known size: in one request that copies the metadata too if it is small, without
+     * requesting it, or by parts with the TransferManager shared by the objects of a bulk operation
+     */
+    private static void copyObject(AmazonS3 client, TransferManager transferManager, long size, String sourceBucketName, String sourceKey, String targetBucketName, String targetKey, Path pathForException) throws IOException {
+        if (size > PARALLEL_SIZE_THRESHOLD) {
+            ObjectMetadata metadata;
+            try {
+                metadata = client.getObjectMetadata(sourceBucketName, sourceKey);
+            } catch (AmazonS3Exception e) {
+                translateAndThrowS3Exception(e, pathForException);
+                return;
+            }
+            copy(client, transferManager, metadata.clone(), sourceBucketName, sourceKey, targetBucketName, targetKey, pathForException);
+            return;
+        }
+        try {
+            client.copyObject(new CopyObjectRequest(sourceBucketName, sourceKey, targetBucketName, targetKey));
+        } catch (AmazonS3Exception e) {
+            translateAndThrowS3Exception(e, pathForException);
+        }
     }
 
     /** Do a copy from source to target, using a TransferManager for a parallelized copy */
     public static void copy(AmazonS3 client, ObjectMetadata metadata, String sourceBucketName, String sourceKey, String targetBucketName, String targetKey, Path pathForException) throws IOException {
+        copy(client, null, metadata, sourceBucketName, sourceKey, targetBucketName, targetKey, pathForException);
+    }
+
+    /**
+     * Do a copy from source to target, the big objects with the TransferManager given or a new one if it is null
+     */
+    private static void copy(AmazonS3 client, TransferManager transferManager, ObjectMetadata metadata, String sourceBucketName, String sourceKey, String targetBucketName, String targetKey, Path pathForException) throws IOException {
         try {
             final long objectSize = metadata.getContentLength();
 
             CopyObjectRequest request = new CopyObjectRequest(sourceBucketName, sourceKey, targetBucketName, targetKey)
                     .withNewObjectMetadata(metadata);
 
-            if (objectSize > PARALLEL_SIZE_THRESHOLD) {
+            if (objectSize > PARALLEL_SIZE_THRESHOLD && transferManager != null) {
+                try {
+                    transferManager.copy(request).waitForCompletion();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            else if (objectSize > PARALLEL_SIZE_THRESHOLD) {
                 TransferManager tm = TransferManagerBuilder.standard()
                         .withS3Client(client)
                         .withExecutorFactory(new ExecutorFactory() {
@@ -539,6 +1192,22 @@ public class S3FileSystemProvider extends FileSystemProvider {
         }
     }
 
+    /**
+     * TransferManager for the big objects of a bulk operation, copying at most the given number of parts at the same
+     * time. Shut it down when the operation ends.
+     */
+    private static TransferManager newTransferManager(AmazonS3 client, final int threads) {
+        return TransferManagerBuilder.standard()
+                .withS3Client(client)
+                .withExecutorFactory(new ExecutorFactory() {
+                    @Override
+                    public ExecutorService newExecutor() {
+                        return Executors.newFixedThreadPool(threads);
+                    }
+                })
+                .build();
+    }
+
     public static <T> T translateAndThrowS3Exception(AmazonS3Exception e, Path path) throws IOException {
         if (e.getStatusCode() == 404) {
             NoSuchFileException notFoundException = new NoSuchFileException(e.getMessage());
@@ -559,12 +1228,117 @@ public class S3FileSystemProvider extends FileSystemProvider {
         return etags;
     }
 
+    /**
+     * Move a file: {@link #copy(Path, Path, CopyOption...)} and one delete request, the source is known to be a file
+     * once copied. A local file of the default fileSystem is uploaded and then deleted.
+     */
     @Override
     public void move(Path source, Path target, CopyOption... options) throws IOException {
         if (options != null && Arrays.asList(options).contains(StandardCopyOption.ATOMIC_MOVE))
             throw new AtomicMoveNotSupportedException(source.toString(), target.toString(), "Atomic not supported");
+        if (isSameFile(source, target))
+            return;
         copy(source, target, options);
-        delete(source);
+        if (!(source instanceof S3Path) && source.getFileSystem() == FileSystems.getDefault())
+            Files.delete(source);
+        else
+            deleteWithoutExistsCheck(toS3Path(source));
+    }
+
+    /**
+     * Move a directory and all the objects under it, at any depth, within or across buckets: the keys of a recursive
+     * listing of S3 (see {@link #listRecursive(Path, boolean)}) are copied by S3 like
+     * {@link #copyRecursive(Path, Path, CopyOption...)} does, and the sources are deleted in batches of
+     * {@link #DELETE_BATCH_SIZE} as their copies are done. The directory markers of the source are deleted last.
+     * <p>
+     * An interrupted move can be retried with REPLACE_EXISTING: only what is left in the source is moved again,
+     * and a retry of a move already done does nothing. A file is moved like {@link #move(Path, Path, CopyOption...)}.
+     *
+     * @param source   Path of the directory
+     * @param target   Path of the new directory
+     * @param listener S3ProgressListener notified with the objects moved (copied and deleted)
+     * @param options  REPLACE_EXISTING to move into an existing directory, overwriting the objects with the same key
+     * @throws FileAlreadyExistsException if the target exists and REPLACE_EXISTING is not given
+     * @throws S3BatchDeleteException     if some sources could not be deleted, all of them are copied
+     * @throws IOException                if the listing or a copy fails, some objects can be moved already
+     */
+    public void moveRecursive(Path source, Path target, S3ProgressListener listener, CopyOption... options) throws IOException {
+        if (Arrays.asList(options).contains(StandardCopyOption.ATOMIC_MOVE))
+            throw new AtomicMoveNotSupportedException(source.toString(), target.toString(), "Atomic not supported");
+        if (isSameFile(source, target))
+            return;
+        final S3Path s3Source = toS3Path(source);
+        S3Path s3Target = toS3Path(target);
+        ImmutableSet<CopyOption> actualOptions = ImmutableSet.copyOf(options);
+        verifySupportedOptions(EnumSet.of(StandardCopyOption.REPLACE_EXISTING), actualOptions);
+        boolean replaceExisting = actualOptions.contains(StandardCopyOption.REPLACE_EXISTING);
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = readAttributes(s3Source, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // nothing left to move: a retry of a move already done
+            if (replaceExisting && exists(s3Target))
+                return;
+            throw e;
+        }
+        if (!attributes.isDirectory()) {
+            move(source, target, options);
+            listener.progress(1, attributes.size());
+            return;
+        }
+        if (!replaceExisting && exists(s3Target))
+            throw new FileAlreadyExistsException(format("target already exists: %s", target));
+
+        final String sourceBucket = s3Source.getFileStore().name();
+        final String targetBucket = s3Target.getFileStore().name();
+        final String sourcePrefix = s3Source.getKey().isEmpty() || s3Source.getKey().endsWith(S3Path.PATH_SEPARATOR) ? s3Source.getKey() : s3Source.getKey() + S3Path.PATH_SEPARATOR;
+        final String targetPrefix = s3Target.getKey().isEmpty() || s3Target.getKey().endsWith(S3Path.PATH_SEPARATOR) ? s3Target.getKey() : s3Target.getKey() + S3Path.PATH_SEPARATOR;
+        Preconditions.checkArgument(!sourceBucket.equals(targetBucket) || !targetPrefix.startsWith(sourcePrefix),
+                "cannot move a directory into itself: %s to %s", source, target);
+
+        final AmazonS3 client = s3Source.getFileSystem().getClient();
+        final BatchDeleter deleter = new BatchDeleter(client, sourceBucket, DELETE_BATCH_SIZE, listener);
+        final List<S3ObjectSummary> markers = Collections.synchronizedList(new ArrayList<S3ObjectSummary>());
+        final TransferManager transferManager = newTransferManager(client, s3Source.getFileSystem().getMaxConcurrentRequests());
+        // S3 itself: a snapshot in use would leave the newer objects in the source, and a retry would not see them either
+        try (ParallelListing listing = listRecursive(s3Source, false, s3Source.getFileSystem().getS3ListingEngine())) {
+            try {
+                ParallelTasks.forEach(s3Source.getFileSystem().getExecutor(), s3Source.getFileSystem().getMaxConcurrentRequests(),
+                        listing, new ParallelTasks.Task<S3ObjectSummary>() {
+                            @Override
+                            public void run(S3ObjectSummary summary) throws IOException {
+                                String targetKey = targetPrefix + summary.getKey().substring(sourcePrefix.length());
+                                copyObject(client, transferManager, summary.getSize(), sourceBucket, summary.getKey(), targetBucket, targetKey, s3Source);
+                                if (summary.getKey().endsWith(S3Path.PATH_SEPARATOR))
+                                    markers.add(summary);
+                                else
+                                    deleter.add(summary.getKey(), summary.getSize());
+                            }
+                        });
+            } catch (IOException | RuntimeException e) {
+                // the sources already copied are deleted anyway, so a retry does not copy them again
+                try {
+                    deleter.flush();
+                } catch (RuntimeException flushFailure) {
+                    e.addSuppressed(flushFailure);
+                }
+                throw e;
+            }
+            deleter.flush();
+            // until the end the source directory exists, so a retry finds it even if all its files are moved
+            for (S3ObjectSummary marker : markers) {
+                deleter.add(marker.getKey(), marker.getSize());
+            }
+            deleter.flush();
+        } finally {
+            transferManager.shutdownNow(false);
+            s3Source.getFileSystem().getMetadataCache().invalidateTree(s3Source);
+            s3Target.getFileSystem().getMetadataCache().invalidateTree(s3Target);
+        }
+        SortedMap<String, String> failures = deleter.getFailures();
+        if (!failures.isEmpty())
+            throw new S3BatchDeleteException(s3Source.toString(), failures);
     }
 
     @Override
@@ -643,6 +1417,68 @@ public class S3FileSystemProvider extends FileSystemProvider {
         throw new UnsupportedOperationException(format("only %s or %s supported", BasicFileAttributes.class, PosixFileAttributes.class));
     }
 
+    /**
+     * Read the BasicFileAttributes of many paths at once, running the requests in parallel.
+     * The number of requests at the same time is limited by {@link #MAX_CONCURRENT_REQUESTS}.
+     * The attributes are the same than the ones of {@link #readAttributes(Path, Class, LinkOption...)},
+     * and they are cached in every path like it does.
+     *
+     * @param paths Collection of absolute S3Path, can belong to different fileSystems
+     * @return Map with the attributes of every path that exists, in the same order as the paths.
+     * Missing paths are not part of the map.
+     * @throws IOException if any request fails with other reason than not found
+     * @see #readAttributes(Collection, boolean)
+     */
+    public Map<S3Path, S3BasicFileAttributes> readAttributes(Collection<? extends Path> paths) throws IOException {
+        return readAttributes(paths, false);
+    }
+
+    /**
+     * Read the BasicFileAttributes of many paths at once, like {@link #readAttributes(Collection)}.
+     * With listingTimes the paths sharing a parent are resolved with a listing of the parent instead
+     * (see {@link #BULK_PREFIX_LISTING_THRESHOLD}): one request for every 1000 entries instead of one per path,
+     * but the last modified time of the regular files is then the time S3 stored the object, not the one set
+     * with {@link java.nio.file.attribute.BasicFileAttributeView#setTimes(FileTime, FileTime, FileTime)}
+     * (the {@link S3BasicFileAttributeView#LABKEY_LAST_MODIFIED} user metadata is not part of a listing).
+     *
+     * @param paths        Collection of absolute S3Path, can belong to different fileSystems
+     * @param listingTimes boolean true to accept the last modified times of the listings
+     * @return Map with the attributes of every path that exists, in the same order as the paths.
+     * Missing paths are not part of the map.
+     * @throws IOException if any request fails with other reason than not found
+     */
+    public Map<S3Path, S3BasicFileAttributes> readAttributes(Collection<? extends Path> paths, boolean listingTimes) throws IOException {
+        Map<S3FileSystem, List<S3Path>> byFileSystem = new LinkedHashMap<>();
+        for (Path path : paths) {
+            S3Path s3Path = toS3Path(path);
+            Preconditions.checkArgument(s3Path.isAbsolute(), "path must be absolute: %s", s3Path);
+            List<S3Path> s3Paths = byFileSystem.get(s3Path.getFileSystem());
+            if (s3Paths == null) {
+                s3Paths = new ArrayList<>();
+                byFileSystem.put(s3Path.getFileSystem(), s3Paths);
+            }
+            s3Paths.add(s3Path);
+        }
+
+        Map<S3Path, S3BasicFileAttributes> found = new HashMap<>();
+        for (Map.Entry<S3FileSystem, List<S3Path>> entry : byFileSystem.entrySet()) {
+            S3FileSystem fileSystem = entry.getKey();
+            found.putAll(s3Utils.getS3FileAttributes(entry.getValue(), fileSystem.getExecutor(),
+                    fileSystem.getMaxConcurrentRequests(), listingTimes ? fileSystem.getBulkPrefixListingThreshold() : 0));
+        }
+
+        Map<S3Path, S3BasicFileAttributes> result = new LinkedHashMap<>();
+        for (Path path : paths) {
+            S3Path s3Path = (S3Path) path;
+            S3BasicFileAttributes attrs = found.get(s3Path);
+            if (attrs != null) {
+                s3Path.setFileAttributes(attrs);
+                result.put(s3Path, attrs);
+            }
+        }
+        return result;
+    }
+
     @Override
     public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
         if (attributes == null) {
@@ -687,7 +1523,7 @@ public class S3FileSystemProvider extends FileSystemProvider {
      * @return S3FileSystem never null
      */
     public S3FileSystem createFileSystem(URI uri, Properties props) {
-        return new S3FileSystem(this, getFileSystemKey(uri, props), getAmazonS3(uri, props), uri.getHost());
+        return new S3FileSystem(this, getFileSystemKey(uri, props), getAmazonS3(uri, props), uri.getHost(), props);
     }
 
     protected AmazonS3 getAmazonS3(URI uri, Properties props) {
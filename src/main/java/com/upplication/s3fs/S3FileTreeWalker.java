@@ -0,0 +1,155 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.attribute.S3BasicFileAttributes;
+import com.upplication.s3fs.util.ParallelListing;
+import com.upplication.s3fs.util.S3Utils;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Walk a file tree with one recursive listing of the start directory instead of one listing per directory.
+ * The keys arrive in order, and all the keys of a directory are contiguous in that order, so the directories are
+ * opened (preVisitDirectory) when the first key below them arrives and closed (postVisitDirectory) when the first key
+ * outside them arrives. Directories without a marker object are synthesized from the keys of their children, like
+ * {@link S3Iterator} does. Attributes come from the listing, there are no requests per entry.
+ * Follows the contract of {@link java.nio.file.Files#walkFileTree(Path, java.util.Set, int, FileVisitor)}.
+ */
+class S3FileTreeWalker {
+
+    private final S3Utils s3Utils = new S3Utils();
+    private final int maxDepth;
+    private final FileVisitor<? super Path> visitor;
+
+    private final Deque<Directory> open = new ArrayDeque<>();
+    private String skipPrefix;
+
+    S3FileTreeWalker(int maxDepth, FileVisitor<? super Path> visitor) {
+        if (maxDepth < 0)
+            throw new IllegalArgumentException("'maxDepth' is negative");
+        this.maxDepth = maxDepth;
+        this.visitor = visitor;
+    }
+
+    /**
+     * @param start S3Path where the walk starts
+     * @throws IOException if the visitor throws it
+     */
+    void walk(S3Path start) throws IOException {
+        S3BasicFileAttributes attributes;
+        try {
+            attributes = s3Utils.getS3FileAttributes(start);
+        } catch (NoSuchFileException e) {
+            visitor.visitFileFailed(start, e);
+            return;
+        }
+        if (!attributes.isDirectory() || maxDepth == 0) {
+            visitor.visitFile(start, attributes);
+            return;
+        }
+        if (visitor.preVisitDirectory(start, attributes) != FileVisitResult.CONTINUE)
+            return;
+
+        String prefix = start.getKey().isEmpty() || start.getKey().endsWith(S3Path.PATH_SEPARATOR) ? start.getKey() : start.getKey() + S3Path.PATH_SEPARATOR;
+        open.push(new Directory(start, prefix));
+        try (ParallelListing listing = start.getFileSystem().provider().listRecursive(start, true)) {
+            while (listing.hasNext()) {
+                if (!visit(start, listing.next()))
+                    return;
+            }
+        }
+        while (!open.isEmpty()) {
+            if (!close())
+                return;
+        }
+    }
+
+    /**
+     * @return false if the walk is terminated
+     */
+    private boolean visit(S3Path start, S3ObjectSummary summary) throws IOException {
+        String key = summary.getKey();
+        String rootPrefix = open.getLast().prefix;
+        if (!key.startsWith(rootPrefix) || key.length() == rootPrefix.length())
+            return true;
+
+        while (open.size() > 1 && !key.startsWith(open.peek().prefix)) {
+            if (!close())
+                return false;
+        }
+        if (skipPrefix != null) {
+            if (key.startsWith(skipPrefix))
+                return true;
+            skipPrefix = null;
+        }
+
+        // open the directories between the last one open and the key, with their depth relative to start
+        int end = open.peek().prefix.length();
+        int depth = open.size();
+        int slash;
+        while ((slash = key.indexOf(S3Path.PATH_SEPARATOR, end)) >= 0) {
+            String directoryKey = key.substring(0, slash);
+            S3Path directory = S3Path.forKey(start.getFileStore(), directoryKey);
+            S3BasicFileAttributes attributes = s3Utils.toS3FileAttributes(summary, directoryKey);
+            directory.setFileAttributes(attributes);
+            String directoryPrefix = directoryKey + S3Path.PATH_SEPARATOR;
+            if (depth == maxDepth) {
+                skipPrefix = directoryPrefix;
+                return result(visitor.visitFile(directory, attributes));
+            }
+            FileVisitResult result = visitor.preVisitDirectory(directory, attributes);
+            if (result == FileVisitResult.CONTINUE) {
+                open.push(new Directory(directory, directoryPrefix));
+            } else {
+                skipPrefix = result == FileVisitResult.SKIP_SUBTREE ? directoryPrefix : open.peek().prefix;
+                return result != FileVisitResult.TERMINATE;
+            }
+            end = slash + 1;
+            depth++;
+        }
+        if (end == key.length())
+            return true; // marker of a directory just opened
+
+        S3Path file = S3Path.forKey(start.getFileStore(), key);
+        S3BasicFileAttributes attributes = s3Utils.toS3FileAttributes(summary, key);
+        file.setFileAttributes(attributes);
+        return result(visitor.visitFile(file, attributes));
+    }
+
+    /**
+     * close the innermost open directory
+     *
+     * @return false if the walk is terminated
+     */
+    private boolean close() throws IOException {
+        Directory directory = open.pop();
+        return result(visitor.postVisitDirectory(directory.path, null));
+    }
+
+    /**
+     * apply the result of a visit to a file or to the end of a directory
+     *
+     * @return false if the walk is terminated
+     */
+    private boolean result(FileVisitResult result) {
+        if (result == FileVisitResult.SKIP_SIBLINGS && !open.isEmpty())
+            skipPrefix = open.peek().prefix;
+        return result != FileVisitResult.TERMINATE;
+    }
+
+    private static class Directory {
+        private final S3Path path;
+        private final String prefix;
+
+        private Directory(S3Path path, String prefix) {
+            this.path = path;
+            this.prefix = prefix;
+        }
+    }
+}
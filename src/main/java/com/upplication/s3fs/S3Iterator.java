@@ -2,13 +2,16 @@ package com.upplication.s3fs;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
@@ -20,14 +23,24 @@ import com.upplication.s3fs.util.S3Utils;
  * S3 iterator over folders at first level.
  * Future versions of this class should be return the elements
  * in a incremental way when the #next() method is called.
+ * While a page is iterated the next one is requested in background (see {@link S3FileSystem#isListingPrefetch()}),
+ * so the consumer only waits for S3 if it is faster than the listing.
+ * A listing can be resumed from the key returned by {@link #getResumeKey()}.
  */
 public class S3Iterator implements Iterator<Path> {
     private S3FileSystem fileSystem;
     private S3FileStore fileStore;
     private String key;
     private List<S3Path> items = Lists.newArrayList();
-    private Set<S3Path> addedVirtualDirectories = Sets.newHashSet();
+    private Set<S3Path> pageItems = Sets.newHashSet();
+    /**
+     * keys with the end slash of the directories returned that contain the last key, at most one per level
+     */
+    private List<String> ancestors = Lists.newArrayList();
     private ObjectListing current;
+    private Future<ObjectListing> nextPage;
+    private String startAfter;
+    private String pageResumeKey;
     private int cursor; // index of next element to return
     private int size;
     private boolean incremental;
@@ -39,16 +52,32 @@ public class S3Iterator implements Iterator<Path> {
     }
 
     public S3Iterator(S3Path path, boolean incremental) {
-        this(path.getFileStore(), path.getKey() + (!incremental && !path.getKey().isEmpty() && !path.getKey().endsWith("/") ? "/" : ""), incremental);
+        this(path, incremental, null);
+    }
+
+    /**
+     * @param path        S3Path to list
+     * @param incremental boolean true to list all the descendants and not only the first level
+     * @param startAfter  String key after which the listing starts, null to list from the beginning.
+     *                    Usually the value of {@link #getResumeKey()} of a previous listing of the same path.
+     */
+    public S3Iterator(S3Path path, boolean incremental, String startAfter) {
+        this(path.getFileStore(), path.getKey() + (!incremental && !path.getKey().isEmpty() && !path.getKey().endsWith("/") ? "/" : ""), incremental, startAfter);
     }
 
     public S3Iterator(S3FileStore fileStore, String key, boolean incremental) {
+        this(fileStore, key, incremental, null);
+    }
+
+    public S3Iterator(S3FileStore fileStore, String key, boolean incremental, String startAfter) {
         ListObjectsRequest listObjectsRequest = buildRequest(fileStore.name(), key, incremental);
 
         this.fileStore = fileStore;
         this.fileSystem = fileStore.getFileSystem();
         this.key = key;
-        this.current = fileSystem.getClient().listObjects(listObjectsRequest);
+        this.startAfter = startAfter;
+        this.pageResumeKey = startAfter;
+        this.current = fileSystem.getListingEngine().list(fileSystem.getClient(), listObjectsRequest, startAfter);
         this.incremental = incremental;
         loadObjects();
     }
@@ -61,7 +90,10 @@ public class S3Iterator implements Iterator<Path> {
     @Override
     public S3Path next() {
         if (cursor == size && current.isTruncated()) {
-            this.current = fileSystem.getClient().listNextBatchOfObjects(current);
+            String lastKey = lastKey(current);
+            if (lastKey != null)
+                pageResumeKey = lastKey;
+            this.current = fetchNextPage();
             loadObjects();
         }
         if (cursor == size)
@@ -74,12 +106,100 @@ public class S3Iterator implements Iterator<Path> {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Key to pass as startAfter to a new iterator of the same path to continue this listing, for example after
+     * a restart. The position is kept at page granularity: the elements returned from the current page, if it is
+     * not finished, are returned again by the new iterator.
+     *
+     * @return String key or null if the new iterator has to start from the beginning
+     */
+    public String getResumeKey() {
+        if (cursor == size) {
+            String lastKey = lastKey(current);
+            if (lastKey != null)
+                return lastKey;
+        }
+        return pageResumeKey;
+    }
+
+    /**
+     * @return int number of directories remembered to not return them twice, never more than the depth of the tree
+     */
+    int getRememberedDirectories() {
+        return ancestors.size();
+    }
+
+    /**
+     * @return the greatest key or common prefix of the page, null if it is empty
+     */
+    private static String lastKey(ObjectListing page) {
+        String lastKey = null;
+        List<S3ObjectSummary> summaries = page.getObjectSummaries();
+        if (!summaries.isEmpty())
+            lastKey = summaries.get(summaries.size() - 1).getKey();
+        List<String> commonPrefixes = page.getCommonPrefixes();
+        if (!commonPrefixes.isEmpty()) {
+            String lastPrefix = commonPrefixes.get(commonPrefixes.size() - 1);
+            if (lastKey == null || lastPrefix.compareTo(lastKey) > 0)
+                lastKey = lastPrefix;
+        }
+        return lastKey;
+    }
+
+    /**
+     * @param directoryKey String key of a directory, with or without the end slash
+     * @return true if the directory has been returned before the startAfter key of the listing
+     */
+    private boolean returnedBeforeStart(String directoryKey) {
+        if (startAfter == null)
+            return false;
+        String slashed = directoryKey.endsWith("/") ? directoryKey : directoryKey + "/";
+        return slashed.compareTo(startAfter) <= 0;
+    }
+
+    private ObjectListing fetchNextPage() {
+        if (nextPage == null)
+            return fileSystem.getListingEngine().next(fileSystem.getClient(), current);
+        try {
+            return nextPage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            nextPage.cancel(true);
+            throw new AbortedException("interrupted waiting for the next listing page", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new AmazonClientException(e.getCause());
+        } finally {
+            nextPage = null;
+        }
+    }
+
+    /**
+     * request the page after the current one while the current one is iterated, only one page ahead
+     */
+    private void prefetchNextPage() {
+        if (!current.isTruncated() || !fileSystem.isListingPrefetch())
+            return;
+        final ObjectListing previous = current;
+        nextPage = fileSystem.getExecutor().submit(new Callable<ObjectListing>() {
+            @Override
+            public ObjectListing call() {
+                return fileSystem.getListingEngine().next(fileSystem.getClient(), previous);
+            }
+        });
+    }
+
     private void loadObjects() {
+        prefetchNextPage();
         this.items.clear();
+        this.pageItems.clear();
         if (incremental)
             parseObjects();
         else
-            parseObjectListing(key, items, current);
+            parseObjectListing();
         this.size = items.size();
         this.cursor = 0;
     }
@@ -87,96 +207,108 @@ public class S3Iterator implements Iterator<Path> {
     private void parseObjects() {
         for (final S3ObjectSummary objectSummary : current.getObjectSummaries()) {
             final String objectSummaryKey = objectSummary.getKey();
-            String[] keyParts = fileSystem.key2Parts(objectSummaryKey);
-            addParentPaths(keyParts);
-            S3Path path = new S3Path(fileSystem, "/" + fileStore.name(), keyParts);
-            if (!items.contains(path)) {
-                items.add(path);
-            }
+            forgetOtherDirectories(objectSummaryKey);
+            addParentPaths(objectSummaryKey);
+            add(S3Path.forKey(fileStore, objectSummaryKey));
+            if (objectSummaryKey.endsWith("/") && !ancestors.contains(objectSummaryKey))
+                ancestors.add(objectSummaryKey);
         }
     }
 
-    private void addParentPaths(String[] keyParts) {
-        if (keyParts.length <= 1)
-            return;
-        String[] subParts = Arrays.copyOf(keyParts, keyParts.length - 1);
-        List<S3Path> parentPaths = new ArrayList<>();
-        while (subParts.length > 0) {
-            S3Path path = new S3Path(fileSystem,  "/" + fileStore.name(), subParts);
-            String prefix = current.getPrefix();
+    /**
+     * The keys come in order, so once a key is not inside a directory no other key will be:
+     * keep only the directories that contain the key.
+     */
+    private void forgetOtherDirectories(String key) {
+        Iterator<String> iterator = ancestors.iterator();
+        while (iterator.hasNext()) {
+            if (!key.startsWith(iterator.next()))
+                iterator.remove();
+        }
+    }
 
-            String parentKey = path.getKey();
+    private void addParentPaths(String key) {
+        String prefix = current.getPrefix();
+        int end = key.endsWith("/") ? key.length() - 1 : key.length();
+        List<S3Path> parentPaths = new ArrayList<>();
+        for (end = key.lastIndexOf('/', end - 1); end > 0; end = key.lastIndexOf('/', end - 1)) {
+            String parentKey = key.substring(0, end);
             if (prefix.length() > parentKey.length() && prefix.contains(parentKey))
                 break;
-            if (items.contains(path) || addedVirtualDirectories.contains(path)) {
-                subParts = Arrays.copyOf(subParts, subParts.length - 1);
+            String parentPrefix = key.substring(0, end + 1);
+            if (ancestors.contains(parentPrefix))
+                continue;
+            S3Path path = S3Path.forKey(fileStore, parentKey);
+            if (pageItems.contains(path) || returnedBeforeStart(parentKey))
                 continue;
-            }
             parentPaths.add(path);
-            addedVirtualDirectories.add(path);
-            subParts = Arrays.copyOf(subParts, subParts.length - 1);
+            ancestors.add(parentPrefix);
+        }
+        for (int i = parentPaths.size() - 1; i >= 0; i--) {
+            add(parentPaths.get(i));
         }
-        Collections.reverse(parentPaths);
-        items.addAll(parentPaths);
     }
 
+    /**
+     * add the path to the items of the page if it is not there yet
+     */
+    private void add(S3Path path) {
+        if (pageItems.add(path))
+            items.add(path);
+    }
 
     /**
-     * add to the listPath the elements at the same level that s3Path
-     *
-     * @param key      the uri to parse
-     * @param listPath List not null list to add
-     * @param current  ObjectListing to walk
+     * add to the items the elements of the current page at the same level that the key
      */
-    private void parseObjectListing(String key, List<S3Path> listPath, ObjectListing current) {
+    private void parseObjectListing() {
         for (String commonPrefix : current.getCommonPrefixes()) {
-            if (!commonPrefix.equals("/")) {
-                listPath.add(new S3Path(fileSystem,  "/" + fileStore.name(), fileSystem.key2Parts(commonPrefix)));
+            if (!commonPrefix.equals("/") && !returnedBeforeStart(commonPrefix)) {
+                add(S3Path.forKey(fileStore, commonPrefix));
             }
         }
+        String directoryKey = directoryKey(key);
         // TODO: figure our a way to efficiently preprocess commonPrefix basicFileAttributes
         for (final S3ObjectSummary objectSummary : current.getObjectSummaries()) {
             final String objectSummaryKey = objectSummary.getKey();
             // we only want the first level
-            String immediateDescendantKey = getImmediateDescendant(key, objectSummaryKey);
+            String immediateDescendantKey = getImmediateDescendant(directoryKey, objectSummaryKey);
             if (immediateDescendantKey != null) {
-                S3Path descendentPart = new S3Path(fileSystem,  "/" + fileStore.name(), fileSystem.key2Parts(immediateDescendantKey));
-                descendentPart.setFileAttributes(s3Utils.toS3FileAttributes(objectSummary, descendentPart.getKey()));
-                if (!listPath.contains(descendentPart)) {
-                    listPath.add(descendentPart);
-                }
+                S3Path descendentPart = S3Path.forKey(fileStore, immediateDescendantKey);
+                descendentPart.setFileAttributes(s3Utils.toS3FileAttributes(objectSummary, immediateDescendantKey));
+                add(descendentPart);
             }
         }
     }
 
+    /**
+     * @param key String key of the listing
+     * @return String key of the directory listed: the key can continue with the start of a name,
+     * like dir/part- for the entries of dir starting with part-
+     */
+    private static String directoryKey(String key) {
+        return key.substring(0, key.lastIndexOf('/') + 1);
+    }
+
     /**
      * The current #buildRequest() get all subdirectories and her content.
      * This method filter the keyChild and check if is a inmediate
      * descendant of the keyParent parameter
      *
-     * @param keyParent String
-     * @param keyChild  String
-     * @return String parsed
+     * @param keyParent String key of the directory listed, empty or ended with a slash
+     * @param keyChild  String key of the listing that starts with keyParent
+     * @return String key of the child at the first level below keyParent
      * or null when the keyChild and keyParent are the same and not have to be returned
      */
     private String getImmediateDescendant(String keyParent, String keyChild) {
-        keyParent = deleteExtraPath(keyParent);
-        keyChild = deleteExtraPath(keyChild);
-        final int parentLen = keyParent.length();
-        final String childWithoutParent = deleteExtraPath(keyChild.substring(parentLen));
-        String[] parts = childWithoutParent.split("/");
-        if (parts.length > 0 && !parts[0].isEmpty())
-            return keyParent + "/" + parts[0];
-        return null;
-
-    }
-
-    private String deleteExtraPath(String keyChild) {
-        if (keyChild.startsWith("/"))
-            keyChild = keyChild.substring(1);
-        if (keyChild.endsWith("/"))
-            keyChild = keyChild.substring(0, keyChild.length() - 1);
-        return keyChild;
+        if (!keyChild.startsWith(keyParent))
+            return null;
+        int from = keyParent.length();
+        int to = keyChild.indexOf('/', from);
+        if (to < 0)
+            to = keyChild.length();
+        if (to == from)
+            return null;
+        return keyChild.substring(0, to);
     }
 
 
@@ -187,6 +319,7 @@ public class S3Iterator implements Iterator<Path> {
     ListObjectsRequest buildRequest(String bucketName, String key, boolean incremental, Integer maxKeys) {
         if (incremental)
             return new ListObjectsRequest(bucketName, key, null, null, maxKeys);
-        return new ListObjectsRequest(bucketName, key, key, "/", maxKeys);
+        // start after the directory itself, not after the key: a key like dir/part-1.gz is an entry of dir
+        return new ListObjectsRequest(bucketName, key, directoryKey(key), "/", maxKeys);
     }
 }
\ No newline at end of file
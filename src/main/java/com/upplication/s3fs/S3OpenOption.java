@@ -0,0 +1,139 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.file.OpenOption;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import static java.lang.String.format;
+
+/**
+ * OpenOptions to read a fixed content of an object:
+ * {@link #ifMatch(String)} fails the reads if the object doesnt have the ETag anymore (it has been overwritten)
+ * and {@link #versionId(String)} reads a version of the object of a versioned bucket.
+ * Supported by newInputStream, newByteChannel and newFileChannel.
+ */
+public final class S3OpenOption implements OpenOption {
+
+    private final String eTag;
+    private final String versionId;
+
+    private S3OpenOption(String eTag, String versionId) {
+        this.eTag = eTag;
+        this.versionId = versionId;
+    }
+
+    /**
+     * @param eTag String ETag that the object must have, mandatory
+     * @return S3OpenOption that makes every GET of the object carry If-Match
+     */
+    public static S3OpenOption ifMatch(String eTag) {
+        Preconditions.checkArgument(eTag != null && !eTag.isEmpty(), "eTag is mandatory");
+        return new S3OpenOption(eTag, null);
+    }
+
+    /**
+     * @param versionId String id of the version to read, mandatory
+     * @return S3OpenOption that makes every GET of the object read this version
+     */
+    public static S3OpenOption versionId(String versionId) {
+        Preconditions.checkArgument(versionId != null && !versionId.isEmpty(), "versionId is mandatory");
+        return new S3OpenOption(null, versionId);
+    }
+
+    /**
+     * @return String ETag or null if this option pins a version
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * @return String versionId or null if this option pins an ETag
+     */
+    public String getVersionId() {
+        return versionId;
+    }
+
+    /**
+     * add the version or the If-Match of this option to the request
+     *
+     * @param request GetObjectRequest
+     * @return the same request
+     */
+    public GetObjectRequest apply(GetObjectRequest request) {
+        if (versionId != null)
+            return request.withVersionId(versionId);
+        return request.withMatchingETagConstraint(eTag);
+    }
+
+    /**
+     * @param options Iterable with OpenOptions
+     * @return the last S3OpenOption of the options or null if there is none
+     */
+    static S3OpenOption find(Iterable<? extends OpenOption> options) {
+        S3OpenOption found = null;
+        for (OpenOption option : options) {
+            if (option instanceof S3OpenOption)
+                found = (S3OpenOption) option;
+        }
+        return found;
+    }
+
+    /**
+     * @param options Set with OpenOptions
+     * @return Set with the same options but the S3OpenOptions, that the default fileSystem doesnt support
+     */
+    static Set<OpenOption> withoutS3OpenOptions(Set<? extends OpenOption> options) {
+        Set<OpenOption> result = new HashSet<>();
+        for (OpenOption option : options) {
+            if (!(option instanceof S3OpenOption))
+                result.add(option);
+        }
+        return result;
+    }
+
+    /**
+     * get the object of the path with the content pinned by the option
+     *
+     * @param path S3Path of the object
+     * @param pin  S3OpenOption or null to get the current content
+     * @return S3Object never null
+     * @throws IOException if the object has not the pinned ETag anymore
+     */
+    static S3Object getObject(S3Path path, S3OpenOption pin) throws IOException {
+        String bucket = path.getFileStore().name();
+        if (pin == null)
+            return path.getFileSystem().getClient().getObject(bucket, path.getKey());
+
+        S3Object object = path.getFileSystem().getClient().getObject(pin.apply(new GetObjectRequest(bucket, path.getKey())));
+        if (object == null)
+            throw new IOException(format("%s has changed, it doesnt have the ETag %s anymore", path, pin.eTag));
+        return object;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof S3OpenOption))
+            return false;
+        S3OpenOption that = (S3OpenOption) o;
+        return Objects.equals(eTag, that.eTag) && Objects.equals(versionId, that.versionId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(eTag, versionId);
+    }
+
+    @Override
+    public String toString() {
+        return versionId != null ? "versionId=" + versionId : "ifMatch=" + eTag;
+    }
+}
@@ -104,6 +104,27 @@ public class S3Path implements Path {
         this.fileSystem = fileSystem;
     }
 
+    /**
+     * Build the absolute S3Path of a key returned by a listing without splitting and joining it again:
+     * equal to {@code new S3Path(fileSystem, "/" + fileStore.name(), fileSystem.key2Parts(key))}.
+     *
+     * @param fileStore S3FileStore of the bucket, shared by the paths built
+     * @param key       String key, the final slash of a directory is removed
+     * @return S3Path never null
+     */
+    static S3Path forKey(S3FileStore fileStore, String key) {
+        if (key.isEmpty() || key.startsWith(PATH_SEPARATOR) || key.contains("//"))
+            return new S3Path(fileStore.getFileSystem(), PATH_SEPARATOR + fileStore.name(), fileStore.getFileSystem().key2Parts(key));
+        int end = key.endsWith(PATH_SEPARATOR) ? key.length() - 1 : key.length();
+        return new S3Path(fileStore, PATH_SEPARATOR + key.substring(0, end));
+    }
+
+    private S3Path(S3FileStore fileStore, String uri) {
+        this.fileStore = fileStore;
+        this.uri = uri;
+        this.fileSystem = fileStore.getFileSystem();
+    }
+
     /**
      * Remove duplicated slash
      */
@@ -0,0 +1,256 @@
+package com.upplication.s3fs;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * PathMatcher of the glob and regex syntax returned by {@link S3FileSystem#getPathMatcher(String)}.
+ * Matches the string of the path without the end slash: "/bucket/key" for an absolute path and the key for
+ * a relative one. The glob syntax is the one of {@link java.nio.file.FileSystem#getPathMatcher(String)}.
+ * <p>
+ * As a {@link DirectoryStream.Filter} it accepts the entries whose path relative to the directory matches, like the filter of
+ * {@link java.nio.file.Files#newDirectoryStream(Path, String)}, and {@link S3FileSystemProvider#newDirectoryStream(Path, DirectoryStream.Filter)}
+ * uses its {@link #getLiteralPrefix()} to only list the keys that can match, so a pattern like logs/2026-10-* only
+ * lists the keys starting with logs/2026-10-.
+ */
+public class S3PathMatcher implements PathMatcher, DirectoryStream.Filter<Path> {
+
+    public static final String GLOB_SYNTAX = "glob";
+    public static final String REGEX_SYNTAX = "regex";
+
+    private static final String GLOB_META_CHARS = "\\*?[{";
+    private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+
+    private final String syntaxAndPattern;
+    private final Pattern pattern;
+    private final String literalPrefix;
+    private final boolean multiLevel;
+
+    /**
+     * @param syntaxAndPattern String with the form syntax:pattern, syntax glob or regex
+     * @throws IllegalArgumentException      if it has not the form syntax:pattern
+     * @throws PatternSyntaxException        if the pattern is invalid
+     * @throws UnsupportedOperationException if the syntax is not glob or regex
+     */
+    public S3PathMatcher(String syntaxAndPattern) {
+        int colon = syntaxAndPattern.indexOf(':');
+        if (colon <= 0)
+            throw new IllegalArgumentException("syntax and pattern must have the form syntax:pattern: " + syntaxAndPattern);
+        String syntax = syntaxAndPattern.substring(0, colon);
+        String expression = syntaxAndPattern.substring(colon + 1);
+        this.syntaxAndPattern = syntaxAndPattern;
+        if (syntax.equalsIgnoreCase(GLOB_SYNTAX)) {
+            this.pattern = Pattern.compile(globToRegex(expression));
+            this.literalPrefix = globLiteralPrefix(expression);
+            this.multiLevel = expression.contains(S3Path.PATH_SEPARATOR) || expression.contains("**");
+        } else if (syntax.equalsIgnoreCase(REGEX_SYNTAX)) {
+            this.pattern = Pattern.compile(expression);
+            this.literalPrefix = regexLiteralPrefix(expression);
+            this.multiLevel = expression.contains(S3Path.PATH_SEPARATOR);
+        } else {
+            throw new UnsupportedOperationException("syntax '" + syntax + "' not recognized");
+        }
+    }
+
+    @Override
+    public boolean matches(Path path) {
+        return matches(toMatchString(path));
+    }
+
+    /**
+     * @param path String path with the separator /
+     * @return true if the whole path matches the pattern
+     */
+    public boolean matches(String path) {
+        return pattern.matcher(path).matches();
+    }
+
+    /**
+     * accept the entries of a directory with a path relative to the directory that matches. For an entry of the
+     * directory itself that is its file name, use {@link #accept(S3Path, S3Path)} for the entries of the levels below.
+     */
+    @Override
+    public boolean accept(Path entry) {
+        Path fileName = entry.getFileName();
+        return fileName != null && matches(fileName);
+    }
+
+    /**
+     * accept the entries below a directory with a path relative to the directory that matches
+     *
+     * @param dir   S3Path of the directory
+     * @param entry S3Path of an entry of the directory or of one of the levels below
+     * @return true if the entry is below the directory and its path relative to the directory matches
+     */
+    public boolean accept(S3Path dir, S3Path entry) {
+        String prefix = withoutEndSlash(dir.getKey());
+        if (!prefix.isEmpty())
+            prefix += S3Path.PATH_SEPARATOR;
+        String key = withoutEndSlash(entry.getKey());
+        return key.length() > prefix.length() && key.startsWith(prefix) && matches(key.substring(prefix.length()));
+    }
+
+    /**
+     * @return String that all the matching paths start with, empty if the pattern starts with a wildcard
+     */
+    public String getLiteralPrefix() {
+        return literalPrefix;
+    }
+
+    /**
+     * @return true if the pattern can match paths of more than one level: it has a slash or the glob **
+     */
+    public boolean isMultiLevel() {
+        return multiLevel;
+    }
+
+    @Override
+    public String toString() {
+        return syntaxAndPattern;
+    }
+
+    private static String toMatchString(Path path) {
+        if (!(path instanceof S3Path))
+            return path.toString();
+        S3Path s3Path = (S3Path) path;
+        String key = withoutEndSlash(s3Path.getKey());
+        if (s3Path.isAbsolute())
+            return S3Path.PATH_SEPARATOR + s3Path.getFileStore().name() + (key.isEmpty() ? "" : S3Path.PATH_SEPARATOR + key);
+        return key;
+    }
+
+    private static String withoutEndSlash(String key) {
+        return key.endsWith(S3Path.PATH_SEPARATOR) ? key.substring(0, key.length() - 1) : key;
+    }
+
+    /**
+     * @param glob String glob pattern
+     * @return String regex that matches the same strings
+     * @throws PatternSyntaxException if the glob is invalid
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inGroup = false;
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+            switch (c) {
+                case '\\':
+                    if (i == glob.length())
+                        throw new PatternSyntaxException("No character to escape", glob, i - 1);
+                    appendLiteral(regex, glob.charAt(i++));
+                    break;
+                case '*':
+                    if (i < glob.length() && glob.charAt(i) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    i = appendBracket(glob, i, regex);
+                    break;
+                case '{':
+                    if (inGroup)
+                        throw new PatternSyntaxException("Cannot nest groups", glob, i - 1);
+                    regex.append("(?:(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    if (inGroup) {
+                        regex.append("))");
+                        inGroup = false;
+                    } else {
+                        regex.append('}');
+                    }
+                    break;
+                case ',':
+                    regex.append(inGroup ? ")|(?:" : ",");
+                    break;
+                default:
+                    appendLiteral(regex, c);
+            }
+        }
+        if (inGroup)
+            throw new PatternSyntaxException("Missing '}'", glob, glob.length() - 1);
+        return regex.toString();
+    }
+
+    /**
+     * append the bracket expression that starts at index (after the '[')
+     *
+     * @return int index after the ']'
+     */
+    private static int appendBracket(String glob, int i, StringBuilder regex) {
+        regex.append("[[^/]&&[");
+        if (i < glob.length() && glob.charAt(i) == '^') {
+            regex.append("\\^");
+            i++;
+        } else if (i < glob.length() && glob.charAt(i) == '!') {
+            regex.append('^');
+            i++;
+        }
+        boolean first = true;
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+            if (c == ']' && !first) {
+                regex.append("]]");
+                return i;
+            }
+            if (c == '/')
+                throw new PatternSyntaxException("Explicit 'name separator' in class", glob, i - 1);
+            if (c == '[' || c == '\\' || c == '&' || (c == ']' && first))
+                regex.append('\\');
+            regex.append(c);
+            first = false;
+        }
+        throw new PatternSyntaxException("Missing ']'", glob, glob.length() - 1);
+    }
+
+    private static void appendLiteral(StringBuilder regex, char c) {
+        if (REGEX_META_CHARS.indexOf(c) >= 0)
+            regex.append('\\');
+        regex.append(c);
+    }
+
+    static String globLiteralPrefix(String glob) {
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '\\' && i + 1 < glob.length()) {
+                prefix.append(glob.charAt(++i));
+            } else if (GLOB_META_CHARS.indexOf(c) >= 0) {
+                break;
+            } else {
+                prefix.append(c);
+            }
+        }
+        return prefix.toString();
+    }
+
+    static String regexLiteralPrefix(String regex) {
+        // an alternative at the top level can start with anything
+        if (regex.contains("|"))
+            return "";
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (REGEX_META_CHARS.indexOf(c) < 0) {
+                prefix.append(c);
+                continue;
+            }
+            // the character before a quantifier is optional or repeated
+            if ((c == '?' || c == '*' || c == '{') && prefix.length() > 0)
+                prefix.setLength(prefix.length() - 1);
+            break;
+        }
+        return prefix.toString();
+    }
+}
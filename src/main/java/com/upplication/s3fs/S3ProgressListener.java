@@ -0,0 +1,26 @@
+package com.upplication.s3fs;
+
+/**
+ * Receives the progress of a bulk operation, for example {@link S3FileSystemProvider#moveRecursive(java.nio.file.Path, java.nio.file.Path, S3ProgressListener, java.nio.file.CopyOption...)}.
+ * It is called from the threads doing the work, one call at a time.
+ */
+public interface S3ProgressListener {
+
+    /**
+     * No progress reported
+     */
+    S3ProgressListener NONE = new S3ProgressListener() {
+        @Override
+        public void progress(long objects, long bytes) {
+            // nothing
+        }
+    };
+
+    /**
+     * Some objects are done
+     *
+     * @param objects long total number of objects done since the operation started
+     * @param bytes   long total size of the objects done since the operation started
+     */
+    void progress(long objects, long bytes);
+}
@@ -2,22 +2,33 @@ package com.upplication.s3fs;
 
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.base.Function;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.OpenOption;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
-/** Optimized for seeking specific byte ranges for S3 objects. Does not support write and some other operations */
+import static java.lang.String.format;
+
+/**
+ * Optimized for seeking specific byte ranges for S3 objects. Does not support write and some other operations.
+ * All the reads get the same content of the object: the ETag of the first response (or the {@link S3OpenOption}
+ * of the channel) is sent as If-Match by the next ones, so they fail instead of mixing two contents if the
+ * object is overwritten while reading it.
+ */
 public class S3RangeBasedSeekableByteChannel implements SeekableByteChannel {
 
     private S3Path path;
     private boolean open = true;
     private long position = 0;
+    private volatile S3OpenOption pin;
 
     /**
      * Open or creates a file, returning a seekable byte channel
@@ -25,7 +36,18 @@ public class S3RangeBasedSeekableByteChannel implements SeekableByteChannel {
      * @param path    the path open or create
      */
     public S3RangeBasedSeekableByteChannel(S3Path path) {
+        this(path, null);
+    }
+
+    /**
+     * Open a file pinned to a version or ETag, returning a seekable byte channel
+     *
+     * @param path the path open
+     * @param pin  S3OpenOption with the ETag or version to read, null to pin the ETag of the first read
+     */
+    public S3RangeBasedSeekableByteChannel(S3Path path, S3OpenOption pin) {
         this.path = path;
+        this.pin = pin;
     }
 
     @Override
@@ -64,28 +86,85 @@ public class S3RangeBasedSeekableByteChannel implements SeekableByteChannel {
 
     @Override
     public int read(ByteBuffer dst) throws IOException {
-        int capacity = dst.capacity();
+        final int capacity = dst.capacity();
+        final long start = position;
+        final S3OpenOption pin = this.pin;
+        // read straight into the array of a heap buffer, only a direct buffer needs a copy
+        final byte[] array = dst.hasArray() ? dst.array() : null;
+        final int offset = dst.hasArray() ? dst.arrayOffset() : 0;
+
+        // concurrent reads of the same range and content share one GET, see InFlightRequests.
+        // The bytes are in the buffer of the caller that sends it, so the others get a copy
+        Range range = path.getFileSystem().getInFlightRequests().execute("GET", path.getFileStore().name(), path.getKey(),
+                start + "-" + (start + capacity) + (pin != null ? " " + pin : ""), new Callable<Range>() {
+                    @Override
+                    public Range call() throws IOException {
+                        return readRange(start, capacity, pin, array != null ? array : new byte[capacity], offset);
+                    }
+                }, new Function<Range, Range>() {
+                    @Override
+                    public Range apply(Range range) {
+                        return range.copy();
+                    }
+                });
+        if (pin == null && range.eTag != null)
+            this.pin = S3OpenOption.ifMatch(range.eTag);
+
+        if (range.bytes != array) {
+            ByteBuffer target = dst.duplicate();
+            target.clear();
+            target.put(range.bytes, range.offset, range.length);
+        }
+        position += range.length;
+        // same result as the last InputStream#read: 0 when the buffer is full, -1 when the object ended before
+        return range.length == capacity ? 0 : -1;
+    }
 
-        String key = path.getKey();
-        try (S3Object object = path.getFileSystem()
-                .getClient()
-                .getObject(new GetObjectRequest(path.getFileStore().name(), key).withRange(position, position + capacity))) {
+    private Range readRange(long start, int capacity, S3OpenOption pin, byte[] array, int offset) throws IOException {
+        GetObjectRequest request = new GetObjectRequest(path.getFileStore().name(), path.getKey()).withRange(start, start + capacity);
+        if (pin != null)
+            pin.apply(request);
+        try (S3Object object = path.getFileSystem().getClient().getObject(request)) {
+            if (object == null)
+                throw new IOException(format("%s has changed while reading it, it doesnt have the ETag %s anymore", path, pin != null ? pin.getETag() : null));
             try (InputStream in = object.getObjectContent())
             {
                 // Issue 36929 - be sure to fully consume all of the available bytes, not just do a single read()
                 int index = 0;
                 int bytesRead;
-                byte[] array = dst.array();
-                while ((bytesRead = in.read(array, index, array.length - index)) > 0)
+                while ((bytesRead = in.read(array, offset + index, capacity - index)) > 0)
                 {
-                    position += bytesRead;
                     index+= bytesRead;
                 }
-                return bytesRead;
+                return new Range(array, offset, index, object.getObjectMetadata().getETag());
             }
         }
     }
 
+    /**
+     * bytes read and ETag of the object they belong to
+     */
+    private static class Range {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+        private final String eTag;
+
+        private Range(byte[] bytes, int offset, int length, String eTag) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+            this.eTag = eTag;
+        }
+
+        /**
+         * @return Range with its own copy of the bytes
+         */
+        private Range copy() {
+            return new Range(Arrays.copyOfRange(bytes, offset, offset + length), 0, length, eTag);
+        }
+    }
+
     @Override
     public SeekableByteChannel position(long newPosition) throws IOException {
         position = newPosition;
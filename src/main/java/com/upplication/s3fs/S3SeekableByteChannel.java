@@ -44,8 +44,7 @@ public class S3SeekableByteChannel implements SeekableByteChannel {
      */
     public S3SeekableByteChannel(S3Path path, Set<? extends OpenOption> options) throws IOException {
         this.path = path;
-        this.options = Collections.unmodifiableSet(new HashSet<>(options));
-        String key = path.getKey();
+        this.options = Collections.unmodifiableSet(S3OpenOption.withoutS3OpenOptions(options));
 
         boolean exists = false;
         if (!options.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
@@ -62,9 +61,7 @@ public class S3SeekableByteChannel implements SeekableByteChannel {
         boolean removeTempFile = true;
         try {
             if (exists) {
-                try (S3Object object = path.getFileSystem()
-                        .getClient()
-                        .getObject(path.getFileStore().getBucket().getName(), key)) {
+                try (S3Object object = S3OpenOption.getObject(path, S3OpenOption.find(options))) {
                     Files.copy(object.getObjectContent(), tempFile, StandardCopyOption.REPLACE_EXISTING);
                 }
             }
@@ -122,11 +119,25 @@ public class S3SeekableByteChannel implements SeekableByteChannel {
      * @throws IOException if the tempFile fails to open a newInputStream
      */
     protected void sync() throws IOException {
-        long size = Files.size(tempFile);
+        // Stash the response from S3 to be used later
+        putResult = upload(path, tempFile.toFile(), lastModified);
+    }
+
+    /**
+     * Upload a local file to the s3 path: with one request, or by parts in parallel when it is bigger
+     * than {@link S3FileSystemProvider#PARALLEL_SIZE_THRESHOLD}.
+     *
+     * @param path         S3Path target
+     * @param file         File to upload
+     * @param lastModified Date to store as the last modified time, null for the time of the upload
+     * @return PutObjectResult of the request, null when uploaded by parts
+     * @throws IOException if the upload is interrupted
+     */
+    static PutObjectResult upload(S3Path path, File file, Date lastModified) throws IOException {
+        long size = file.length();
         String bucket = path.getFileStore().name();
         String key = path.getKey();
 
-        File file = tempFile.toFile();
         PutObjectRequest request = new PutObjectRequest(bucket, key, file).withMetadata(new ObjectMetadata());
         if (lastModified != null)
         {
@@ -134,6 +145,8 @@ public class S3SeekableByteChannel implements SeekableByteChannel {
         }
 
         AmazonS3 client = path.getFileSystem().getClient();
+        PutObjectResult result = null;
+        String eTag = null;
         // Uploads of > 5GB have to be done using a multipart upload instead of a single PUT, but we can get better
         // perf by allowing the parallelization of uploads for reasonably large files as well.
         if (size > S3FileSystemProvider.PARALLEL_SIZE_THRESHOLD)
@@ -150,7 +163,7 @@ public class S3SeekableByteChannel implements SeekableByteChannel {
 
                 // Wait for the upload to finish before continuing.
                 try {
-                    upload.waitForCompletion();
+                    eTag = upload.waitForUploadResult().getETag();
                 } catch (InterruptedException e) {
                     throw new IOException(e);
                 }
@@ -164,10 +177,11 @@ public class S3SeekableByteChannel implements SeekableByteChannel {
         {
             // Pass the raw file instead of an input stream, due to issue 36518
             // See https://github.com/aws/aws-sdk-java/issues/427
-
-            // Stash the response from S3 to be used later
-            putResult = client.putObject(request);
+            result = client.putObject(request);
+            eTag = result != null ? result.getETag() : null;
         }
+        path.getFileSystem().getMetadataCache().written(path, eTag, size, lastModified != null ? lastModified : new Date());
+        return result;
     }
 
     @Override
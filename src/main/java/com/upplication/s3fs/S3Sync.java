@@ -0,0 +1,256 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.BaseEncoding;
+import com.upplication.s3fs.attribute.S3BasicFileAttributeView;
+import com.upplication.s3fs.util.BatchDeleter;
+import com.upplication.s3fs.util.ParallelTasks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * Mirrors a local directory to a directory of a bucket, or the other way around, transferring only the files that
+ * are new or changed (see {@link S3BulkTransfer}) and optionally deleting the ones that are only in the target.
+ * The objects are known from a recursive listing. A file and an object of the same size are the same when:
+ * <ul>
+ * <li>downloading, the file has the last modified time of the listing (to the second), like the files downloaded by a sync, or else</li>
+ * <li>the object has the {@link S3BasicFileAttributeView#LABKEY_LAST_MODIFIED} metadata (one request) and it is the last
+ * modified time of the file, like the objects uploaded by a sync, or else, without that metadata</li>
+ * <li>the ETag is the MD5 of the content of the file, or of the MD5 of its parts of {@link S3FileSystem#getUploadPartSize()}
+ * for a multipart upload</li>
+ * </ul>
+ *
+ * @see S3FileSystemProvider#syncRecursive(Path, Path, boolean, S3ProgressListener)
+ */
+class S3Sync {
+
+    private final S3FileSystem fileSystem;
+    private final S3BulkTransfer transfer;
+    private final boolean deleteExtras;
+
+    S3Sync(S3FileSystem fileSystem, S3ProgressListener listener, boolean deleteExtras) {
+        this.fileSystem = fileSystem;
+        this.transfer = new S3BulkTransfer(fileSystem, listener);
+        this.deleteExtras = deleteExtras;
+    }
+
+    /**
+     * @param localDir Path of the default fileSystem
+     * @param target   S3Path of the directory
+     * @param prefix   String key of the directory, empty or ending with slash
+     * @param listing  Iterator with the objects under the prefix
+     * @throws S3BatchDeleteException if some objects only in the target could not be deleted
+     */
+    S3TransferSummary upload(Path localDir, final S3Path target, String prefix, Iterator<S3ObjectSummary> listing) throws IOException {
+        final String bucketName = target.getFileStore().name();
+        final Map<String, S3ObjectSummary> remote = byKey(listing);
+        Map<Path, String> local = S3BulkTransfer.localKeys(localDir, prefix);
+
+        ParallelTasks.forEach(fileSystem.getExecutor(), fileSystem.getMaxConcurrentRequests(), local.entrySet().iterator(),
+                new ParallelTasks.Task<Map.Entry<Path, String>>() {
+                    @Override
+                    public void run(Map.Entry<Path, String> file) throws Exception {
+                        String key = file.getValue();
+                        S3ObjectSummary summary = remote.get(key);
+                        if (key.endsWith(S3Path.PATH_SEPARATOR)) {
+                            if (summary == null)
+                                transfer.uploadMarker(bucketName, key);
+                        } else if (summary == null || changed(file.getKey(), summary, bucketName, false)) {
+                            transfer.uploadFile(file.getKey(), bucketName, key);
+                        }
+                    }
+                });
+
+        if (deleteExtras) {
+            Set<String> keep = withDirectories(local.values(), prefix);
+            final BatchDeleter deleter = new BatchDeleter(fileSystem.getClient(), bucketName, S3FileSystemProvider.DELETE_BATCH_SIZE,
+                    S3ProgressListener.NONE);
+            Map<String, Long> extras = new HashMap<>();
+            for (S3ObjectSummary summary : remote.values()) {
+                if (!keep.contains(summary.getKey()))
+                    extras.put(summary.getKey(), summary.getSize());
+            }
+            ParallelTasks.forEach(fileSystem.getExecutor(), fileSystem.getMaxConcurrentRequests(), extras.entrySet().iterator(),
+                    new ParallelTasks.Task<Map.Entry<String, Long>>() {
+                        @Override
+                        public void run(Map.Entry<String, Long> extra) {
+                            deleter.add(extra.getKey(), extra.getValue());
+                        }
+                    });
+            deleter.flush();
+            SortedMap<String, String> failures = deleter.getFailures();
+            if (!failures.isEmpty())
+                throw new S3BatchDeleteException(target.toString(), failures);
+        }
+        return transfer.summary();
+    }
+
+    /**
+     * @param source   S3Path of the directory
+     * @param prefix   String key of the directory, empty or ending with slash
+     * @param listing  Iterator with the objects under the prefix
+     * @param localDir Path of the default fileSystem
+     */
+    S3TransferSummary download(final S3Path source, final String prefix, Iterator<S3ObjectSummary> listing, Path localDir) throws IOException {
+        final Path root = localDir.toAbsolutePath().normalize();
+        Map<String, S3ObjectSummary> remote = byKey(listing);
+
+        ParallelTasks.forEach(fileSystem.getExecutor(), fileSystem.getMaxConcurrentRequests(), remote.values().iterator(),
+                new ParallelTasks.Task<S3ObjectSummary>() {
+                    @Override
+                    public void run(S3ObjectSummary summary) throws Exception {
+                        String key = summary.getKey();
+                        Path local = S3BulkTransfer.localPath(root, prefix, key);
+                        if (key.endsWith(S3Path.PATH_SEPARATOR)) {
+                            Files.createDirectories(local);
+                            return;
+                        }
+                        if (Files.isRegularFile(local) && !changed(local, summary, source.getFileStore().name(), true))
+                            return;
+                        Files.createDirectories(local.getParent());
+                        // the time of the listing, so the next sync knows it is the same without reading it
+                        FileTime lastModified = summary.getLastModified() != null ? FileTime.fromMillis(summary.getLastModified().getTime()) : null;
+                        transfer.downloadFile(S3Path.forKey(source.getFileStore(), key), summary.getSize(), summary.getETag(), lastModified, local);
+                    }
+                });
+
+        if (deleteExtras && Files.isDirectory(root)) {
+            final Set<String> keep = withDirectories(remote.keySet(), prefix);
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (!keep.contains(S3BulkTransfer.key(root, file, prefix)))
+                        Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null)
+                        throw exc;
+                    if (!dir.equals(root) && !keep.contains(S3BulkTransfer.key(root, dir, prefix) + S3Path.PATH_SEPARATOR))
+                        Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return transfer.summary();
+    }
+
+    private static Map<String, S3ObjectSummary> byKey(Iterator<S3ObjectSummary> listing) {
+        Map<String, S3ObjectSummary> byKey = new HashMap<>();
+        while (listing.hasNext()) {
+            S3ObjectSummary summary = listing.next();
+            byKey.put(summary.getKey(), summary);
+        }
+        return byKey;
+    }
+
+    /**
+     * @return Set with the keys and the keys of all their parent directories (ending with slash) under the prefix
+     */
+    private static Set<String> withDirectories(Iterable<String> keys, String prefix) {
+        Set<String> all = new HashSet<>();
+        all.add(prefix);
+        for (String key : keys) {
+            all.add(key);
+            for (int slash = key.lastIndexOf('/', key.length() - 2); slash >= prefix.length(); slash = key.lastIndexOf('/', slash - 1)) {
+                all.add(key.substring(0, slash + 1));
+            }
+        }
+        return all;
+    }
+
+    /**
+     * @param downloading boolean true if the sync downloads the object, so the file can have the time of the listing
+     * @return true if the local file and the object are not the same, see the rules of this class
+     */
+    private boolean changed(Path file, S3ObjectSummary summary, String bucketName, boolean downloading) throws IOException, InterruptedException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (attributes.size() != summary.getSize())
+            return true;
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        // only a download gives the file the time of the listing, in an upload the same time is a coincidence
+        if (downloading && summary.getLastModified() != null && lastModified / 1000 == summary.getLastModified().getTime() / 1000)
+            return false;
+
+        ObjectMetadata metadata;
+        try {
+            metadata = transfer.getObjectMetadata(bucketName, summary.getKey());
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404)
+                return true;
+            throw e;
+        }
+        String stored = metadata.getUserMetaDataOf(S3BasicFileAttributeView.LABKEY_LAST_MODIFIED);
+        if (stored != null) {
+            try {
+                return Long.parseLong(stored) != lastModified;
+            } catch (NumberFormatException e) {
+                // not a time, compare the content
+            }
+        }
+
+        String eTag = summary.getETag() != null ? summary.getETag().replace("\"", "") : null;
+        if (eTag == null)
+            return true;
+        String localETag = localETag(file, attributes.size(), eTag);
+        return localETag == null || !localETag.equals(eTag);
+    }
+
+    /**
+     * ETag that S3 gives to the content of the file: the MD5 of the content for a single request upload, or the MD5
+     * of the MD5 of every part and the number of parts for a multipart upload.
+     *
+     * @return String or null if it can not be computed: a multipart upload with parts of another size or an ETag not
+     * made from the content (encrypted objects for example)
+     */
+    private String localETag(Path file, long size, String eTag) throws IOException {
+        int dash = eTag.indexOf('-');
+        if (dash < 0)
+            return eTag.length() == 32 ? md5(file, 0, size) : null;
+        long partSize = fileSystem.getUploadPartSize();
+        long parts = (size + partSize - 1) / partSize;
+        if (!eTag.substring(dash + 1).equals(Long.toString(parts)))
+            return null;
+        MessageDigest digest = md5();
+        for (long offset = 0; offset < size; offset += partSize) {
+            digest.update(BaseEncoding.base16().lowerCase().decode(md5(file, offset, Math.min(partSize, size - offset))));
+        }
+        return BaseEncoding.base16().lowerCase().encode(digest.digest()) + "-" + parts;
+    }
+
+    private static String md5(Path file, long offset, long length) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            ByteStreams.skipFully(in, offset);
+            HashingInputStream hashing = new HashingInputStream(Hashing.md5(), ByteStreams.limit(in, length));
+            ByteStreams.copy(hashing, ByteStreams.nullOutputStream());
+            return hashing.hash().toString();
+        }
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
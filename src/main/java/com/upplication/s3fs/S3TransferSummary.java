@@ -0,0 +1,53 @@
+package com.upplication.s3fs;
+
+/**
+ * Objects and bytes transferred by a bulk upload or download, and the time it took.
+ *
+ * @see S3FileSystemProvider#uploadRecursive(java.nio.file.Path, java.nio.file.Path, S3ProgressListener)
+ * @see S3FileSystemProvider#downloadRecursive(java.nio.file.Path, java.nio.file.Path, S3ProgressListener)
+ */
+public class S3TransferSummary {
+
+    private final long objects;
+    private final long bytes;
+    private final long millis;
+
+    S3TransferSummary(long objects, long bytes, long millis) {
+        this.objects = objects;
+        this.bytes = bytes;
+        this.millis = millis;
+    }
+
+    /**
+     * @return long number of files and directories transferred
+     */
+    public long getObjects() {
+        return objects;
+    }
+
+    /**
+     * @return long total size of the files transferred
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return long milliseconds from the start to the end of the transfer
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return long aggregate throughput of all the files transferred at the same time
+     */
+    public long getBytesPerSecond() {
+        return millis > 0 ? bytes * 1000 / millis : bytes;
+    }
+
+    @Override
+    public String toString() {
+        return objects + " objects, " + bytes + " bytes in " + millis + " ms";
+    }
+}
@@ -45,13 +45,17 @@ public class S3BasicFileAttributeView implements BasicFileAttributeView {
     @Override
     public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) throws IOException {
         AmazonS3 client = s3Path.getFileStore().getFileSystem().getClient();
-        String sourceBucketName = s3Path.getFileStore().getBucket().getName();
+        String sourceBucketName = s3Path.getFileStore().name();
         String targetBucketName = sourceBucketName;
         String sourceKey = s3Path.getKey();
         String targetKey = sourceKey;
+        S3FileTimes times = new S3FileTimes(lastModifiedTime, lastAccessTime, createTime);
         try {
             ObjectMetadata metadataCopy = client.getObjectMetadata(sourceBucketName, sourceKey).clone();
-            setMetadataTimes(metadataCopy, lastModifiedTime, lastAccessTime, createTime);
+            // nothing to copy if the object has these times already
+            if (times.matches(metadataCopy))
+                return;
+            times.applyTo(metadataCopy);
 
             // S3 doesn't let you modify attributes of existing objects. However, you can set them as part of a copy
             // operation, and the copy's source and target locations can be identical. This means we don't have to download
@@ -61,6 +65,9 @@ public class S3BasicFileAttributeView implements BasicFileAttributeView {
         catch (AmazonS3Exception e) {
             S3FileSystemProvider.translateAndThrowS3Exception(e, nioPath);
         }
+        finally {
+            s3Path.getFileSystem().getMetadataCache().invalidate(s3Path);
+        }
     }
 
 
@@ -78,4 +85,19 @@ public class S3BasicFileAttributeView implements BasicFileAttributeView {
         }
         return metadata;
     }
+
+    /**
+     * @return FileTime of the {@link #LABKEY_LAST_MODIFIED} user metadata, or the last modified time of S3 without it
+     */
+    public static FileTime getMetadataLastModified(ObjectMetadata metadata)
+    {
+        String customLastModified = metadata.getUserMetaDataOf(LABKEY_LAST_MODIFIED);
+        if (customLastModified != null) {
+            try {
+                return FileTime.fromMillis(Long.parseLong(customLastModified));
+            }
+            catch (NumberFormatException ignored) {}
+        }
+        return metadata.getLastModified() != null ? FileTime.fromMillis(metadata.getLastModified().getTime()) : null;
+    }
 }
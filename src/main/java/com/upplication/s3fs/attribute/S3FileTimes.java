@@ -0,0 +1,63 @@
+package com.upplication.s3fs.attribute;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.nio.file.attribute.FileTime;
+
+/**
+ * The times to set to an object, like the arguments of {@link S3BasicFileAttributeView#setTimes(FileTime, FileTime, FileTime)}:
+ * a null time is left as it is. They are stored in the user metadata of the object.
+ *
+ * @see com.upplication.s3fs.S3FileSystemProvider#setTimes(java.util.Map, com.upplication.s3fs.S3ProgressListener)
+ */
+public class S3FileTimes {
+
+    private final FileTime lastModifiedTime;
+    private final FileTime lastAccessTime;
+    private final FileTime createTime;
+
+    public S3FileTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) {
+        this.lastModifiedTime = lastModifiedTime;
+        this.lastAccessTime = lastAccessTime;
+        this.createTime = createTime;
+    }
+
+    public FileTime getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    public FileTime getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    public FileTime getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * @param metadata ObjectMetadata of the object
+     * @return true if the metadata already has all the times not null, so there is nothing to change
+     */
+    public boolean matches(ObjectMetadata metadata) {
+        return matches(metadata, S3BasicFileAttributeView.LABKEY_LAST_MODIFIED, lastModifiedTime)
+                && matches(metadata, S3BasicFileAttributeView.LABKEY_LAST_ACCESS, lastAccessTime)
+                && matches(metadata, S3BasicFileAttributeView.LABKEY_CREATE_TIME, createTime);
+    }
+
+    /**
+     * @param metadata ObjectMetadata to overwrite with the times not null
+     * @return the same ObjectMetadata
+     */
+    public ObjectMetadata applyTo(ObjectMetadata metadata) {
+        return S3BasicFileAttributeView.setMetadataTimes(metadata, lastModifiedTime, lastAccessTime, createTime);
+    }
+
+    private static boolean matches(ObjectMetadata metadata, String key, FileTime time) {
+        return time == null || Long.toString(time.toMillis()).equals(metadata.getUserMetaDataOf(key));
+    }
+
+    @Override
+    public String toString() {
+        return "lastModifiedTime=" + lastModifiedTime + ", lastAccessTime=" + lastAccessTime + ", createTime=" + createTime;
+    }
+}
@@ -0,0 +1,112 @@
+package com.upplication.s3fs.util;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.upplication.s3fs.S3ProgressListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Deletes the objects added from many threads in multi-object delete requests of a fixed size: a request is
+ * sent by the thread that fills a batch, the rest is sent by {@link #flush()}.
+ * The keys not deleted are collected with their reason, see {@link #getFailures()}.
+ */
+public class BatchDeleter {
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final int batchSize;
+    private final S3ProgressListener listener;
+
+    /** key and size of the objects added and not sent yet */
+    private Map<String, Long> pending = new LinkedHashMap<>();
+    private long deletedObjects;
+    private long deletedBytes;
+    private final SortedMap<String, String> failures = new TreeMap<>();
+
+    /**
+     * @param client     AmazonS3
+     * @param bucketName String bucket of all the keys
+     * @param batchSize  int keys of every request, at most 1000
+     * @param listener   S3ProgressListener notified with the objects deleted after every request
+     */
+    public BatchDeleter(AmazonS3 client, String bucketName, int batchSize, S3ProgressListener listener) {
+        this.client = client;
+        this.bucketName = bucketName;
+        this.batchSize = batchSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Add a key to delete, sending the current batch if it is full
+     *
+     * @param key  String
+     * @param size long size of the object, for the progress
+     */
+    public void add(String key, long size) {
+        Map<String, Long> batch;
+        synchronized (this) {
+            pending.put(key, size);
+            if (pending.size() < batchSize)
+                return;
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        delete(batch);
+    }
+
+    /**
+     * Send the keys added and not sent yet
+     */
+    public void flush() {
+        Map<String, Long> batch;
+        synchronized (this) {
+            if (pending.isEmpty())
+                return;
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        delete(batch);
+    }
+
+    private void delete(Map<String, Long> batch) {
+        List<DeleteObjectsRequest.KeyVersion> keys = new ArrayList<>(batch.size());
+        for (String key : batch.keySet()) {
+            keys.add(new DeleteObjectsRequest.KeyVersion(key));
+        }
+        Map<String, Long> deleted = new LinkedHashMap<>(batch);
+        try {
+            // quiet: the response only has the keys not deleted
+            client.deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(keys).withQuiet(true));
+        } catch (MultiObjectDeleteException e) {
+            synchronized (failures) {
+                for (MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                    failures.put(error.getKey(), error.getCode() + ": " + error.getMessage());
+                    deleted.remove(error.getKey());
+                }
+            }
+        }
+        synchronized (this) {
+            deletedObjects += deleted.size();
+            for (Long size : deleted.values()) {
+                deletedBytes += size;
+            }
+            listener.progress(deletedObjects, deletedBytes);
+        }
+    }
+
+    /**
+     * @return SortedMap with the key of every object not deleted and the reason (code and message of S3)
+     */
+    public SortedMap<String, String> getFailures() {
+        synchronized (failures) {
+            return new TreeMap<>(failures);
+        }
+    }
+}
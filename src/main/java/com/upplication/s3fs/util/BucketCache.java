@@ -0,0 +1,121 @@
+package com.upplication.s3fs.util;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.Bucket;
+import com.amazonaws.services.s3.model.HeadBucketRequest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the buckets of a client: the result of listBuckets (name, owner and creation date)
+ * and the buckets known to exist. Only positive answers are cached, a missing bucket is always checked again.
+ */
+public class BucketCache {
+
+    private final AmazonS3 client;
+    private final long ttl;
+    private volatile Listing listing;
+    private final ConcurrentMap<String, Long> existing = new ConcurrentHashMap<>();
+
+    /**
+     * @param client AmazonS3 to ask for the buckets
+     * @param ttl    long time in milliseconds an answer is valid, -1 to never expire and 0 to not cache at all
+     */
+    public BucketCache(AmazonS3 client, long ttl) {
+        this.client = client;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return List of all the buckets of the account, never null
+     */
+    public List<Bucket> getBuckets() {
+        return getListing().buckets;
+    }
+
+    /**
+     * get the bucket with owner and creation date
+     *
+     * @param bucketName String
+     * @return Bucket or null if the account doesnt have a bucket with this name
+     */
+    public Bucket getBucket(String bucketName) {
+        return getListing().byName.get(bucketName);
+    }
+
+    /**
+     * check if the bucket exists with a single HEAD request instead of listing all the buckets
+     *
+     * @param bucketName String
+     * @return true if the bucket exists (even if we are not allowed to access it)
+     */
+    public boolean exists(String bucketName) {
+        Long checked = existing.get(bucketName);
+        if (checked != null && isInTime(checked))
+            return true;
+        Listing current = listing;
+        if (current != null && isInTime(current.created) && current.byName.containsKey(bucketName))
+            return true;
+
+        try {
+            client.headBucket(new HeadBucketRequest(bucketName));
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() == 404)
+                return false;
+            // forbidden: the bucket exists but is owned by another account
+            if (e.getStatusCode() != 403)
+                throw e;
+        }
+        if (ttl != 0)
+            existing.put(bucketName, getCurrentTime());
+        return true;
+    }
+
+    /**
+     * forget everything cached, for example after creating or deleting a bucket
+     */
+    public void invalidate() {
+        listing = null;
+        existing.clear();
+    }
+
+    private Listing getListing() {
+        Listing current = listing;
+        if (current == null || !isInTime(current.created)) {
+            current = new Listing(client.listBuckets(), getCurrentTime());
+            if (ttl != 0)
+                listing = current;
+        }
+        return current;
+    }
+
+    private boolean isInTime(long created) {
+        return ttl == -1 || getCurrentTime() - ttl <= created;
+    }
+
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    private static class Listing {
+        private final List<Bucket> buckets;
+        private final Map<String, Bucket> byName;
+        private final long created;
+
+        private Listing(List<Bucket> buckets, long created) {
+            this.buckets = ImmutableList.copyOf(buckets);
+            ImmutableMap.Builder<String, Bucket> builder = ImmutableMap.builder();
+            for (Bucket bucket : this.buckets) {
+                builder.put(bucket.getName(), bucket);
+            }
+            this.byName = builder.build();
+            this.created = created;
+        }
+    }
+}
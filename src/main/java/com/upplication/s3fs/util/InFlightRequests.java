@@ -0,0 +1,155 @@
+package com.upplication.s3fs.util;
+
+import com.google.common.base.Function;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Deduplication of identical requests running at the same time (single flight).
+ * The first caller runs the request and every caller that arrives with the same operation, bucket, key and range
+ * before it finishes waits for it and gets the same result or exception. Nothing is cached: once the request
+ * finishes the next caller runs a new one.
+ * The results are shared between threads, so they must not be modified by the callers, unless the request
+ * gives a function to copy its result for the callers that join it.
+ */
+public class InFlightRequests {
+
+    private final ConcurrentMap<List<String>, Flight<?>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * run the request or join the identical one already running
+     *
+     * @param operation String name of the operation, for example HEAD or GET
+     * @param bucket    String bucket name
+     * @param key       String key of the object
+     * @param range     String range of the object or null if it is the whole object
+     * @param request   Callable that sends the request to S3
+     * @param <T>       type of the result
+     * @return the result of the request
+     * @throws IOException if the request fails with an IOException or a checked exception
+     */
+    public <T> T execute(String operation, String bucket, String key, String range, Callable<T> request) throws IOException {
+        return execute(operation, bucket, key, range, request, null);
+    }
+
+    /**
+     * run the request or join the identical one already running.
+     * The caller that runs the request gets its result as it is, so it can be written in a buffer of that caller,
+     * and the callers that join it get the result of share, only called when some caller has joined.
+     *
+     * @param operation String name of the operation, for example HEAD or GET
+     * @param bucket    String bucket name
+     * @param key       String key of the object
+     * @param range     String range of the object or null if it is the whole object
+     * @param request   Callable that sends the request to S3
+     * @param share     Function that copies the result for the callers that join it, null to share the same result
+     * @param <T>       type of the result
+     * @return the result of the request
+     * @throws IOException if the request fails with an IOException or a checked exception
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, String bucket, String key, String range, Callable<T> request, Function<T, T> share) throws IOException {
+        List<String> id = Arrays.asList(operation, bucket, key, range);
+        while (true) {
+            Flight<T> flight = new Flight<>(id, request, share);
+            Flight<T> running = (Flight<T>) inFlight.putIfAbsent(id, flight);
+            if (running == null) {
+                flight.run();
+                get(flight);
+                return flight.result;
+            }
+            if (running.join())
+                return get(running);
+            // it has just finished without sharing its result, run a new one
+        }
+    }
+
+    /**
+     * Stop sharing the requests running now for this object: the next callers send a new request
+     * instead of joining one that could have started before a change of the object.
+     * The callers already waiting still get the result of the running request.
+     *
+     * @param bucket String bucket name
+     * @param key    String key of the object
+     */
+    public void forget(String bucket, String key) {
+        for (List<String> id : inFlight.keySet()) {
+            if (id.get(1).equals(bucket) && id.get(2).equals(key))
+                inFlight.remove(id);
+        }
+    }
+
+    /**
+     * @return int number of different requests running now
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private static <T> T get(FutureTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("interrupted waiting for a request in flight");
+            interrupted.initCause(e);
+            throw interrupted;
+        } catch (ExecutionException e) {
+            ParallelTasks.rethrow(e.getCause());
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * a request running: the callers that join it before it lands get the shared result
+     */
+    private class Flight<T> extends FutureTask<T> {
+        private final List<String> id;
+        private final Function<T, T> share;
+        private boolean joined;
+        private boolean landed;
+        private T result;
+
+        private Flight(List<String> id, Callable<T> request, Function<T, T> share) {
+            super(request);
+            this.id = id;
+            this.share = share;
+        }
+
+        private synchronized boolean join() {
+            if (landed)
+                return false;
+            joined = true;
+            return true;
+        }
+
+        /**
+         * @return true if some caller has joined this request, no one else can join it after this
+         */
+        private synchronized boolean land() {
+            inFlight.remove(id, this);
+            landed = true;
+            return joined;
+        }
+
+        @Override
+        protected void set(T value) {
+            result = value;
+            super.set(land() && share != null ? share.apply(value) : value);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            land();
+            super.setException(t);
+        }
+    }
+}
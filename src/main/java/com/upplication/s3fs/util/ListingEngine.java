@@ -0,0 +1,140 @@
+package com.upplication.s3fs.util;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectListing;
+
+/**
+ * API used to list the objects of a bucket: the legacy ListObjects ({@link #V1}) or ListObjectsV2 ({@link #V2}).
+ * Both return the pages as {@link ObjectListing}, the format used by the rest of the fileSystem, and both
+ * can start the listing after a given key to resume a previous one.
+ */
+public abstract class ListingEngine {
+
+    /**
+     * ListObjects with markers, supported by every S3 compatible storage
+     */
+    public static final ListingEngine V1 = new ListingEngine() {
+        @Override
+        public ObjectListing list(AmazonS3 client, ListObjectsRequest request, String startAfter) {
+            if (startAfter != null)
+                request.setMarker(startAfter);
+            return client.listObjects(request);
+        }
+
+        @Override
+        public ObjectListing next(AmazonS3 client, ObjectListing previous) {
+            return client.listNextBatchOfObjects(previous);
+        }
+    };
+
+    /**
+     * ListObjectsV2 with continuation tokens and without the owner of the objects (smaller responses)
+     */
+    public static final ListingEngine V2 = new ListingEngine() {
+        @Override
+        public ObjectListing list(AmazonS3 client, ListObjectsRequest request, String startAfter) {
+            ListObjectsV2Request requestV2 = new ListObjectsV2Request()
+                    .withBucketName(request.getBucketName())
+                    .withPrefix(request.getPrefix())
+                    .withDelimiter(request.getDelimiter())
+                    .withMaxKeys(request.getMaxKeys())
+                    .withStartAfter(startAfter)
+                    .withFetchOwner(false);
+            return toObjectListing(client.listObjectsV2(requestV2), requestV2);
+        }
+
+        @Override
+        public ObjectListing next(AmazonS3 client, ObjectListing previous) {
+            if (!(previous instanceof V2ObjectListing))
+                throw new IllegalArgumentException("not a page of a ListObjectsV2 listing: " + previous);
+            V2ObjectListing page = (V2ObjectListing) previous;
+            if (!page.isTruncated())
+                return emptyPage(page);
+            ListObjectsV2Request requestV2 = new ListObjectsV2Request()
+                    .withBucketName(page.request.getBucketName())
+                    .withPrefix(page.request.getPrefix())
+                    .withDelimiter(page.request.getDelimiter())
+                    .withMaxKeys(page.request.getMaxKeys())
+                    .withContinuationToken(page.nextContinuationToken)
+                    .withFetchOwner(false);
+            return toObjectListing(client.listObjectsV2(requestV2), requestV2);
+        }
+
+        private ObjectListing toObjectListing(ListObjectsV2Result result, ListObjectsV2Request request) {
+            V2ObjectListing page = new V2ObjectListing(request, result.getNextContinuationToken());
+            page.setBucketName(result.getBucketName());
+            page.setPrefix(result.getPrefix());
+            page.setDelimiter(result.getDelimiter());
+            page.setMaxKeys(result.getMaxKeys());
+            page.setEncodingType(result.getEncodingType());
+            page.setTruncated(result.isTruncated());
+            page.getObjectSummaries().addAll(result.getObjectSummaries());
+            page.getCommonPrefixes().addAll(result.getCommonPrefixes());
+            return page;
+        }
+
+        private ObjectListing emptyPage(V2ObjectListing previous) {
+            V2ObjectListing page = new V2ObjectListing(previous.request, null);
+            page.setBucketName(previous.getBucketName());
+            page.setPrefix(previous.getPrefix());
+            page.setDelimiter(previous.getDelimiter());
+            page.setMaxKeys(previous.getMaxKeys());
+            page.setTruncated(false);
+            return page;
+        }
+    };
+
+    /**
+     * @param version int version of the ListObjects API, 1 or 2
+     * @return ListingEngine never null
+     * @throws IllegalArgumentException if the version is not supported
+     */
+    public static ListingEngine forVersion(int version) {
+        switch (version) {
+            case 1:
+                return V1;
+            case 2:
+                return V2;
+            default:
+                throw new IllegalArgumentException("unsupported ListObjects version: " + version);
+        }
+    }
+
+    /**
+     * get the first page of a listing
+     *
+     * @param client     AmazonS3
+     * @param request    ListObjectsRequest with the bucket, prefix, delimiter and max keys of the listing
+     * @param startAfter String key after which the listing starts (exclusive) or null to list from the beginning
+     * @return ObjectListing the first page
+     */
+    public abstract ObjectListing list(AmazonS3 client, ListObjectsRequest request, String startAfter);
+
+    /**
+     * get the page after a page returned by this engine
+     *
+     * @param client   AmazonS3
+     * @param previous ObjectListing returned by {@link #list(AmazonS3, ListObjectsRequest, String)} or this method
+     * @return ObjectListing the next page, empty if previous was the last one
+     */
+    public abstract ObjectListing next(AmazonS3 client, ObjectListing previous);
+
+    /**
+     * page of a ListObjectsV2 listing, with what is needed to request the next one
+     */
+    private static class V2ObjectListing extends ObjectListing {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ListObjectsV2Request request;
+        private final String nextContinuationToken;
+
+        private V2ObjectListing(ListObjectsV2Request request, String nextContinuationToken) {
+            this.request = request;
+            this.nextContinuationToken = nextContinuationToken;
+        }
+    }
+}
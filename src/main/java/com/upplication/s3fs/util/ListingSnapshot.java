@@ -0,0 +1,465 @@
+package com.upplication.s3fs.util;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.S3Path;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Recursive listing of a prefix (key, size, ETag and last modified of every object) kept in memory in key order
+ * and saved in a compact local file, to list again a prefix that barely changes without requesting it to S3.
+ * <p>
+ * {@link #asListingEngine(ListingEngine)} serves the listings of the prefix from the snapshot, with or without
+ * delimiter, in pages like the ones of S3: with {@link com.upplication.s3fs.S3FileSystem#useSnapshot(ListingSnapshot)}
+ * the directory streams, walks and recursive listings of the prefix do not request anything to S3.
+ * <p>
+ * A snapshot never changes: {@link #refresh(AmazonS3, ListingEngine, Collection)} and {@link #apply(Collection, Collection)}
+ * return a new one with the prefixes listed again or with the changes known by the caller.
+ * {@link #getChangedDirectories(AmazonS3)} finds the directories of the first level whose marker object changed,
+ * for the writers that touch the marker of the directory they write into.
+ */
+public class ListingSnapshot {
+
+    /**
+     * keys and common prefixes of a page served from a snapshot, like S3
+     */
+    public static final int PAGE_SIZE = 1000;
+
+    private static final int MAGIC = 0x53334c53; // S3LS
+    private static final int FORMAT_VERSION = 1;
+
+    private final String bucket;
+    private final String prefix;
+    // sorted by key
+    private final Entry[] entries;
+
+    private ListingSnapshot(String bucket, String prefix, Entry[] entries) {
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.entries = entries;
+    }
+
+    /**
+     * @param bucket  String name of the bucket
+     * @param prefix  String prefix of all the keys, a directory key with the end slash or empty for the whole bucket
+     * @param listing Iterator with the recursive listing of the prefix, in any order
+     * @return ListingSnapshot with the objects of the listing
+     * @throws IllegalArgumentException if a key of the listing does not start with the prefix
+     */
+    public static ListingSnapshot create(String bucket, String prefix, Iterator<S3ObjectSummary> listing) {
+        List<Entry> entries = new ArrayList<>();
+        while (listing.hasNext()) {
+            entries.add(toEntry(prefix, listing.next()));
+        }
+        return new ListingSnapshot(bucket, prefix, sort(entries));
+    }
+
+    /**
+     * read a snapshot saved with {@link #save(Path)}
+     *
+     * @param file Path of the local file
+     * @return ListingSnapshot
+     * @throws IOException if the file cannot be read or it is not a snapshot
+     */
+    public static ListingSnapshot load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("not a listing snapshot: " + file);
+            int version = in.readInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("unsupported listing snapshot version " + version + ": " + file);
+            String bucket = in.readUTF();
+            String prefix = in.readUTF();
+            Entry[] entries = new Entry[in.readInt()];
+            String previous = "";
+            for (int i = 0; i < entries.length; i++) {
+                // the keys are stored without the part shared with the previous one
+                int shared = in.readInt();
+                String key = previous.substring(0, shared) + in.readUTF();
+                long size = in.readLong();
+                String eTag = in.readUTF();
+                long lastModified = in.readLong();
+                entries[i] = new Entry(key, size, eTag.isEmpty() ? null : eTag, lastModified);
+                previous = key;
+            }
+            return new ListingSnapshot(bucket, prefix, entries);
+        }
+    }
+
+    /**
+     * write the snapshot in a local file, replacing it atomically if it exists
+     *
+     * @param file Path of the local file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(bucket);
+                out.writeUTF(prefix);
+                out.writeInt(entries.length);
+                String previous = "";
+                for (Entry entry : entries) {
+                    int shared = sharedLength(previous, entry.key);
+                    out.writeInt(shared);
+                    out.writeUTF(entry.key.substring(shared));
+                    out.writeLong(entry.size);
+                    out.writeUTF(entry.eTag == null ? "" : entry.eTag);
+                    out.writeLong(entry.lastModified);
+                    previous = entry.key;
+                }
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return String name of the bucket
+     */
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * @return String prefix of all the keys
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return int number of objects
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * @param keyPrefix String prefix of the keys, that starts with the prefix of the snapshot
+     * @return Iterator with the objects of the prefix in key order
+     */
+    public Iterator<S3ObjectSummary> iterator(String keyPrefix) {
+        final int from = lowerBound(keyPrefix);
+        final int to = upperBoundOfPrefix(keyPrefix);
+        return new Iterator<S3ObjectSummary>() {
+            private int index = from;
+
+            @Override
+            public boolean hasNext() {
+                return index < to;
+            }
+
+            @Override
+            public S3ObjectSummary next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return toSummary(entries[index++]);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * list again some prefixes of the snapshot
+     *
+     * @param client        AmazonS3
+     * @param listingEngine ListingEngine used for the listings, not one that serves them from this snapshot
+     * @param prefixes      Collection with the prefixes to list, that start with the prefix of the snapshot
+     * @return ListingSnapshot with the current objects of the prefixes and the rest of the objects of this one
+     */
+    public ListingSnapshot refresh(AmazonS3 client, ListingEngine listingEngine, Collection<String> prefixes) {
+        // a prefix inside another one is listed with it
+        List<String> listed = new ArrayList<>();
+        for (String keyPrefix : prefixes) {
+            checkPrefix(keyPrefix);
+            if (!startsWithAny(keyPrefix, withoutPrefix(prefixes, keyPrefix)) && !listed.contains(keyPrefix))
+                listed.add(keyPrefix);
+        }
+        List<Entry> refreshed = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!startsWithAny(entry.key, listed))
+                refreshed.add(entry);
+        }
+        for (String keyPrefix : listed) {
+            ObjectListing page = listingEngine.list(client, new ListObjectsRequest(bucket, keyPrefix, null, null, null), null);
+            while (true) {
+                for (S3ObjectSummary summary : page.getObjectSummaries()) {
+                    refreshed.add(toEntry(prefix, summary));
+                }
+                if (!page.isTruncated())
+                    break;
+                page = listingEngine.next(client, page);
+            }
+        }
+        return new ListingSnapshot(bucket, prefix, sort(refreshed));
+    }
+
+    /**
+     * apply the changes known by the caller, for example the ones made by a job since the snapshot was taken
+     *
+     * @param changed Collection with the objects created or overwritten
+     * @param deleted Collection with the keys of the objects deleted
+     * @return ListingSnapshot with the changes applied
+     */
+    public ListingSnapshot apply(Collection<S3ObjectSummary> changed, Collection<String> deleted) {
+        Set<String> removed = new HashSet<>(deleted);
+        Map<String, Entry> added = new LinkedHashMap<>();
+        for (S3ObjectSummary summary : changed) {
+            added.put(summary.getKey(), toEntry(prefix, summary));
+            removed.add(summary.getKey());
+        }
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!removed.contains(entry.key))
+                result.add(entry);
+        }
+        result.addAll(added.values());
+        return new ListingSnapshot(bucket, prefix, sort(result));
+    }
+
+    /**
+     * Request the metadata of the marker objects of the directories of the first level of the snapshot and compare
+     * it with the one of the snapshot: one request per directory instead of listing all their objects.
+     * The directories without marker are not checked.
+     *
+     * @param client AmazonS3
+     * @return List with the keys of the directories whose marker changed or was deleted, with the end slash
+     */
+    public List<String> getChangedDirectories(AmazonS3 client) {
+        List<String> changed = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.key.indexOf(S3Path.PATH_SEPARATOR, prefix.length()) != entry.key.length() - 1)
+                continue;
+            try {
+                ObjectMetadata metadata = client.getObjectMetadata(bucket, entry.key);
+                long lastModified = metadata.getLastModified() == null ? -1 : metadata.getLastModified().getTime();
+                if (lastModified != entry.lastModified || !Objects.equals(metadata.getETag(), entry.eTag))
+                    changed.add(entry.key);
+            } catch (AmazonS3Exception e) {
+                if (e.getStatusCode() != 404)
+                    throw e;
+                changed.add(entry.key);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param fallback ListingEngine for the listings out of the prefix of the snapshot
+     * @return ListingEngine that serves the listings of the prefix of the snapshot from it, without requests
+     */
+    public ListingEngine asListingEngine(final ListingEngine fallback) {
+        return new ListingEngine() {
+            @Override
+            public ObjectListing list(AmazonS3 client, ListObjectsRequest request, String startAfter) {
+                String requestPrefix = request.getPrefix() == null ? "" : request.getPrefix();
+                if (!bucket.equals(request.getBucketName()) || !requestPrefix.startsWith(prefix))
+                    return fallback.list(client, request, startAfter);
+                int from = lowerBound(requestPrefix);
+                if (startAfter != null) {
+                    int after = lowerBound(startAfter);
+                    if (after < entries.length && entries[after].key.equals(startAfter))
+                        after++;
+                    from = Math.max(from, after);
+                }
+                return page(request, requestPrefix, from, startAfter);
+            }
+
+            @Override
+            public ObjectListing next(AmazonS3 client, ObjectListing previous) {
+                if (!(previous instanceof SnapshotListing) || ((SnapshotListing) previous).snapshot != ListingSnapshot.this)
+                    return fallback.next(client, previous);
+                SnapshotListing page = (SnapshotListing) previous;
+                return page(page.request, previous.getPrefix(), page.nextIndex, null);
+            }
+        };
+    }
+
+    private ObjectListing page(ListObjectsRequest request, String requestPrefix, int from, String startAfter) {
+        String delimiter = request.getDelimiter() == null || request.getDelimiter().isEmpty() ? null : request.getDelimiter();
+        int maxKeys = request.getMaxKeys() == null ? PAGE_SIZE : Math.min(request.getMaxKeys(), PAGE_SIZE);
+        int to = upperBoundOfPrefix(requestPrefix);
+        int index = from;
+        int count = 0;
+        SnapshotListing page = new SnapshotListing(this, request);
+        while (index < to && count < maxKeys) {
+            String key = entries[index].key;
+            int end = delimiter == null ? -1 : key.indexOf(delimiter, requestPrefix.length());
+            if (end < 0) {
+                page.getObjectSummaries().add(toSummary(entries[index++]));
+                count++;
+                continue;
+            }
+            String commonPrefix = key.substring(0, end + delimiter.length());
+            // a listing that starts inside a common prefix already returned it
+            if (startAfter == null || commonPrefix.compareTo(startAfter) > 0) {
+                page.getCommonPrefixes().add(commonPrefix);
+                count++;
+            }
+            index = upperBoundOfPrefix(commonPrefix);
+        }
+        page.setBucketName(bucket);
+        page.setPrefix(requestPrefix);
+        page.setDelimiter(delimiter);
+        page.setMaxKeys(maxKeys);
+        page.setTruncated(index < to);
+        page.nextIndex = index;
+        return page;
+    }
+
+    /**
+     * @return index of the first key greater than or equal to the key
+     */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries[middle].key.compareTo(key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first key after the keys that start with the prefix
+     */
+    private int upperBoundOfPrefix(String keyPrefix) {
+        if (keyPrefix.isEmpty())
+            return entries.length;
+        char last = keyPrefix.charAt(keyPrefix.length() - 1);
+        return lowerBound(keyPrefix.substring(0, keyPrefix.length() - 1) + (char) (last + 1));
+    }
+
+    private void checkPrefix(String keyPrefix) {
+        if (!keyPrefix.startsWith(prefix))
+            throw new IllegalArgumentException("prefix " + keyPrefix + " out of the snapshot of " + prefix);
+    }
+
+    private S3ObjectSummary toSummary(Entry entry) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setBucketName(bucket);
+        summary.setKey(entry.key);
+        summary.setSize(entry.size);
+        summary.setETag(entry.eTag);
+        if (entry.lastModified >= 0)
+            summary.setLastModified(new Date(entry.lastModified));
+        return summary;
+    }
+
+    private static Entry toEntry(String prefix, S3ObjectSummary summary) {
+        if (!summary.getKey().startsWith(prefix))
+            throw new IllegalArgumentException("key " + summary.getKey() + " out of the snapshot of " + prefix);
+        Date lastModified = summary.getLastModified();
+        return new Entry(summary.getKey(), summary.getSize(), summary.getETag(), lastModified == null ? -1 : lastModified.getTime());
+    }
+
+    private static Entry[] sort(List<Entry> list) {
+        Entry[] sorted = list.toArray(new Entry[list.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static boolean startsWithAny(String key, Collection<String> prefixes) {
+        for (String keyPrefix : prefixes) {
+            if (key.startsWith(keyPrefix))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the prefixes different from the given one
+     */
+    private static List<String> withoutPrefix(Collection<String> prefixes, String keyPrefix) {
+        List<String> others = new ArrayList<>();
+        for (String other : prefixes) {
+            if (!other.equals(keyPrefix))
+                others.add(other);
+        }
+        return others;
+    }
+
+    private static int sharedLength(String first, String second) {
+        int length = Math.min(first.length(), second.length());
+        int shared = 0;
+        while (shared < length && first.charAt(shared) == second.charAt(shared))
+            shared++;
+        return shared;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+
+        private final String key;
+        private final long size;
+        private final String eTag;
+        private final long lastModified;
+
+        private Entry(String key, long size, String eTag, long lastModified) {
+            this.key = key;
+            this.size = size;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    /**
+     * page served from a snapshot, with the index of the next key
+     */
+    private static class SnapshotListing extends ObjectListing {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ListingSnapshot snapshot;
+        private final transient ListObjectsRequest request;
+        private int nextIndex;
+
+        private SnapshotListing(ListingSnapshot snapshot, ListObjectsRequest request) {
+            this.snapshot = snapshot;
+            this.request = request;
+        }
+    }
+}
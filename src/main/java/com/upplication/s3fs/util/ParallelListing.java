@@ -0,0 +1,288 @@
+package com.upplication.s3fs.util;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.S3Path;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Recursive listing of all the objects under a prefix that lists disjoint sub prefixes at the same time.
+ * The sub prefixes are discovered with delimited listings of the first levels, a level is only expanded if its
+ * delimited listing fits in one page: a prefix with many direct children is listed as a whole.
+ * Every sub prefix is then listed without delimiter in a thread of the executor, at most parallelism of them at
+ * the same time and at most {@link #PAGES_AHEAD} pages ahead of the consumer.
+ * The objects are returned in key order when sorted, otherwise in the order the pages arrive.
+ * Close it if it is not iterated until the end, to stop the listings still running.
+ */
+public class ParallelListing implements Iterator<S3ObjectSummary>, Closeable {
+
+    /**
+     * max levels of sub prefixes discovered before listing
+     */
+    public static final int MAX_DISCOVERY_DEPTH = 3;
+    /**
+     * pages that every sub prefix lists ahead of the consumer
+     */
+    public static final int PAGES_AHEAD = 2;
+
+    private static final Object END = new Object();
+
+    private final AmazonS3 client;
+    private final ListingEngine listingEngine;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final String bucket;
+    private final boolean sorted;
+    private final List<Partition> partitions;
+    private final BlockingQueue<Object> arrived;
+    private final Deque<List<S3ObjectSummary>> pending = new ArrayDeque<>();
+    private final List<Future<?>> running = new ArrayList<>();
+    private int started;
+    private int consumed;
+    private RuntimeException failure;
+    private Iterator<S3ObjectSummary> page = Collections.emptyIterator();
+
+    /**
+     * discover the sub prefixes to list, the listings start when the iteration starts
+     *
+     * @param client        AmazonS3
+     * @param listingEngine ListingEngine used for all the listings
+     * @param executor      ExecutorService where the sub prefixes are listed
+     * @param parallelism   int max number of listings at the same time
+     * @param bucket        String name of the bucket
+     * @param prefix        String prefix of the keys to list, usually a directory key with the end slash or empty
+     * @param sorted        boolean true to return the objects in key order
+     * @throws IOException if the discovery of the sub prefixes fails
+     */
+    public ParallelListing(AmazonS3 client, ListingEngine listingEngine, ExecutorService executor, int parallelism,
+                           String bucket, String prefix, boolean sorted) throws IOException {
+        this.client = client;
+        this.listingEngine = listingEngine;
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.bucket = bucket;
+        this.sorted = sorted;
+        this.arrived = sorted ? null : new LinkedBlockingQueue<>(this.parallelism * PAGES_AHEAD);
+        this.partitions = discover(prefix);
+    }
+
+    /**
+     * @return int number of disjoint parts listed on their own (sub prefixes and groups of objects found while discovering)
+     */
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext()) {
+            List<S3ObjectSummary> next = nextPage();
+            if (next == null)
+                return false;
+            page = next.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public S3ObjectSummary next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return page.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * stop the listings still running
+     */
+    @Override
+    public synchronized void close() {
+        for (Future<?> future : running) {
+            future.cancel(true);
+        }
+        running.clear();
+    }
+
+    private List<Partition> discover(String prefix) throws IOException {
+        final List<Partition> result = new ArrayList<>();
+        List<String> frontier = Collections.singletonList(prefix);
+        for (int depth = 0; depth < MAX_DISCOVERY_DEPTH && !frontier.isEmpty() && frontier.size() < parallelism; depth++) {
+            final Map<String, ObjectListing> listings = new HashMap<>();
+            ParallelTasks.forEach(executor, parallelism, frontier.iterator(), new ParallelTasks.Task<String>() {
+                @Override
+                public void run(String subPrefix) {
+                    ObjectListing listing = listingEngine.list(client, new ListObjectsRequest(bucket, subPrefix, null, S3Path.PATH_SEPARATOR, null), null);
+                    synchronized (listings) {
+                        listings.put(subPrefix, listing);
+                    }
+                }
+            });
+            List<String> next = new ArrayList<>();
+            for (String subPrefix : frontier) {
+                ObjectListing listing = listings.get(subPrefix);
+                if (listing.isTruncated()) {
+                    result.add(new Partition(subPrefix, null));
+                    continue;
+                }
+                addObjectGroups(listing, result);
+                for (String commonPrefix : listing.getCommonPrefixes()) {
+                    // some S3 compatible storages return the common prefixes without the delimiter
+                    next.add(commonPrefix.endsWith(S3Path.PATH_SEPARATOR) ? commonPrefix : commonPrefix + S3Path.PATH_SEPARATOR);
+                }
+            }
+            frontier = next;
+        }
+        for (String subPrefix : frontier) {
+            result.add(new Partition(subPrefix, null));
+        }
+        // the partitions are disjoint key ranges, so the key order of their first keys is the order of all their keys
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * add the objects of a delimited listing as partitions: one for every run of objects between two common prefixes
+     */
+    private static void addObjectGroups(ObjectListing listing, List<Partition> result) {
+        Iterator<String> prefixes = listing.getCommonPrefixes().iterator();
+        String nextPrefix = prefixes.hasNext() ? prefixes.next() : null;
+        List<S3ObjectSummary> group = new ArrayList<>();
+        for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+            if (nextPrefix != null && summary.getKey().compareTo(nextPrefix) > 0) {
+                if (!group.isEmpty())
+                    result.add(new Partition(null, group));
+                group = new ArrayList<>();
+                while (nextPrefix != null && summary.getKey().compareTo(nextPrefix) > 0) {
+                    nextPrefix = prefixes.hasNext() ? prefixes.next() : null;
+                }
+            }
+            group.add(summary);
+        }
+        if (!group.isEmpty())
+            result.add(new Partition(null, group));
+    }
+
+    /**
+     * @return the next page of objects or null if there are no more
+     */
+    private List<S3ObjectSummary> nextPage() {
+        while (true) {
+            if (failure != null)
+                throw failure;
+            startPartitions();
+            if (!pending.isEmpty())
+                return pending.poll();
+            if (consumed == partitions.size())
+                return null;
+
+            Object item = take(sorted ? partitions.get(consumed).queue : arrived);
+            if (item == END) {
+                consumed++;
+                continue;
+            }
+            if (item instanceof Throwable) {
+                close();
+                // the next calls fail the same way instead of waiting for pages that never come
+                Throwable cause = (Throwable) item;
+                failure = cause instanceof RuntimeException ? (RuntimeException) cause : new AmazonClientException(cause);
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            List<S3ObjectSummary> summaries = (List<S3ObjectSummary>) item;
+            return summaries;
+        }
+    }
+
+    private synchronized void startPartitions() {
+        while (started < partitions.size() && started < consumed + parallelism) {
+            final Partition partition = partitions.get(started++);
+            if (partition.summaries != null) {
+                // already listed while discovering
+                if (sorted) {
+                    partition.queue.add(partition.summaries);
+                    partition.queue.add(END);
+                } else {
+                    pending.add(partition.summaries);
+                    consumed++;
+                }
+                continue;
+            }
+            final BlockingQueue<Object> queue = sorted ? partition.queue : arrived;
+            running.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    listPartition(partition.prefix, queue);
+                }
+            }));
+        }
+    }
+
+    private void listPartition(String prefix, BlockingQueue<Object> queue) {
+        try {
+            try {
+                ObjectListing listing = listingEngine.list(client, new ListObjectsRequest(bucket, prefix, null, null, null), null);
+                while (true) {
+                    if (!listing.getObjectSummaries().isEmpty())
+                        queue.put(listing.getObjectSummaries());
+                    if (!listing.isTruncated())
+                        break;
+                    listing = listingEngine.next(client, listing);
+                }
+                queue.put(END);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Throwable e) {
+                queue.put(e);
+            }
+        } catch (InterruptedException e) {
+            // closed, nobody is waiting for the pages
+        }
+    }
+
+    private Object take(BlockingQueue<Object> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new AbortedException("interrupted waiting for the listing", e);
+        }
+    }
+
+    private static class Partition implements Comparable<Partition> {
+        private final String prefix;
+        private final List<S3ObjectSummary> summaries;
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>(PAGES_AHEAD);
+
+        private Partition(String prefix, List<S3ObjectSummary> summaries) {
+            this.prefix = prefix;
+            this.summaries = summaries;
+        }
+
+        private String firstKey() {
+            return prefix != null ? prefix : summaries.get(0).getKey();
+        }
+
+        @Override
+        public int compareTo(Partition other) {
+            return firstKey().compareTo(other.firstKey());
+        }
+    }
+}
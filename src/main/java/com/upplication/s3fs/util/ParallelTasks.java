@@ -0,0 +1,107 @@
+package com.upplication.s3fs.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Utilities to run the same task over many elements with a bounded number of threads.
+ */
+public abstract class ParallelTasks {
+
+    /**
+     * Work to do with every element
+     *
+     * @param <T> type of the elements
+     */
+    public interface Task<T> {
+        void run(T item) throws Exception;
+    }
+
+    /**
+     * Run the task for every element of the iterator using at most parallelism threads at the same time:
+     * the calling thread and parallelism - 1 threads of the executor. The iterator is only accessed by one
+     * thread at a time, so it can be lazy (a listing for example).
+     * The first failure stops the remaining work and is rethrown once all the running tasks are done.
+     *
+     * @param executor    ExecutorService where the extra workers run
+     * @param parallelism int max number of elements processed at the same time
+     * @param items       Iterator with the elements to process
+     * @param task        Task to run for every element
+     * @param <T>         type of the elements
+     * @throws IOException if a task fails with an IOException or a checked exception
+     */
+    public static <T> void forEach(ExecutorService executor, int parallelism, final Iterator<? extends T> items, final Task<? super T> task) throws IOException {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                while (failure.get() == null) {
+                    T item;
+                    try {
+                        synchronized (items) {
+                            if (!items.hasNext())
+                                return;
+                            item = items.next();
+                        }
+                        task.run(item);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                        return;
+                    }
+                }
+            }
+        };
+
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int i = 1; i < parallelism; i++) {
+                workers.add(executor.submit(worker));
+            }
+            worker.run();
+            for (Future<?> future : workers) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+            Thread.currentThread().interrupt();
+            for (Future<?> future : workers) {
+                future.cancel(true);
+            }
+        } catch (ExecutionException | CancellationException e) {
+            failure.compareAndSet(null, e.getCause() != null ? e.getCause() : e);
+        }
+
+        rethrow(failure.get());
+    }
+
+    /**
+     * Throw the failure of a task as is when possible, wrapped in an IOException otherwise
+     *
+     * @param failure Throwable, can be null
+     * @throws IOException if the failure is an IOException or a checked exception
+     */
+    public static void rethrow(Throwable failure) throws IOException {
+        if (failure == null)
+            return;
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+        if (failure instanceof InterruptedException) {
+            InterruptedIOException interrupted = new InterruptedIOException(failure.getMessage());
+            interrupted.initCause(failure);
+            throw interrupted;
+        }
+        throw new IOException(failure);
+    }
+}
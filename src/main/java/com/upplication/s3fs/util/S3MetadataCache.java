@@ -0,0 +1,224 @@
+package com.upplication.s3fs.util;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.cache.CacheBuilder;
+import com.upplication.s3fs.S3Path;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the {@link S3ObjectSummary} of the paths of a fileSystem, the result of {@link S3Utils#getS3ObjectSummary(S3Path)}.
+ * The changes made through the same fileSystem keep it coherent: writes store the new summary and the rest of the
+ * changes (delete, copy, setTimes...) forget the path and its parents, so a fileSystem always reads its own writes.
+ * Changes made by other clients are only seen once the entries expire.
+ * Only found paths are cached, a missing path is always checked again.
+ */
+public class S3MetadataCache {
+
+    /**
+     * max number of paths cached, the oldest are removed first
+     */
+    public static final int MAX_ENTRIES = 100000;
+
+    private final long ttl;
+    private final InFlightRequests inFlightRequests;
+    private final ConcurrentMap<String, Entry> entries;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile ChangeListener changeListener;
+
+    /**
+     * Notified of the changes made through the fileSystem, see {@link #setChangeListener(ChangeListener)}
+     */
+    public interface ChangeListener {
+
+        /**
+         * @param bucket String name of the bucket
+         * @param key    String key written, changed or deleted
+         */
+        void changed(String bucket, String key);
+
+        /**
+         * @param bucket String name of the bucket
+         * @param prefix String prefix of the keys that could have changed, empty or ended with a slash,
+         *               see {@link #invalidateTree(S3Path)}
+         */
+        void changedTree(String bucket, String prefix);
+    }
+
+    /**
+     * @param ttl              long time in milliseconds an entry is valid, -1 to never expire and 0 to not cache at all
+     * @param inFlightRequests InFlightRequests of the fileSystem, the running requests of a changed path are not shared anymore
+     */
+    public S3MetadataCache(long ttl, InFlightRequests inFlightRequests) {
+        this.ttl = ttl;
+        this.inFlightRequests = inFlightRequests;
+        this.entries = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).<String, Entry>build().asMap();
+    }
+
+    /**
+     * @param changeListener ChangeListener notified of every change made through the fileSystem, or null
+     */
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * @return true if the summaries are cached
+     */
+    public boolean isEnabled() {
+        return ttl != 0;
+    }
+
+    /**
+     * @param s3Path S3Path absolute
+     * @return S3ObjectSummary cached for the path and still valid or null
+     */
+    public S3ObjectSummary get(S3Path s3Path) {
+        if (!isEnabled())
+            return null;
+        Entry entry = entries.get(id(s3Path.getFileStore().name(), s3Path.getKey()));
+        if (entry == null || !isInTime(entry.created))
+            return null;
+        return entry.summary;
+    }
+
+    /**
+     * Call before loading the summary of a path and pass the result to {@link #put(S3Path, S3ObjectSummary, long)}
+     *
+     * @return long number of changes made until now
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * cache the summary loaded for a path, unless the fileSystem changed anything since the load started:
+     * the summary could be older than the change.
+     *
+     * @param s3Path     S3Path absolute
+     * @param summary    S3ObjectSummary loaded for the path
+     * @param generation long value of {@link #generation()} before the load started
+     */
+    public void put(S3Path s3Path, S3ObjectSummary summary, long generation) {
+        if (!isEnabled())
+            return;
+        String id = id(s3Path.getFileStore().name(), s3Path.getKey());
+        Entry entry = new Entry(summary, getCurrentTime());
+        entries.put(id, entry);
+        if (this.generation.get() != generation)
+            entries.remove(id, entry);
+    }
+
+    /**
+     * the fileSystem has written the object of the path: cache the new summary
+     *
+     * @param s3Path       S3Path absolute of a regular file
+     * @param eTag         String ETag returned by S3 for the new object, if null the path is only forgotten
+     * @param size         long size of the new object
+     * @param lastModified Date last modified time of the new object
+     */
+    public void written(S3Path s3Path, String eTag, long size, Date lastModified) {
+        String bucket = s3Path.getFileStore().name();
+        String key = s3Path.getKey();
+        forget(bucket, key);
+        s3Path.setFileAttributes(null);
+        notifyChanged(bucket, key);
+        if (!isEnabled() || eTag == null)
+            return;
+
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setBucketName(bucket);
+        summary.setKey(key);
+        summary.setETag(eTag);
+        summary.setSize(size);
+        summary.setLastModified(lastModified);
+        entries.put(id(bucket, key), new Entry(summary, getCurrentTime()));
+    }
+
+    /**
+     * the fileSystem has changed or deleted the path: forget it and its parents,
+     * a parent can be a virtual directory resolved with the summary of this path.
+     *
+     * @param s3Path S3Path absolute
+     */
+    public void invalidate(S3Path s3Path) {
+        String bucket = s3Path.getFileStore().name();
+        String key = s3Path.getKey();
+        s3Path.setFileAttributes(null);
+        forget(bucket, key);
+        notifyChanged(bucket, key);
+        for (int index = trimSlash(key).lastIndexOf(S3Path.PATH_SEPARATOR); index > 0; index = key.lastIndexOf(S3Path.PATH_SEPARATOR, index - 1)) {
+            forget(bucket, key.substring(0, index));
+        }
+        forget(bucket, "");
+    }
+
+    /**
+     * the fileSystem has changed any object below the directory, like a recursive delete or copy does: forget
+     * everything cached, that is faster than finding the entries of the directory and its parents.
+     *
+     * @param dir S3Path absolute of the directory or the bucket
+     */
+    public void invalidateTree(S3Path dir) {
+        String key = dir.getKey();
+        String prefix = key.isEmpty() || key.endsWith(S3Path.PATH_SEPARATOR) ? key : key + S3Path.PATH_SEPARATOR;
+        generation.incrementAndGet();
+        entries.clear();
+        dir.setFileAttributes(null);
+        ChangeListener listener = changeListener;
+        if (listener != null)
+            listener.changedTree(dir.getFileStore().name(), prefix);
+    }
+
+    /**
+     * @return int number of entries cached, expired or not
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void notifyChanged(String bucket, String key) {
+        ChangeListener listener = changeListener;
+        if (listener != null)
+            listener.changed(bucket, key);
+    }
+
+    private void forget(String bucket, String key) {
+        generation.incrementAndGet();
+        String trimmed = trimSlash(key);
+        for (String variant : new String[]{trimmed, trimmed + S3Path.PATH_SEPARATOR}) {
+            entries.remove(id(bucket, variant));
+            if (inFlightRequests != null)
+                inFlightRequests.forget(bucket, variant);
+        }
+    }
+
+    private boolean isInTime(long created) {
+        return ttl == -1 || getCurrentTime() - ttl <= created;
+    }
+
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    private static String id(String bucket, String key) {
+        // a bucket name cannot contain a slash
+        return bucket + S3Path.PATH_SEPARATOR + key;
+    }
+
+    private static String trimSlash(String key) {
+        return key.endsWith(S3Path.PATH_SEPARATOR) ? key.substring(0, key.length() - 1) : key;
+    }
+
+    private static class Entry {
+        private final S3ObjectSummary summary;
+        private final long created;
+
+        private Entry(S3ObjectSummary summary, long created) {
+            this.summary = summary;
+            this.created = created;
+        }
+    }
+}
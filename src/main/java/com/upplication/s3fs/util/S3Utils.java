@@ -1,5 +1,6 @@
 package com.upplication.s3fs.util;
 
+import com.amazonaws.AbortedException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.*;
 import com.google.common.collect.Sets;
@@ -9,13 +10,23 @@ import com.upplication.s3fs.S3Path;
 import com.upplication.s3fs.attribute.S3PosixFileAttributes;
 import com.upplication.s3fs.attribute.S3UserPrincipal;
 
+import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -24,13 +35,47 @@ import java.util.concurrent.TimeUnit;
 public class S3Utils {
 
     /**
-     * Get the {@link S3ObjectSummary} that represent this Path or her first child if this path not exists
+     * Get the {@link S3ObjectSummary} that represent this Path or her first child if this path not exists.
+     * Concurrent calls for the same path share the same requests, see {@link InFlightRequests}, and the result
+     * is cached by the fileSystem when enabled, see {@link S3MetadataCache}.
      *
      * @param s3Path {@link S3Path}
-     * @return {@link S3ObjectSummary}
+     * @return {@link S3ObjectSummary} shared with other callers, must not be modified
      * @throws NoSuchFileException if not found the path and any child
      */
-    public S3ObjectSummary getS3ObjectSummary(S3Path s3Path) throws NoSuchFileException {
+    public S3ObjectSummary getS3ObjectSummary(final S3Path s3Path) throws NoSuchFileException {
+        S3MetadataCache metadataCache = s3Path.getFileSystem().getMetadataCache();
+        S3ObjectSummary cached = metadataCache.get(s3Path);
+        if (cached != null)
+            return cached;
+
+        long generation = metadataCache.generation();
+        S3ObjectSummary summary = inFlight(s3Path, "summary", new Callable<S3ObjectSummary>() {
+            @Override
+            public S3ObjectSummary call() throws NoSuchFileException {
+                return loadS3ObjectSummary(s3Path);
+            }
+        });
+        metadataCache.put(s3Path, summary, generation);
+        return summary;
+    }
+
+    /**
+     * run the request for the s3Path or join the identical one that is already running
+     */
+    private <T> T inFlight(S3Path s3Path, String operation, Callable<T> request) throws NoSuchFileException {
+        InFlightRequests inFlightRequests = s3Path.getFileSystem().getInFlightRequests();
+        try {
+            return inFlightRequests.execute(operation, s3Path.getFileStore().name(), s3Path.getKey(), null, request);
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (IOException e) {
+            // only interruptions, the requests dont throw other checked exceptions
+            throw new AbortedException(e.getMessage(), e);
+        }
+    }
+
+    private S3ObjectSummary loadS3ObjectSummary(S3Path s3Path) throws NoSuchFileException {
         String key = s3Path.getKey();
         String bucketName = s3Path.getFileStore().name();
         AmazonS3 client = s3Path.getFileSystem().getClient();
@@ -72,7 +117,7 @@ public class S3Utils {
             }
             request.setPrefix(keyFolder);
             request.setMaxKeys(1);
-            ObjectListing current = client.listObjects(request);
+            ObjectListing current = s3Path.getFileSystem().getS3ListingEngine().list(client, request, null);
             if (!current.getObjectSummaries().isEmpty())
                 return current.getObjectSummaries().get(0);
         } catch (Exception e) {
@@ -92,25 +137,169 @@ public class S3Utils {
         return toS3FileAttributes(objectSummary, s3Path.getKey());
     }
 
+    /**
+     * getS3FileAttributes for many s3Paths at once.
+     * Every path is resolved with the same requests than {@link #getS3FileAttributes(S3Path)}, running at most
+     * parallelism of them at the same time. When prefixListingThreshold or more paths share the same parent, the parent
+     * is listed instead and the regular files are resolved from the listing pages: one request for every 1000 entries
+     * instead of one per path. Regular files resolved this way have the last modified time of the listing, not the
+     * {@link S3BasicFileAttributeView#LABKEY_LAST_MODIFIED} user metadata (it is not part of a listing), so only
+     * the callers that accept the listing times pass a threshold.
+     *
+     * @param s3Paths                Collection of absolute S3Path of the same fileSystem, mandatory not null
+     * @param executor               ExecutorService used to run the requests in parallel
+     * @param parallelism            int max number of requests at the same time
+     * @param prefixListingThreshold int min number of paths with the same parent to list the parent, zero or less to never list
+     * @return Map with the S3BasicFileAttributes of every path that exists, the missing paths are not in the map
+     * @throws IOException if any request fails with other reason than not found
+     */
+    public Map<S3Path, S3BasicFileAttributes> getS3FileAttributes(Collection<S3Path> s3Paths, ExecutorService executor, int parallelism, int prefixListingThreshold) throws IOException {
+        final Map<S3Path, S3BasicFileAttributes> found = new ConcurrentHashMap<>();
+        // group the paths by bucket and parent key
+        Map<String, List<S3Path>> byParent = new LinkedHashMap<>();
+        final List<S3Path> singles = Collections.synchronizedList(new ArrayList<S3Path>());
+        for (S3Path s3Path : s3Paths) {
+            String key = trimSlash(s3Path.getKey());
+            if (key.isEmpty()) {
+                singles.add(s3Path);
+                continue;
+            }
+            String parent = s3Path.getFileStore().name() + S3Path.PATH_SEPARATOR + key.substring(0, key.lastIndexOf('/') + 1);
+            List<S3Path> group = byParent.get(parent);
+            if (group == null) {
+                group = new ArrayList<>();
+                byParent.put(parent, group);
+            }
+            group.add(s3Path);
+        }
+
+        final List<List<S3Path>> listed = new ArrayList<>();
+        for (List<S3Path> group : byParent.values()) {
+            if (prefixListingThreshold > 0 && group.size() >= prefixListingThreshold)
+                listed.add(group);
+            else
+                singles.addAll(group);
+        }
+
+        // first the listings, they can leave unresolved paths for the lookups one by one
+        ParallelTasks.forEach(executor, parallelism, listed.iterator(), new ParallelTasks.Task<List<S3Path>>() {
+            @Override
+            public void run(List<S3Path> group) {
+                singles.addAll(listS3FileAttributes(group, found));
+            }
+        });
+        ParallelTasks.forEach(executor, parallelism, singles.iterator(), new ParallelTasks.Task<S3Path>() {
+            @Override
+            public void run(S3Path s3Path) {
+                try {
+                    found.put(s3Path, getS3FileAttributes(s3Path));
+                } catch (NoSuchFileException e) {
+                    // missing paths are not part of the result
+                }
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Resolve the regular files of a group of paths with the same parent listing the parent.
+     *
+     * @param group S3Path with the same bucket and parent
+     * @param found Map where the attributes of the regular files found are added
+     * @return List of S3Path that need to be resolved one by one (directories)
+     */
+    private List<S3Path> listS3FileAttributes(List<S3Path> group, Map<S3Path, S3BasicFileAttributes> found) {
+        S3Path first = group.get(0);
+        String bucketName = first.getFileStore().name();
+        AmazonS3 client = first.getFileSystem().getClient();
+        ListingEngine listingEngine = first.getFileSystem().getS3ListingEngine();
+        String firstKey = trimSlash(first.getKey());
+        String prefix = firstKey.substring(0, firstKey.lastIndexOf('/') + 1);
+
+        Map<String, List<S3Path>> byName = new HashMap<>();
+        String lastName = "";
+        for (S3Path s3Path : group) {
+            String key = trimSlash(s3Path.getKey());
+            String name = key.substring(prefix.length());
+            List<S3Path> paths = byName.get(name);
+            if (paths == null) {
+                paths = new ArrayList<>();
+                byName.put(name, paths);
+            }
+            paths.add(s3Path);
+            if (name.compareTo(lastName) > 0)
+                lastName = name;
+        }
+        // every entry after this key belongs to names we are not looking for
+        String stopKey = prefix + lastName + S3Path.PATH_SEPARATOR;
+
+        Map<String, S3ObjectSummary> files = new HashMap<>();
+        Set<String> directories = new HashSet<>();
+        ObjectListing listing = listingEngine.list(client, new ListObjectsRequest(bucketName, prefix, null, S3Path.PATH_SEPARATOR, null), null);
+        while (true) {
+            String lastSeen = "";
+            for (String commonPrefix : listing.getCommonPrefixes()) {
+                directories.add(trimSlash(commonPrefix.substring(prefix.length())));
+                lastSeen = max(lastSeen, commonPrefix);
+            }
+            for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                String rest = summary.getKey().substring(prefix.length());
+                int slash = rest.indexOf('/');
+                if (slash == -1)
+                    files.put(rest, summary);
+                else
+                    directories.add(rest.substring(0, slash));
+                lastSeen = max(lastSeen, summary.getKey());
+            }
+            if (!listing.isTruncated() || lastSeen.compareTo(stopKey) >= 0)
+                break;
+            listing = listingEngine.next(client, listing);
+        }
+
+        List<S3Path> unresolved = new ArrayList<>();
+        for (Map.Entry<String, List<S3Path>> entry : byName.entrySet()) {
+            S3ObjectSummary summary = files.get(entry.getKey());
+            for (S3Path s3Path : entry.getValue()) {
+                if (summary != null && !s3Path.getKey().endsWith(S3Path.PATH_SEPARATOR))
+                    found.put(s3Path, toS3FileAttributes(summary, s3Path.getKey()));
+                else if (directories.contains(entry.getKey()))
+                    unresolved.add(s3Path);
+            }
+        }
+        return unresolved;
+    }
+
+    private static String trimSlash(String key) {
+        return key.endsWith(S3Path.PATH_SEPARATOR) ? key.substring(0, key.length() - 1) : key;
+    }
+
+    private static String max(String a, String b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
     /**
      * get the S3PosixFileAttributes for a S3Path
      * @param s3Path Path mandatory not null
      * @return S3PosixFileAttributes never null
      * @throws NoSuchFileException if the Path doesnt exists
      */
-    public S3PosixFileAttributes getS3PosixFileAttributes(S3Path s3Path) throws NoSuchFileException {
+    public S3PosixFileAttributes getS3PosixFileAttributes(final S3Path s3Path) throws NoSuchFileException {
         S3ObjectSummary objectSummary = getS3ObjectSummary(s3Path);
 
-        String key = s3Path.getKey();
-        String bucketName = s3Path.getFileStore().name();
+        final String key = s3Path.getKey();
+        final String bucketName = s3Path.getFileStore().name();
 
         S3BasicFileAttributes attrs = toS3FileAttributes(objectSummary, key);
         S3UserPrincipal userPrincipal = null;
         Set<PosixFilePermission> permissions = null;
 
         if (!attrs.isDirectory()) {
-            AmazonS3 client = s3Path.getFileSystem().getClient();
-            AccessControlList acl = client.getObjectAcl(bucketName, key);
+            AccessControlList acl = inFlight(s3Path, "acl", new Callable<AccessControlList>() {
+                @Override
+                public AccessControlList call() {
+                    return s3Path.getFileSystem().getClient().getObjectAcl(bucketName, key);
+                }
+            });
             Owner owner = acl.getOwner();
 
             userPrincipal = new S3UserPrincipal(owner.getId() + ":" + owner.getDisplayName());
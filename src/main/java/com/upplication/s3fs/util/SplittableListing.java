@@ -0,0 +1,193 @@
+package com.upplication.s3fs.util;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.S3Path;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Recursive listing of the objects under a prefix, in key order, that can be split in two listings of disjoint key
+ * ranges to list them in different threads: the contract of a java.util.Spliterator, that is not available in Java 7.
+ * <p>
+ * {@link #trySplit()} splits at a common prefix of the listed prefix (found with one delimited listing, shared by
+ * all the splits) or, if there is none left in the range, gives the pages not fetched yet to the new listing.
+ * Every listing only requests the pages of its range: the new one starts after its first key with startAfter.
+ * Every instance must be used by one thread at a time.
+ */
+public class SplittableListing implements Iterator<S3ObjectSummary> {
+
+    /**
+     * max levels descended looking for common prefixes when a level has only one
+     */
+    public static final int MAX_SPLIT_POINTS_DEPTH = 3;
+
+    private final AmazonS3 client;
+    private final ListingEngine listingEngine;
+    private final String bucket;
+    private final String prefix;
+    private List<String> splitPoints;
+    // range of keys: after startAfter and up to last (both null if unbounded)
+    private String startAfter;
+    private String last;
+
+    private ObjectListing page;
+    private int index;
+    private boolean finished;
+
+    /**
+     * @param client        AmazonS3
+     * @param listingEngine ListingEngine used for all the listings
+     * @param bucket        String name of the bucket
+     * @param prefix        String prefix of the keys to list, usually a directory key with the end slash or empty
+     */
+    public SplittableListing(AmazonS3 client, ListingEngine listingEngine, String bucket, String prefix) {
+        this(client, listingEngine, bucket, prefix, null, null, null);
+    }
+
+    private SplittableListing(AmazonS3 client, ListingEngine listingEngine, String bucket, String prefix,
+                              List<String> splitPoints, String startAfter, String last) {
+        this.client = client;
+        this.listingEngine = listingEngine;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.splitPoints = splitPoints;
+        this.startAfter = startAfter;
+        this.last = last;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!finished) {
+            if (page != null && index < page.getObjectSummaries().size()) {
+                if (last != null && page.getObjectSummaries().get(index).getKey().compareTo(last) > 0)
+                    finish();
+                else
+                    return true;
+            } else if (page != null && (!page.isTruncated() || reachedLast())) {
+                finish();
+            } else {
+                page = page == null ? listingEngine.list(client, new ListObjectsRequest(bucket, prefix, null, null, null), startAfter)
+                        : listingEngine.next(client, page);
+                index = 0;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public S3ObjectSummary next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        S3ObjectSummary summary = page.getObjectSummaries().get(index++);
+        startAfter = summary.getKey();
+        return summary;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Keep the first part of the remaining keys and return a listing with the rest.
+     *
+     * @return SplittableListing with the keys after the ones of this listing, null if it cannot be split
+     */
+    public SplittableListing trySplit() {
+        if (finished)
+            return null;
+        if (splitPoints == null)
+            splitPoints = findSplitPoints();
+
+        List<String> candidates = new ArrayList<>();
+        for (String splitPoint : splitPoints) {
+            if ((startAfter == null || splitPoint.compareTo(startAfter) > 0) && (last == null || splitPoint.compareTo(last) < 0))
+                candidates.add(splitPoint);
+        }
+        if (!candidates.isEmpty())
+            return splitAt(candidates.get(candidates.size() / 2));
+
+        // the pages not fetched yet
+        if (page != null && page.isTruncated() && !page.getObjectSummaries().isEmpty() && !reachedLast())
+            return splitAt(lastFetchedKey());
+        return null;
+    }
+
+    /**
+     * @return long keys fetched and not returned yet, plus a page of the same size if there are more to fetch.
+     * Long.MAX_VALUE before the first page is fetched
+     */
+    public long estimateSize() {
+        if (finished)
+            return 0;
+        if (page == null)
+            return Long.MAX_VALUE;
+        long size = page.getObjectSummaries().size();
+        long remaining = size - index;
+        if (page.isTruncated() && !reachedLast())
+            remaining += size;
+        return remaining;
+    }
+
+    /**
+     * @return String greatest key of this listing, null if it is not bounded
+     */
+    public String getLast() {
+        return last;
+    }
+
+    private SplittableListing splitAt(String key) {
+        SplittableListing split = new SplittableListing(client, listingEngine, bucket, prefix, splitPoints, key, last);
+        last = key;
+        return split;
+    }
+
+    private boolean reachedLast() {
+        return last != null && lastFetchedKey().compareTo(last) >= 0;
+    }
+
+    private String lastFetchedKey() {
+        List<S3ObjectSummary> summaries = page.getObjectSummaries();
+        return summaries.isEmpty() ? "" : summaries.get(summaries.size() - 1).getKey();
+    }
+
+    private void finish() {
+        finished = true;
+        page = null;
+    }
+
+    /**
+     * @return the common prefixes of the first level below the prefix with more than one
+     */
+    private List<String> findSplitPoints() {
+        String level = prefix;
+        for (int depth = 0; depth < MAX_SPLIT_POINTS_DEPTH; depth++) {
+            ObjectListing listing = listingEngine.list(client, new ListObjectsRequest(bucket, level, null, S3Path.PATH_SEPARATOR, null), null);
+            List<String> commonPrefixes = new ArrayList<>();
+            for (String commonPrefix : listing.getCommonPrefixes()) {
+                // some S3 compatible storages return the common prefixes without the delimiter
+                commonPrefixes.add(commonPrefix.endsWith(S3Path.PATH_SEPARATOR) ? commonPrefix : commonPrefix + S3Path.PATH_SEPARATOR);
+            }
+            if (commonPrefixes.size() != 1 || !listing.getObjectSummaries().isEmpty() && !isMarker(listing, level)) {
+                Collections.sort(commonPrefixes);
+                return Collections.unmodifiableList(commonPrefixes);
+            }
+            level = commonPrefixes.get(0);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return true if the only object of the listing is the marker of the level
+     */
+    private static boolean isMarker(ObjectListing listing, String level) {
+        return listing.getObjectSummaries().size() == 1 && listing.getObjectSummaries().get(0).getKey().equals(level);
+    }
+}
@@ -0,0 +1,124 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.model.HeadBucketRequest;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.BucketCache;
+import com.upplication.s3fs.util.S3EndpointConstant;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class BucketCacheTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").file("file1");
+        client.bucket("bucketB");
+        reset(client);
+    }
+
+    @Test
+    public void bucketsAreListedOnce() {
+        BucketCache cache = new BucketCache(client, 1000);
+
+        assertEquals(2, cache.getBuckets().size());
+        assertEquals("bucketA", cache.getBucket("bucketA").getName());
+        assertNotNull(cache.getBucket("bucketB").getOwner());
+        assertNull(cache.getBucket("bucketC"));
+
+        verify(client, times(1)).listBuckets();
+    }
+
+    @Test
+    public void bucketsAreListedAgainWhenExpired() {
+        BucketCache cache = spy(new BucketCache(client, 1000));
+        doReturn(0L).when(cache).getCurrentTime();
+        cache.getBuckets();
+        doReturn(1000L).when(cache).getCurrentTime();
+        cache.getBuckets();
+        verify(client, times(1)).listBuckets();
+
+        doReturn(1001L).when(cache).getCurrentTime();
+        cache.getBuckets();
+        verify(client, times(2)).listBuckets();
+    }
+
+    @Test
+    public void noCache() {
+        BucketCache cache = new BucketCache(client, 0);
+        cache.getBuckets();
+        cache.getBuckets();
+        assertTrue(cache.exists("bucketA"));
+        assertTrue(cache.exists("bucketA"));
+
+        verify(client, times(2)).listBuckets();
+        verify(client, times(2)).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void existsUsesHeadBucket() {
+        BucketCache cache = new BucketCache(client, 1000);
+
+        assertTrue(cache.exists("bucketA"));
+        assertTrue(cache.exists("bucketA"));
+        assertFalse(cache.exists("bucketC"));
+
+        verify(client, never()).listBuckets();
+        verify(client, times(2)).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void missingBucketIsNotCached() throws IOException {
+        BucketCache cache = new BucketCache(client, -1);
+
+        assertFalse(cache.exists("bucketC"));
+        client.bucket("bucketC");
+        assertTrue(cache.exists("bucketC"));
+    }
+
+    @Test
+    public void existsFromTheListing() {
+        BucketCache cache = new BucketCache(client, 1000);
+        cache.getBuckets();
+
+        assertTrue(cache.exists("bucketB"));
+
+        verify(client, never()).headBucket(any(HeadBucketRequest.class));
+    }
+
+    @Test
+    public void invalidate() {
+        BucketCache cache = new BucketCache(client, -1);
+        cache.getBuckets();
+        cache.invalidate();
+        cache.getBuckets();
+
+        verify(client, times(2)).listBuckets();
+    }
+
+    @Test
+    public void fileSystemOperationsDontListTheBucketsEveryTime() throws IOException {
+        S3FileSystem fileSystem = (S3FileSystem) FileSystems.newFileSystem(S3EndpointConstant.S3_GLOBAL_URI_TEST, null);
+        S3Path file = fileSystem.getPath("/bucketA/file1");
+
+        file.getFileStore().getOwner();
+        file.getFileStore().getFileStoreAttributeView(S3FileStoreAttributeView.class);
+        fileSystem.getFileStores();
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+        Files.createDirectory(fileSystem.getPath("/bucketA/dir"));
+
+        verify(client, times(1)).listBuckets();
+    }
+}
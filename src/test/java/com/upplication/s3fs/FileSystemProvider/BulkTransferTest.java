@@ -0,0 +1,150 @@
+package com.upplication.s3fs.FileSystemProvider;
+
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3ProgressListener;
+import com.upplication.s3fs.S3TransferSummary;
+import com.upplication.s3fs.S3UnitTestBase;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class BulkTransferTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+    private S3FileSystemProvider provider;
+    private Path localDir;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/a", "dir/empty").file("dir/file1", "content1".getBytes())
+                .file("dir/a/file2", "content2".getBytes()).file("dir/a/b/file3", "content3".getBytes());
+        client.bucket("bucketB");
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, "4");
+        props.setProperty(S3FileSystemProvider.DOWNLOAD_PART_SIZE, "3");
+        props.setProperty(S3FileSystemProvider.UPLOAD_PART_SIZE, "5");
+        fileSystem = new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+        provider = (S3FileSystemProvider) fileSystem.provider();
+        localDir = Files.createTempDirectory("bulk");
+    }
+
+    @After
+    public void cleanLocalDir() throws IOException {
+        Files.walkFileTree(localDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void uploadsATree() throws IOException {
+        Files.write(localDir.resolve("file1"), "content1".getBytes());
+        Files.createDirectories(localDir.resolve("a").resolve("b"));
+        Files.write(localDir.resolve("a").resolve("file2"), "content2".getBytes());
+        Files.write(localDir.resolve("a").resolve("b").resolve("file3"), "content3".getBytes());
+        Files.createDirectory(localDir.resolve("empty"));
+        final long[] progress = new long[2];
+
+        S3TransferSummary summary = provider.uploadRecursive(localDir, fileSystem.getPath("/bucketB/up"), new S3ProgressListener() {
+            @Override
+            public void progress(long objects, long bytes) {
+                progress[0] = objects;
+                progress[1] = bytes;
+            }
+        });
+
+        assertEquals("content1", read("/bucketB/up/file1"));
+        assertEquals("content2", read("/bucketB/up/a/file2"));
+        assertEquals("content3", read("/bucketB/up/a/b/file3"));
+        assertTrue(Files.isDirectory(fileSystem.getPath("/bucketB/up/empty")));
+        // the three files and the empty directory
+        assertEquals(4, summary.getObjects());
+        assertEquals(24, summary.getBytes());
+        assertArrayEquals(new long[]{4, 24}, progress);
+    }
+
+    @Test
+    public void uploadsABigFileByParts() throws IOException {
+        byte[] content = "more than two parts".getBytes();
+        Files.write(localDir.resolve("big"), content);
+        reset(client);
+
+        S3TransferSummary summary = provider.uploadRecursive(localDir, fileSystem.getPath("/bucketB/"), S3ProgressListener.NONE);
+
+        // parts of 5 bytes
+        verify(client, times(4)).uploadPart(any(UploadPartRequest.class));
+        verify(client, never()).putObject(any(PutObjectRequest.class));
+        assertEquals(content.length, summary.getBytes());
+        assertArrayEquals(content, Files.readAllBytes(fileSystem.getPath("/bucketB/big")));
+    }
+
+    @Test
+    public void downloadsATree() throws IOException {
+        Path target = localDir.resolve("down");
+
+        S3TransferSummary summary = provider.downloadRecursive(fileSystem.getPath("/bucketA/dir"), target, S3ProgressListener.NONE);
+
+        assertEquals("content1", new String(Files.readAllBytes(target.resolve("file1"))));
+        assertEquals("content2", new String(Files.readAllBytes(target.resolve("a").resolve("file2"))));
+        assertEquals("content3", new String(Files.readAllBytes(target.resolve("a").resolve("b").resolve("file3"))));
+        assertTrue(Files.isDirectory(target.resolve("empty")));
+        // the three files and the markers dir/, dir/a/ and dir/empty/
+        assertEquals(6, summary.getObjects());
+        assertEquals(24, summary.getBytes());
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        provider.downloadRecursive(fileSystem.getPath("/bucketA/dir"), localDir, S3ProgressListener.NONE);
+        provider.uploadRecursive(localDir, fileSystem.getPath("/bucketB/copy"), S3ProgressListener.NONE);
+
+        for (String file : Arrays.asList("file1", "a/file2", "a/b/file3")) {
+            assertEquals(read("/bucketA/dir/" + file), read("/bucketB/copy/" + file));
+        }
+    }
+
+    @Test(expected = NotDirectoryException.class)
+    public void downloadOfAFile() throws IOException {
+        provider.downloadRecursive(fileSystem.getPath("/bucketA/dir/file1"), localDir, S3ProgressListener.NONE);
+    }
+
+    @Test(expected = NotDirectoryException.class)
+    public void uploadOfAFile() throws IOException {
+        Path file = Files.write(localDir.resolve("file1"), "content1".getBytes());
+        provider.uploadRecursive(file, fileSystem.getPath("/bucketB/up"), S3ProgressListener.NONE);
+    }
+
+    private String read(String path) throws IOException {
+        return new String(Files.readAllBytes(fileSystem.getPath(path)));
+    }
+}
@@ -0,0 +1,107 @@
+package com.upplication.s3fs.FileSystemProvider;
+
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3UnitTestBase;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class CopyRecursiveTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+    private S3FileSystemProvider provider;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/a").file("dir/file1", "content1".getBytes())
+                .file("dir/a/file2", "content2".getBytes()).file("dir/a/b/file3", "content3".getBytes())
+                .file("other/file4");
+        client.bucket("bucketB").dir("existing");
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, "3");
+        fileSystem = new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+        provider = (S3FileSystemProvider) fileSystem.provider();
+    }
+
+    @Test
+    public void copiesTheTreeWithinTheBucket() throws IOException {
+        provider.copyRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketA/copy"));
+
+        assertEquals("content1", read("/bucketA/copy/file1"));
+        assertEquals("content2", read("/bucketA/copy/a/file2"));
+        assertEquals("content3", read("/bucketA/copy/a/b/file3"));
+        assertTrue(Files.isDirectory(fileSystem.getPath("/bucketA/copy/a")));
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketA/copy/file4")));
+        // the source is still there
+        assertEquals("content1", read("/bucketA/dir/file1"));
+    }
+
+    @Test
+    public void copiesAcrossBucketsOnTheServer() throws IOException {
+        reset(client);
+        provider.copyRecursive(fileSystem.getPath("/bucketA/dir/"), fileSystem.getPath("/bucketB/copy/"));
+
+        // the marker dir/, dir/a/ and the three files
+        verify(client, times(5)).copyObject(any(CopyObjectRequest.class));
+        verify(client, never()).getObject(any(GetObjectRequest.class));
+        verify(client, never()).getObjectMetadata(anyString(), eq("dir/a/b/file3"));
+        assertEquals("content3", read("/bucketB/copy/a/b/file3"));
+    }
+
+    @Test
+    public void copiesTheObjectsCreatedAfterTheSnapshotInUse() throws IOException {
+        fileSystem.useSnapshot(provider.newListingSnapshot(fileSystem.getPath("/bucketA/dir")));
+        client.bucket("bucketA").file("dir/a/new", "new".getBytes());
+
+        provider.copyRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/copy"));
+
+        assertEquals("new", read("/bucketB/copy/a/new"));
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void targetExists() throws IOException {
+        provider.copyRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/existing"));
+    }
+
+    @Test
+    public void replaceExisting() throws IOException {
+        provider.copyRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/existing"),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        assertEquals("content2", read("/bucketB/existing/a/file2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intoItself() throws IOException {
+        provider.copyRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketA/dir/a/copy"));
+    }
+
+    @Test
+    public void copiesAFile() throws IOException {
+        provider.copyRecursive(fileSystem.getPath("/bucketA/dir/file1"), fileSystem.getPath("/bucketB/file1"));
+
+        assertEquals("content1", read("/bucketB/file1"));
+    }
+
+    private String read(String path) throws IOException {
+        return new String(Files.readAllBytes(fileSystem.getPath(path)));
+    }
+}
@@ -1,5 +1,8 @@
 package com.upplication.s3fs.FileSystemProvider;
 
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.upplication.s3fs.S3FileSystem;
 import com.upplication.s3fs.S3FileSystemProvider;
 import com.upplication.s3fs.S3UnitTestBase;
@@ -16,6 +19,9 @@ import java.util.Properties;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
 public class CopyTest extends S3UnitTestBase {
@@ -91,6 +97,155 @@ public class CopyTest extends S3UnitTestBase {
         s3fsProvider.copy(file, fileDest);
     }
 
+    @Test
+    public void copyWithReplaceIsOneHeadOneListAndOneCopy() throws IOException {
+        final String content = "content-file-1";
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir2").file("dir/file1", content.getBytes());
+        reset(client);
+        // act
+        FileSystem fs = createNewS3FileSystem();
+        Path file = fs.getPath("/bucketA/dir/file1");
+        Path fileDest = fs.getPath("/bucketA", "dir2", "file2");
+        s3fsProvider.copy(file, fileDest, StandardCopyOption.REPLACE_EXISTING);
+        // assert
+        verify(client, times(1)).getObjectMetadata(anyString(), anyString());
+        verify(client, never()).getObjectAcl(anyString(), anyString());
+        // the target is not a directory
+        verify(client, times(1)).listObjects(any(ListObjectsRequest.class));
+        verify(client, times(1)).copyObject(any(CopyObjectRequest.class));
+        assertArrayEquals(content.getBytes(), Files.readAllBytes(fileDest));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void copyDirectory() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file1");
+        // act
+        FileSystem fs = createNewS3FileSystem();
+        s3fsProvider.copy(fs.getPath("/bucketA/dir"), fs.getPath("/bucketA/dir2"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void copyToADirectory() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir2").file("dir/file1");
+        // act
+        FileSystem fs = createNewS3FileSystem();
+        s3fsProvider.copy(fs.getPath("/bucketA/dir/file1"), fs.getPath("/bucketA/dir2"));
+    }
+
+    @Test
+    public void copyReplacingADirectoryFails() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir2", "empty").file("dir/file1", "dir2/file2");
+        reset(client);
+        FileSystem fs = createNewS3FileSystem();
+        Path file = fs.getPath("/bucketA/dir/file1");
+        // act
+        try {
+            s3fsProvider.copy(file, fs.getPath("/bucketA/dir2"), StandardCopyOption.REPLACE_EXISTING);
+            fail("expected DirectoryNotEmptyException");
+        } catch (DirectoryNotEmptyException e) {
+            // expected
+        }
+        try {
+            s3fsProvider.copy(file, fs.getPath("/bucketA/empty"), StandardCopyOption.REPLACE_EXISTING);
+            fail("expected FileAlreadyExistsException");
+        } catch (FileAlreadyExistsException e) {
+            // expected
+        }
+        // assert
+        verify(client, never()).copyObject(any(CopyObjectRequest.class));
+        assertTrue(Files.isDirectory(fs.getPath("/bucketA/dir2")));
+        assertTrue(Files.isDirectory(fs.getPath("/bucketA/empty")));
+    }
+
+    @Test(expected = DirectoryNotEmptyException.class)
+    public void copyALocalFileReplacingADirectoryFails() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file1");
+        Path local = Files.createTempFile("local", ".txt");
+        try {
+            // act
+            FileSystem fs = createNewS3FileSystem();
+            fs.provider().copy(local, fs.getPath("/bucketA", "dir"), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.delete(local);
+        }
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void copyNotExists() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir");
+        // act
+        FileSystem fs = createNewS3FileSystem();
+        s3fsProvider.copy(fs.getPath("/bucketA/dir/file1"), fs.getPath("/bucketA/dir/file2"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Test
+    public void copyALocalFileUploadsIt() throws IOException {
+        final String content = "local-content";
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir");
+        Path local = Files.createTempFile("local", ".txt");
+        try {
+            Files.write(local, content.getBytes());
+            reset(client);
+            // act
+            FileSystem fs = createNewS3FileSystem();
+            Path fileDest = fs.getPath("/bucketA", "dir", "file1");
+            fs.provider().copy(local, fileDest);
+            // assert
+            verify(client, times(1)).putObject(any(PutObjectRequest.class));
+            assertArrayEquals(content.getBytes(), Files.readAllBytes(fileDest));
+        } finally {
+            Files.delete(local);
+        }
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void copyALocalFileAlreadyExists() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file1");
+        Path local = Files.createTempFile("local", ".txt");
+        try {
+            // act
+            FileSystem fs = createNewS3FileSystem();
+            fs.provider().copy(local, fs.getPath("/bucketA", "dir", "file1"));
+        } finally {
+            Files.delete(local);
+        }
+    }
+
+    @Test
+    public void copyALocalFileWithReplace() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file1", "old-content".getBytes());
+        Path local = Files.createTempFile("local", ".txt");
+        try {
+            Files.write(local, "new-content".getBytes());
+            // act
+            FileSystem fs = createNewS3FileSystem();
+            Path fileDest = fs.getPath("/bucketA", "dir", "file1");
+            fs.provider().copy(local, fileDest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            // assert
+            assertArrayEquals("new-content".getBytes(), Files.readAllBytes(fileDest));
+        } finally {
+            Files.delete(local);
+        }
+    }
+
     /**
      * create a new file system for s3 scheme with fake credentials
      * and global endpoint
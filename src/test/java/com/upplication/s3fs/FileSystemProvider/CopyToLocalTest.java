@@ -0,0 +1,144 @@
+package com.upplication.s3fs.FileSystemProvider;
+
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3UnitTestBase;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class CopyToLocalTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+    private S3FileSystemProvider provider;
+    private Path localDir;
+    private byte[] content;
+
+    @Before
+    public void setup() throws IOException {
+        content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file1", content).file("dir/empty", new byte[0]);
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, "3");
+        props.setProperty(S3FileSystemProvider.DOWNLOAD_PART_SIZE, "16");
+        fileSystem = new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+        provider = (S3FileSystemProvider) fileSystem.provider();
+        localDir = Files.createTempDirectory("download");
+    }
+
+    @After
+    public void cleanLocalDir() throws IOException {
+        for (Path file : files()) {
+            Files.delete(localDir.resolve(file));
+        }
+        Files.delete(localDir);
+    }
+
+    @Test
+    public void downloadsByRanges() throws IOException {
+        reset(client);
+        Path target = localDir.resolve("file1");
+        provider.copy(fileSystem.getPath("/bucketA/dir/file1"), target);
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+        // 100 bytes in ranges of 16
+        verify(client, times(7)).getObject(any(GetObjectRequest.class));
+        assertEquals(Collections.singletonList(target.getFileName()), files());
+    }
+
+    @Test
+    public void downloadsAnEmptyObject() throws IOException {
+        Path target = localDir.resolve("empty");
+        provider.copy(fileSystem.getPath("/bucketA/dir/empty"), target);
+
+        assertEquals(0, Files.size(target));
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void targetExists() throws IOException {
+        Path target = Files.createFile(localDir.resolve("file1"));
+        provider.copy(fileSystem.getPath("/bucketA/dir/file1"), target);
+    }
+
+    @Test
+    public void replaceExistingKeepingTheLastModified() throws IOException {
+        Path target = Files.write(localDir.resolve("file1"), "old".getBytes());
+        Path source = fileSystem.getPath("/bucketA/dir/file1");
+        provider.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(Files.getLastModifiedTime(source).toMillis() / 1000, Files.getLastModifiedTime(target).toMillis() / 1000);
+    }
+
+    @Test
+    public void copyAttributesTakesTheStoredTimeOfTheMetadataRead() throws IOException {
+        Path source = fileSystem.getPath("/bucketA/dir/file1");
+        Files.setLastModifiedTime(source, FileTime.fromMillis(1500000000000L));
+        reset(client);
+        Path target = localDir.resolve("file1");
+        provider.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+
+        assertEquals(1500000000000L, Files.getLastModifiedTime(target).toMillis());
+        verify(client, times(1)).getObjectMetadata(anyString(), anyString());
+        verify(client, never()).getObjectAcl(anyString(), anyString());
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void sourceNotExists() throws IOException {
+        provider.copy(fileSystem.getPath("/bucketA/dir/missing"), localDir.resolve("missing"));
+    }
+
+    @Test
+    public void changedDuringTheDownload() throws IOException {
+        // like the client when the ETag constraint is not met
+        doReturn(null).when(client).getObject(any(GetObjectRequest.class));
+        Path target = localDir.resolve("file1");
+        try {
+            provider.copy(fileSystem.getPath("/bucketA/dir/file1"), target);
+            fail("the object changed");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("changed during the download"));
+        } finally {
+            // the client is shared by all the tests
+            reset(client);
+        }
+        // neither the target nor the temp file
+        assertEquals(Collections.emptyList(), files());
+    }
+
+    private List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(localDir)) {
+            for (Path file : stream) {
+                files.add(file.getFileName());
+            }
+        }
+        return files;
+    }
+}
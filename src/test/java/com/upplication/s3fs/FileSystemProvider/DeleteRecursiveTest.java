@@ -0,0 +1,121 @@
+package com.upplication.s3fs.FileSystemProvider;
+
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.upplication.s3fs.S3BatchDeleteException;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3UnitTestBase;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.MockBucket;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class DeleteRecursiveTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+    private S3FileSystemProvider provider;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/a", "dir/empty").file("dir/file1", "dir/a/file2", "dir/a/b/file3",
+                "dir/c/file4", "other/file5");
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, "4");
+        fileSystem = new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+        provider = (S3FileSystemProvider) fileSystem.provider();
+    }
+
+    @Test
+    public void deletesTheTreeWithOneRequest() throws IOException {
+        reset(client);
+        provider.deleteRecursive(fileSystem.getPath("/bucketA/dir"));
+
+        for (String deleted : Arrays.asList("dir", "dir/file1", "dir/a", "dir/a/b/file3", "dir/c/file4", "dir/empty")) {
+            assertTrue(deleted, Files.notExists(fileSystem.getPath("/bucketA/" + deleted)));
+        }
+        assertTrue(Files.exists(fileSystem.getPath("/bucketA/other/file5")));
+        verify(client, times(1)).deleteObjects(any(DeleteObjectsRequest.class));
+    }
+
+    @Test
+    public void deletesTheObjectsCreatedAfterTheSnapshotInUse() throws IOException {
+        Path dir = fileSystem.getPath("/bucketA/dir");
+        fileSystem.useSnapshot(provider.newListingSnapshot(dir));
+        client.bucket("bucketA").file("dir/new", "dir/a/new");
+
+        provider.deleteRecursive(dir);
+
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketA/dir/new")));
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketA/dir/a/new")));
+        assertTrue(Files.notExists(dir));
+    }
+
+    @Test
+    public void deletesInBatches() throws IOException {
+        MockBucket bucket = client.bucket("bucketB");
+        for (int i = 0; i < 2500; i++) {
+            bucket.file(String.format("dir/file-%04d", i));
+        }
+        reset(client);
+        provider.deleteRecursive(fileSystem.getPath("/bucketB/dir/"));
+
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketB/dir/file-0000")));
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketB/dir/file-2499")));
+        verify(client, times(3)).deleteObjects(any(DeleteObjectsRequest.class));
+    }
+
+    @Test
+    public void deletesAFile() throws IOException {
+        provider.deleteRecursive(fileSystem.getPath("/bucketA/dir/file1"));
+
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketA/dir/file1")));
+        assertTrue(Files.exists(fileSystem.getPath("/bucketA/dir/a/file2")));
+    }
+
+    @Test
+    public void reportsTheKeysNotDeleted() throws IOException {
+        MultiObjectDeleteException.DeleteError error = new MultiObjectDeleteException.DeleteError();
+        error.setKey("dir/a/file2");
+        error.setCode("AccessDenied");
+        error.setMessage("Access Denied");
+        doThrow(new MultiObjectDeleteException(Collections.singletonList(error), Collections.<DeleteObjectsResult.DeletedObject>emptyList()))
+                .when(client).deleteObjects(any(DeleteObjectsRequest.class));
+
+        Path dir = fileSystem.getPath("/bucketA/dir");
+        try {
+            provider.deleteRecursive(dir);
+            fail("the objects not deleted must be reported");
+        } catch (S3BatchDeleteException e) {
+            assertEquals(Collections.singletonMap("dir/a/file2", "AccessDenied: Access Denied"), e.getFailures());
+            assertEquals(dir.toString(), e.getFile());
+        } finally {
+            // the client is shared by all the tests
+            reset(client);
+        }
+    }
+
+    @Test
+    public void listingIsFlat() throws IOException {
+        reset(client);
+        provider.deleteRecursive(fileSystem.getPath("/bucketA/dir"));
+
+        verify(client, never()).getObjectMetadata(anyString(), anyString());
+    }
+}
@@ -1,5 +1,6 @@
 package com.upplication.s3fs.FileSystemProvider;
 
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.google.common.collect.ImmutableMap;
 import com.upplication.s3fs.S3FileSystem;
 import com.upplication.s3fs.S3FileSystemProvider;
@@ -9,6 +10,7 @@ import com.upplication.s3fs.util.AmazonS3MockFactory;
 import com.upplication.s3fs.util.S3EndpointConstant;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
 import java.net.URI;
@@ -16,7 +18,10 @@ import java.nio.file.*;
 
 import static com.upplication.s3fs.AmazonS3Factory.ACCESS_KEY;
 import static com.upplication.s3fs.AmazonS3Factory.SECRET_KEY;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
 
 public class DeleteTest extends S3UnitTestBase {
 
@@ -74,6 +79,36 @@ public class DeleteTest extends S3UnitTestBase {
         s3fsProvider.delete(file);
     }
 
+    @Test
+    public void deleteIfExistsIsOneRequest() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file");
+        Path file = createNewS3FileSystem().getPath("/bucketA/dir/file");
+        reset(client);
+        // act
+        s3fsProvider.deleteIfExists(file);
+        // assert
+        assertTrue(Files.notExists(file));
+        ArgumentCaptor<DeleteObjectsRequest> request = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(client, times(1)).deleteObjects(request.capture());
+        assertEquals(2, request.getValue().getKeys().size());
+        assertEquals("dir/file", request.getValue().getKeys().get(0).getKey());
+        assertEquals("dir/file/", request.getValue().getKeys().get(1).getKey());
+    }
+
+    @Test
+    public void deleteIfExistsOfAMissingFile() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir");
+        Path file = createNewS3FileSystem().getPath("/bucketA/dir/file");
+        // act
+        s3fsProvider.deleteIfExists(file);
+        // assert
+        assertTrue(Files.exists(file.getParent()));
+    }
+
     /**
      * create a new file system for s3 scheme with fake credentials
      * and global endpoint
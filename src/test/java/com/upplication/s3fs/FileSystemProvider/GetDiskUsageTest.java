@@ -0,0 +1,114 @@
+package com.upplication.s3fs.FileSystemProvider;
+
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.upplication.s3fs.S3DiskUsage;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3Path;
+import com.upplication.s3fs.S3UnitTestBase;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class GetDiskUsageTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/a", "dir/empty")
+                .file("dir/file1", new byte[10])
+                .file("dir/a/file2", new byte[20])
+                .file("dir/a/b/file3", new byte[30])
+                .file("dir/a/b/c/file4", new byte[40])
+                .file("dir/d/file5", new byte[50])
+                .file("other/file6", new byte[60]);
+    }
+
+    @Test
+    public void totalOfTheDirectory() throws IOException {
+        S3FileSystem fileSystem = fileSystem(4);
+        Map<Path, S3DiskUsage> usage = provider(fileSystem).getDiskUsage(fileSystem.getPath("/bucketA/dir"), 0);
+
+        assertEquals(1, usage.size());
+        S3DiskUsage total = usage.get(fileSystem.getPath("/bucketA/dir"));
+        assertEquals(150, total.getSize());
+        assertEquals(5, total.getCount());
+    }
+
+    @Test
+    public void totalsOfTheSubDirectoriesUpToTheDepth() throws IOException {
+        for (int parallelism = 1; parallelism <= 4; parallelism++) {
+            S3FileSystem fileSystem = fileSystem(parallelism);
+            Map<Path, S3DiskUsage> usage = provider(fileSystem).getDiskUsage(fileSystem.getPath("/bucketA/dir/"), 2);
+
+            List<String> keys = new ArrayList<>();
+            for (Path path : usage.keySet()) {
+                keys.add(((S3Path) path).getKey());
+            }
+            assertEquals(Arrays.asList("dir/", "dir/a", "dir/a/b", "dir/d", "dir/empty"), keys);
+            assertUsage(150, 5, usage.get(fileSystem.getPath("/bucketA/dir/")));
+            assertUsage(90, 3, usage.get(fileSystem.getPath("/bucketA/dir/a")));
+            assertUsage(70, 2, usage.get(fileSystem.getPath("/bucketA/dir/a/b")));
+            assertUsage(50, 1, usage.get(fileSystem.getPath("/bucketA/dir/d")));
+            assertUsage(0, 0, usage.get(fileSystem.getPath("/bucketA/dir/empty")));
+        }
+    }
+
+    @Test
+    public void totalOfTheBucket() throws IOException {
+        S3FileSystem fileSystem = fileSystem(2);
+        Map<Path, S3DiskUsage> usage = provider(fileSystem).getDiskUsage(fileSystem.getPath("/bucketA/"), 1);
+
+        assertUsage(210, 6, usage.get(fileSystem.getPath("/bucketA/")));
+        assertUsage(150, 5, usage.get(fileSystem.getPath("/bucketA/dir")));
+        assertUsage(60, 1, usage.get(fileSystem.getPath("/bucketA/other")));
+    }
+
+    @Test
+    public void onlyListsTheObjects() throws IOException {
+        S3FileSystem fileSystem = fileSystem(1);
+        reset(client);
+        provider(fileSystem).getDiskUsage(fileSystem.getPath("/bucketA/dir"), 3);
+
+        verify(client, never()).getObjectMetadata(anyString(), anyString());
+        verify(client, never()).getObjectMetadata(any(GetObjectMetadataRequest.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeDepth() throws IOException {
+        S3FileSystem fileSystem = fileSystem(1);
+        provider(fileSystem).getDiskUsage(fileSystem.getPath("/bucketA/dir"), -1);
+    }
+
+    private static void assertUsage(long size, long count, S3DiskUsage usage) {
+        assertNotNull(usage);
+        assertEquals(size, usage.getSize());
+        assertEquals(count, usage.getCount());
+    }
+
+    private S3FileSystem fileSystem(int parallelism) {
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, String.valueOf(parallelism));
+        return new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+    }
+
+    private static S3FileSystemProvider provider(S3FileSystem fileSystem) {
+        return (S3FileSystemProvider) fileSystem.provider();
+    }
+}
@@ -0,0 +1,188 @@
+package com.upplication.s3fs.FileSystemProvider;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3ProgressListener;
+import com.upplication.s3fs.S3UnitTestBase;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.MockBucket;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class MoveRecursiveTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+    private S3FileSystemProvider provider;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/a", "dir/empty").file("dir/file1", "content1".getBytes())
+                .file("dir/a/file2", "content2".getBytes()).file("dir/a/b/file3", "content3".getBytes())
+                .file("other/file4");
+        client.bucket("bucketB").dir("existing");
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, "3");
+        fileSystem = new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+        provider = (S3FileSystemProvider) fileSystem.provider();
+    }
+
+    @Test
+    public void movesTheTreeWithinTheBucket() throws IOException {
+        provider.moveRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketA/moved"), S3ProgressListener.NONE);
+
+        assertEquals("content1", read("/bucketA/moved/file1"));
+        assertEquals("content2", read("/bucketA/moved/a/file2"));
+        assertEquals("content3", read("/bucketA/moved/a/b/file3"));
+        assertTrue(Files.isDirectory(fileSystem.getPath("/bucketA/moved/empty")));
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketA/dir")));
+        assertTrue(Files.exists(fileSystem.getPath("/bucketA/other/file4")));
+    }
+
+    @Test
+    public void movesTheObjectsCreatedAfterTheSnapshotInUse() throws IOException {
+        fileSystem.useSnapshot(provider.newListingSnapshot(fileSystem.getPath("/bucketA/dir")));
+        client.bucket("bucketA").file("dir/a/new", "new".getBytes());
+
+        provider.moveRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/moved"), S3ProgressListener.NONE);
+
+        assertEquals("new", new String(Files.readAllBytes(fileSystem.getPath("/bucketB/moved/a/new"))));
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketA/dir/a/new")));
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketA/dir")));
+    }
+
+    @Test
+    public void movesAcrossBucketsInBatches() throws IOException {
+        MockBucket bucket = client.bucket("bucketC");
+        for (int i = 0; i < 2500; i++) {
+            bucket.file(String.format("dir/file-%04d", i));
+        }
+        reset(client);
+        final long[] progress = new long[2];
+        provider.moveRecursive(fileSystem.getPath("/bucketC/dir/"), fileSystem.getPath("/bucketB/moved/"), new S3ProgressListener() {
+            @Override
+            public void progress(long objects, long bytes) {
+                assertTrue(objects >= progress[0]);
+                progress[0] = objects;
+                progress[1] = bytes;
+            }
+        });
+
+        assertEquals(2500, progress[0]);
+        verify(client, times(2500)).copyObject(any(CopyObjectRequest.class));
+        verify(client, times(3)).deleteObjects(any(DeleteObjectsRequest.class));
+        assertTrue(Files.exists(fileSystem.getPath("/bucketB/moved/file-2499")));
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketC/dir/file-0000")));
+    }
+
+    @Test
+    public void progressWithTheSizes() throws IOException {
+        final long[] progress = new long[2];
+        provider.moveRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/moved"), new S3ProgressListener() {
+            @Override
+            public void progress(long objects, long bytes) {
+                progress[0] = objects;
+                progress[1] = bytes;
+            }
+        });
+
+        // the three files and the markers dir/, dir/a/ and dir/empty/
+        assertEquals(6, progress[0]);
+        assertEquals(24, progress[1]);
+    }
+
+    @Test
+    public void retryMovesWhatIsLeft() throws IOException {
+        doThrow(new AmazonS3Exception("Internal Error")).when(client).copyObject(argThat(new ArgumentMatcher<CopyObjectRequest>() {
+            @Override
+            public boolean matches(Object argument) {
+                return ((CopyObjectRequest) argument).getSourceKey().equals("dir/a/file2");
+            }
+        }));
+        try {
+            provider.moveRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/moved"), S3ProgressListener.NONE);
+            fail("the copy fails");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            // the client is shared by all the tests
+            reset(client);
+        }
+        assertTrue(Files.exists(fileSystem.getPath("/bucketA/dir/a/file2")));
+
+        provider.moveRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/moved"), S3ProgressListener.NONE,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketA/dir")));
+        for (String moved : Arrays.asList("file1", "a/file2", "a/b/file3")) {
+            assertTrue(moved, Files.exists(fileSystem.getPath("/bucketB/moved/" + moved)));
+        }
+        // and again, already done
+        reset(client);
+        provider.moveRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/moved"), S3ProgressListener.NONE,
+                StandardCopyOption.REPLACE_EXISTING);
+        verify(client, never()).copyObject(any(CopyObjectRequest.class));
+        verify(client, never()).deleteObjects(any(DeleteObjectsRequest.class));
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void sourceNotExists() throws IOException {
+        provider.moveRecursive(fileSystem.getPath("/bucketA/missing"), fileSystem.getPath("/bucketB/moved"), S3ProgressListener.NONE);
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void targetExists() throws IOException {
+        provider.moveRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/existing"), S3ProgressListener.NONE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intoItself() throws IOException {
+        provider.moveRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketA/dir/a/moved"), S3ProgressListener.NONE);
+    }
+
+    @Test(expected = AtomicMoveNotSupportedException.class)
+    public void atomicMove() throws IOException {
+        provider.moveRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/moved"), S3ProgressListener.NONE,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Test
+    public void movesAFile() throws IOException {
+        final long[] progress = new long[2];
+        provider.moveRecursive(fileSystem.getPath("/bucketA/dir/file1"), fileSystem.getPath("/bucketB/file1"), new S3ProgressListener() {
+            @Override
+            public void progress(long objects, long bytes) {
+                progress[0] = objects;
+                progress[1] = bytes;
+            }
+        });
+
+        assertEquals("content1", read("/bucketB/file1"));
+        assertTrue(Files.notExists(fileSystem.getPath("/bucketA/dir/file1")));
+        assertArrayEquals(new long[]{1, 8}, progress);
+    }
+
+    private String read(String path) throws IOException {
+        return new String(Files.readAllBytes(fileSystem.getPath(path)));
+    }
+}
@@ -1,5 +1,8 @@
 package com.upplication.s3fs.FileSystemProvider;
 
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.upplication.s3fs.S3FileSystem;
 import com.upplication.s3fs.S3FileSystemProvider;
 import com.upplication.s3fs.S3UnitTestBase;
@@ -14,6 +17,8 @@ import java.nio.file.*;
 import java.util.Properties;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
 public class MoveTest extends S3UnitTestBase {
@@ -44,6 +49,27 @@ public class MoveTest extends S3UnitTestBase {
         assertArrayEquals(content.getBytes(), Files.readAllBytes(fileDest));
     }
 
+    @Test
+    public void moveALocalFileUploadsAndDeletesIt() throws IOException {
+        // fixtures
+        final String content = "local-content";
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir");
+        Path local = Files.createTempFile("local", ".txt");
+        try {
+            Files.write(local, content.getBytes());
+            // act
+            FileSystem fs = createNewS3FileSystem();
+            Path fileDest = fs.getPath("/bucketA", "dir", "file1");
+            s3fsProvider.move(local, fileDest);
+            // assert
+            assertArrayEquals(content.getBytes(), Files.readAllBytes(fileDest));
+            assertTrue(Files.notExists(local));
+        } finally {
+            Files.deleteIfExists(local);
+        }
+    }
+
     @Test
     public void moveWithReplaceExisting() throws IOException {
         // fixtures
@@ -91,6 +117,43 @@ public class MoveTest extends S3UnitTestBase {
         s3fsProvider.move(file, fileDest, StandardCopyOption.ATOMIC_MOVE);
     }
 
+    @Test
+    public void moveWithReplaceIsOneHeadOneListOneCopyAndOneDelete() throws IOException {
+        // fixtures
+        final String content = "sample-content";
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir2").file("dir/file1", content.getBytes());
+        reset(client);
+        // act
+        FileSystem fs = createNewS3FileSystem();
+        Path file = fs.getPath("/bucketA/dir/file1");
+        Path fileDest = fs.getPath("/bucketA", "dir2", "file2");
+        s3fsProvider.move(file, fileDest, StandardCopyOption.REPLACE_EXISTING);
+        // assert
+        verify(client, times(1)).getObjectMetadata(anyString(), anyString());
+        verify(client, never()).getObjectAcl(anyString(), anyString());
+        // the target is not a directory
+        verify(client, times(1)).listObjects(any(ListObjectsRequest.class));
+        verify(client, times(1)).copyObject(any(CopyObjectRequest.class));
+        verify(client, times(1)).deleteObjects(any(DeleteObjectsRequest.class));
+        assertTrue(Files.notExists(file));
+        assertArrayEquals(content.getBytes(), Files.readAllBytes(fileDest));
+    }
+
+    @Test
+    public void moveSameFile() throws IOException {
+        // fixtures
+        final String content = "sample-content";
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file1", content.getBytes());
+        // act
+        FileSystem fs = createNewS3FileSystem();
+        Path file = fs.getPath("/bucketA/dir/file1");
+        s3fsProvider.move(file, fs.getPath("/bucketA/dir/file1"));
+        // assert
+        assertArrayEquals(content.getBytes(), Files.readAllBytes(file));
+    }
+
     /**
      * create a new file system for s3 scheme with fake credentials
      * and global endpoint
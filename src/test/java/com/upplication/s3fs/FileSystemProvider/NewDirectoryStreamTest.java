@@ -1,7 +1,10 @@
 package com.upplication.s3fs.FileSystemProvider;
 
+import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.upplication.s3fs.S3FileSystem;
 import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3Path;
+import com.upplication.s3fs.S3PathMatcher;
 import com.upplication.s3fs.S3UnitTestBase;
 import com.upplication.s3fs.util.AmazonS3ClientMock;
 import com.upplication.s3fs.util.AmazonS3MockFactory;
@@ -9,6 +12,7 @@ import com.upplication.s3fs.util.MockBucket;
 import com.upplication.s3fs.util.S3EndpointConstant;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentMatcher;
 
 import java.io.IOException;
 import java.nio.file.*;
@@ -138,6 +142,143 @@ public class NewDirectoryStreamTest extends S3UnitTestBase {
         assertEquals(count1050, count);
     }
 
+    @Test
+    public void filterIsApplied() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/sub.gz").file("dir/file1.gz", "dir/file2.txt", "dir/file3.gz");
+        Path dir = createNewS3FileSystem().getPath("/bucketA", "dir");
+
+        // act
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.gz")) {
+            for (Path path : stream) {
+                names.add(path.getFileName().toString());
+            }
+        }
+
+        // assert
+        assertEquals(new HashSet<>(Arrays.asList("file1.gz", "file3.gz", "sub.gz")), new HashSet<>(names));
+        assertEquals(3, names.size());
+    }
+
+    @Test
+    public void pathMatcherNarrowsTheListing() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/part-1.gz", "dir/part-2.txt", "dir/other-3.gz");
+        S3FileSystem fileSystem = createNewS3FileSystem();
+        Path dir = fileSystem.getPath("/bucketA", "dir");
+        reset(client);
+
+        // act
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, (S3PathMatcher) fileSystem.getPathMatcher("glob:part-*.gz"))) {
+            for (Path path : stream) {
+                names.add(path.getFileName().toString());
+            }
+        }
+
+        // assert
+        assertEquals(Arrays.asList("part-1.gz"), names);
+        verify(client).listObjects(argThat(new ArgumentMatcher<ListObjectsRequest>() {
+            @Override
+            public boolean matches(Object argument) {
+                ListObjectsRequest request = (ListObjectsRequest) argument;
+                return request.getPrefix().equals("dir/part-") && "/".equals(request.getDelimiter());
+            }
+        }));
+    }
+
+    @Test
+    public void pathMatcherWithoutWildcardsMatchesAFile() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/part-1.gz", "dir/part-1.gz.md5", "dir/part-2.gz");
+        S3FileSystem fileSystem = createNewS3FileSystem();
+        Path dir = fileSystem.getPath("/bucketA", "dir");
+
+        // act
+        List<String> names = listNames(dir, "glob:part-1.gz");
+
+        // assert
+        assertEquals(Arrays.asList("part-1.gz"), names);
+    }
+
+    @Test
+    public void pathMatcherWithoutWildcardsMatchesADirectory() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/sub", "dir/other").file("dir/sub/file1", "dir/sub/file2", "dir/subway", "dir/other/sub");
+        S3FileSystem fileSystem = createNewS3FileSystem();
+        Path dir = fileSystem.getPath("/bucketA", "dir");
+
+        // act
+        List<String> names = listNames(dir, "glob:sub");
+
+        // assert
+        assertEquals(Arrays.asList("sub"), names);
+        assertTrue(Files.isDirectory(dir.resolve(names.get(0))));
+    }
+
+    @Test
+    public void pathMatcherReturnsTheDirectoriesOfTheLiteralPrefix() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/part-a/file1", "dir/part-a/file2", "dir/part-b.gz");
+        S3FileSystem fileSystem = createNewS3FileSystem();
+        Path dir = fileSystem.getPath("/bucketA", "dir");
+
+        // act
+        List<String> names = listNames(dir, "glob:part-*");
+
+        // assert
+        assertEquals(new HashSet<>(Arrays.asList("part-a", "part-b.gz")), new HashSet<>(names));
+        assertEquals(2, names.size());
+    }
+
+    @Test
+    public void multiLevelPathMatcherListsOnlyTheLiteralPrefix() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").file("logs/2026-09-30/part-1.gz", "logs/2026-10-01/part-1.gz", "logs/2026-10-01/part-2.txt",
+                "logs/2026-10-02/part-3.gz", "logs/2026-10-02/deeper/part-4.gz", "logs/2026-11-01/part-5.gz");
+        S3FileSystem fileSystem = createNewS3FileSystem();
+        Path bucket = fileSystem.getPath("/bucketA");
+        reset(client);
+
+        // act
+        List<String> keys = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(bucket, (S3PathMatcher) fileSystem.getPathMatcher("glob:logs/2026-10-*/part-*.gz"))) {
+            for (Path path : stream) {
+                keys.add(((S3Path) path).getKey());
+            }
+        }
+
+        // assert
+        assertEquals(Arrays.asList("logs/2026-10-01/part-1.gz", "logs/2026-10-02/part-3.gz"), keys);
+        verify(client).listObjects(argThat(new ArgumentMatcher<ListObjectsRequest>() {
+            @Override
+            public boolean matches(Object argument) {
+                ListObjectsRequest request = (ListObjectsRequest) argument;
+                return request.getPrefix().equals("logs/2026-10-") && request.getDelimiter() == null;
+            }
+        }));
+    }
+
+    /**
+     * @return List with the file names of the entries of the directory accepted by the PathMatcher
+     */
+    private List<String> listNames(Path dir, String syntaxAndPattern) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, (S3PathMatcher) dir.getFileSystem().getPathMatcher(syntaxAndPattern))) {
+            for (Path path : stream) {
+                names.add(path.getFileName().toString());
+            }
+        }
+        return names;
+    }
+
     /**
      * check if the directory path contains all the files name
      * @param base Path
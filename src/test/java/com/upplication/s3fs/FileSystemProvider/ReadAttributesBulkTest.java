@@ -0,0 +1,157 @@
+package com.upplication.s3fs.FileSystemProvider;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.google.common.collect.ImmutableMap;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3Path;
+import com.upplication.s3fs.S3UnitTestBase;
+import com.upplication.s3fs.attribute.S3BasicFileAttributes;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.S3EndpointConstant;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ReadAttributesBulkTest extends S3UnitTestBase {
+
+    private S3FileSystemProvider s3fsProvider;
+    private S3FileSystem fileSystem;
+
+    @Before
+    public void setup() throws IOException {
+        s3fsProvider = getS3fsProvider();
+        fileSystem = (S3FileSystem) s3fsProvider.newFileSystem(S3EndpointConstant.S3_GLOBAL_URI_TEST,
+                ImmutableMap.<String, Object>of(S3FileSystemProvider.BULK_PREFIX_LISTING_THRESHOLD, "3",
+                        S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, "4"));
+    }
+
+    @Test
+    public void readAttributesOneByOne() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file1", "content".getBytes()).file("file2");
+        reset(client);
+
+        S3Path file1 = fileSystem.getPath("/bucketA/dir/file1");
+        S3Path file2 = fileSystem.getPath("/bucketA/file2");
+        S3Path dir = fileSystem.getPath("/bucketA/dir");
+        S3Path missing = fileSystem.getPath("/bucketA/dir/missing");
+        // act
+        Map<S3Path, S3BasicFileAttributes> attributes = s3fsProvider.readAttributes(Arrays.asList(file1, missing, file2, dir));
+        // assert
+        assertEquals(Arrays.asList(file1, file2, dir), new ArrayList<>(attributes.keySet()));
+        assertTrue(attributes.get(file1).isRegularFile());
+        assertEquals(7L, attributes.get(file1).size());
+        assertTrue(attributes.get(file2).isRegularFile());
+        assertTrue(attributes.get(dir).isDirectory());
+        assertSame(attributes.get(file1), file1.getFileAttributes());
+        verify(client, never()).listObjects(argThat(new DelimitedListing()));
+    }
+
+    @Test
+    public void readAttributesListingTheParent() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/sub").file("dir/file1", "content".getBytes()).file("dir/file2", "dir/file3", "dir/sub/file4", "dir/virtual/file5", "dir/zzz");
+        reset(client);
+
+        List<Path> paths = new ArrayList<>();
+        for (String name : new String[]{"file1", "file2", "file3", "sub", "virtual", "missing"}) {
+            paths.add(fileSystem.getPath("/bucketA/dir", name));
+        }
+        // act
+        Map<S3Path, S3BasicFileAttributes> attributes = s3fsProvider.readAttributes(paths, true);
+        // assert
+        assertEquals(5, attributes.size());
+        assertEquals(7L, attributes.get(fileSystem.getPath("/bucketA/dir/file1")).size());
+        assertTrue(attributes.get(fileSystem.getPath("/bucketA/dir/file2")).isRegularFile());
+        assertTrue(attributes.get(fileSystem.getPath("/bucketA/dir/file3")).isRegularFile());
+        assertTrue(attributes.get(fileSystem.getPath("/bucketA/dir/sub")).isDirectory());
+        assertTrue(attributes.get(fileSystem.getPath("/bucketA/dir/virtual")).isDirectory());
+        assertFalse(attributes.containsKey(fileSystem.getPath("/bucketA/dir/missing")));
+        verify(client, times(1)).listObjects(argThat(new DelimitedListing()));
+        // the regular files come from the listing
+        verify(client, never()).getObjectMetadata(anyString(), eq("dir/file1"));
+        verify(client, never()).getObjectMetadata(anyString(), eq("dir/missing"));
+    }
+
+    @Test
+    public void readAttributesHasTheTimesOfOnePath() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file1", "dir/file2", "dir/file3");
+        FileTime lastModified = FileTime.fromMillis(1000000000000L);
+        List<Path> paths = new ArrayList<>();
+        for (String name : new String[]{"file1", "file2", "file3"}) {
+            Path path = fileSystem.getPath("/bucketA/dir", name);
+            Files.setLastModifiedTime(path, lastModified);
+            paths.add(path);
+        }
+        reset(client);
+        // act
+        Map<S3Path, S3BasicFileAttributes> attributes = s3fsProvider.readAttributes(paths);
+        // assert
+        for (Path path : paths) {
+            // a new path, without the attributes cached by the bulk read
+            BasicFileAttributes one = Files.readAttributes(fileSystem.getPath("/bucketA/dir", path.getFileName().toString()), BasicFileAttributes.class);
+            assertEquals(lastModified, attributes.get(path).lastModifiedTime());
+            assertEquals(one.lastModifiedTime(), attributes.get(path).lastModifiedTime());
+            assertEquals(one.size(), attributes.get(path).size());
+            assertEquals(one.isRegularFile(), attributes.get(path).isRegularFile());
+        }
+        // more paths of the same parent than the threshold, but the listing times were not accepted
+        verify(client, never()).listObjects(argThat(new DelimitedListing()));
+    }
+
+    @Test
+    public void readAttributesWithListingTimes() throws IOException {
+        // fixtures
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file1", "dir/file2", "dir/file3");
+        List<Path> paths = new ArrayList<>();
+        for (String name : new String[]{"file1", "file2", "file3"}) {
+            Path path = fileSystem.getPath("/bucketA/dir", name);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(1000000000000L));
+            paths.add(path);
+        }
+        reset(client);
+        // act
+        Map<S3Path, S3BasicFileAttributes> attributes = s3fsProvider.readAttributes(paths, true);
+        // assert
+        for (Path path : paths) {
+            assertNotEquals(FileTime.fromMillis(1000000000000L), attributes.get(path).lastModifiedTime());
+        }
+        verify(client, times(1)).listObjects(argThat(new DelimitedListing()));
+        verify(client, never()).getObjectMetadata(anyString(), anyString());
+    }
+
+    @Test
+    public void readAttributesEmpty() throws IOException {
+        assertTrue(s3fsProvider.readAttributes(Collections.<Path>emptyList()).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readAttributesRelativePath() throws IOException {
+        s3fsProvider.readAttributes(Collections.singletonList(fileSystem.getPath("dir")));
+    }
+
+    private static class DelimitedListing extends ArgumentMatcher<ListObjectsRequest> {
+        @Override
+        public boolean matches(Object argument) {
+            return argument instanceof ListObjectsRequest && "/".equals(((ListObjectsRequest) argument).getDelimiter());
+        }
+    }
+}
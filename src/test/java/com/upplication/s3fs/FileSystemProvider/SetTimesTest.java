@@ -0,0 +1,124 @@
+package com.upplication.s3fs.FileSystemProvider;
+
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3Path;
+import com.upplication.s3fs.S3ProgressListener;
+import com.upplication.s3fs.S3TransferSummary;
+import com.upplication.s3fs.S3UnitTestBase;
+import com.upplication.s3fs.attribute.S3FileTimes;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class SetTimesTest extends S3UnitTestBase {
+
+    private static final FileTime TIME = FileTime.fromMillis(1000000000000L);
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+    private S3FileSystemProvider provider;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file1", "content1".getBytes())
+                .file("dir/file2", "content2".getBytes()).file("dir/file3", "content3".getBytes());
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, "4");
+        fileSystem = new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+        provider = (S3FileSystemProvider) fileSystem.provider();
+    }
+
+    @Test
+    public void setsTheTimesOfManyObjects() throws IOException {
+        final long[] progress = new long[2];
+
+        S3TransferSummary summary = provider.setTimes(timesOf("file1", "file2", "file3"), new S3ProgressListener() {
+            @Override
+            public void progress(long objects, long bytes) {
+                progress[0] = objects;
+                progress[1] = bytes;
+            }
+        });
+
+        for (String name : new String[]{"file1", "file2", "file3"}) {
+            assertEquals(TIME, Files.getLastModifiedTime(fileSystem.getPath("/bucketA/dir", name)));
+        }
+        assertEquals(3, summary.getObjects());
+        assertEquals(24, summary.getBytes());
+        assertArrayEquals(new long[]{3, 24}, progress);
+    }
+
+    @Test
+    public void skipsTheObjectsWithTheTimesAlready() throws IOException {
+        provider.setTimes(timesOf("file1", "file2"), S3ProgressListener.NONE);
+        reset(client);
+
+        S3TransferSummary summary = provider.setTimes(timesOf("file1", "file2", "file3"), S3ProgressListener.NONE);
+
+        // only file3 is copied in place
+        verify(client, times(1)).copyObject(any(CopyObjectRequest.class));
+        assertEquals(1, summary.getObjects());
+        assertEquals(TIME, Files.getLastModifiedTime(fileSystem.getPath("/bucketA/dir/file3")));
+    }
+
+    @Test
+    public void nullTimesAreKept() throws IOException {
+        provider.setTimes(timesOf("file1"), S3ProgressListener.NONE);
+        Map<S3Path, S3FileTimes> access = new LinkedHashMap<>();
+        access.put(fileSystem.getPath("/bucketA/dir/file1"), new S3FileTimes(null, FileTime.fromMillis(2000), null));
+
+        S3TransferSummary summary = provider.setTimes(access, S3ProgressListener.NONE);
+
+        assertEquals(1, summary.getObjects());
+        assertEquals(TIME, Files.getLastModifiedTime(fileSystem.getPath("/bucketA/dir/file1")));
+    }
+
+    @Test
+    public void noTimes() throws IOException {
+        S3TransferSummary summary = provider.setTimes(new LinkedHashMap<S3Path, S3FileTimes>(), S3ProgressListener.NONE);
+
+        assertEquals(0, summary.getObjects());
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void setTimesOfAMissingObject() throws IOException {
+        provider.setTimes(timesOf("file1", "missing"), S3ProgressListener.NONE);
+    }
+
+    @Test
+    public void setTimesOfOneObjectSkipsTheCopyIfItHasTheTimes() throws IOException {
+        S3Path file = fileSystem.getPath("/bucketA/dir/file1");
+        Files.setLastModifiedTime(file, TIME);
+        reset(client);
+
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(TIME, null, null);
+
+        verify(client, never()).copyObject(any(CopyObjectRequest.class));
+        assertEquals(TIME, Files.getLastModifiedTime(file));
+    }
+
+    private Map<S3Path, S3FileTimes> timesOf(String... names) {
+        Map<S3Path, S3FileTimes> times = new LinkedHashMap<>();
+        for (String name : names) {
+            times.put(fileSystem.getPath("/bucketA/dir", name), new S3FileTimes(TIME, null, null));
+        }
+        return times;
+    }
+}
@@ -0,0 +1,232 @@
+package com.upplication.s3fs.FileSystemProvider;
+
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3ProgressListener;
+import com.upplication.s3fs.S3TransferSummary;
+import com.upplication.s3fs.S3UnitTestBase;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class SyncTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+    private S3FileSystemProvider provider;
+    private Path localDir;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/a", "dir/empty").file("dir/file1", "content1".getBytes())
+                .file("dir/a/file2", "content2".getBytes());
+        client.bucket("bucketB");
+        client.setETagsInListings(true);
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, "4");
+        props.setProperty(S3FileSystemProvider.UPLOAD_PART_SIZE, "5");
+        fileSystem = new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+        provider = (S3FileSystemProvider) fileSystem.provider();
+        localDir = Files.createTempDirectory("sync");
+    }
+
+    @After
+    public void cleanLocalDir() throws IOException {
+        client.setETagsInListings(false);
+        Files.walkFileTree(localDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void firstSyncUploadsEverything() throws IOException {
+        localTree();
+
+        S3TransferSummary summary = provider.syncRecursive(localDir, fileSystem.getPath("/bucketB/up"), false, S3ProgressListener.NONE);
+
+        assertEquals("content1", read("/bucketB/up/file1"));
+        assertEquals("more than two parts", read("/bucketB/up/a/big"));
+        assertTrue(Files.isDirectory(fileSystem.getPath("/bucketB/up/empty")));
+        assertEquals(3, summary.getObjects());
+    }
+
+    @Test
+    public void secondSyncUploadsNothing() throws IOException {
+        localTree();
+        provider.syncRecursive(localDir, fileSystem.getPath("/bucketB/up"), false, S3ProgressListener.NONE);
+        reset(client);
+
+        S3TransferSummary summary = provider.syncRecursive(localDir, fileSystem.getPath("/bucketB/up"), false, S3ProgressListener.NONE);
+
+        // same size and ETag
+        verify(client, never()).putObject(any(PutObjectRequest.class));
+        verify(client, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+        assertEquals(0, summary.getObjects());
+    }
+
+    @Test
+    public void syncUploadsTheChangedFiles() throws IOException {
+        localTree();
+        provider.syncRecursive(localDir, fileSystem.getPath("/bucketB/up"), false, S3ProgressListener.NONE);
+        // same size, other content and other time
+        Files.write(localDir.resolve("file1"), "changed1".getBytes());
+        Files.setLastModifiedTime(localDir.resolve("file1"), FileTime.fromMillis(1000000000000L));
+
+        S3TransferSummary summary = provider.syncRecursive(localDir, fileSystem.getPath("/bucketB/up"), false, S3ProgressListener.NONE);
+
+        assertEquals("changed1", read("/bucketB/up/file1"));
+        assertEquals(1, summary.getObjects());
+        assertEquals(8, summary.getBytes());
+    }
+
+    @Test
+    public void secondSyncTrustsTheStoredTimeWithoutReadingTheFiles() throws IOException {
+        localTree();
+        provider.syncRecursive(localDir, fileSystem.getPath("/bucketB/up"), false, S3ProgressListener.NONE);
+        // same size and time, the content is not compared when the object has the time of the file
+        FileTime lastModified = Files.getLastModifiedTime(localDir.resolve("file1"));
+        Files.write(localDir.resolve("file1"), "changed1".getBytes());
+        Files.setLastModifiedTime(localDir.resolve("file1"), lastModified);
+
+        S3TransferSummary summary = provider.syncRecursive(localDir, fileSystem.getPath("/bucketB/up"), false, S3ProgressListener.NONE);
+
+        assertEquals("content1", read("/bucketB/up/file1"));
+        assertEquals(0, summary.getObjects());
+    }
+
+    @Test
+    public void syncUploadDoesNotTrustTheTimeOfTheListing() throws IOException {
+        // same size and the time S3 stored the object, but other content and no stored time
+        Files.write(localDir.resolve("file1"), "changed1".getBytes());
+        Files.setLastModifiedTime(localDir.resolve("file1"), Files.getLastModifiedTime(fileSystem.getPath("/bucketA/dir/file1")));
+
+        S3TransferSummary summary = provider.syncRecursive(localDir, fileSystem.getPath("/bucketA/dir"), false, S3ProgressListener.NONE);
+
+        assertEquals("changed1", read("/bucketA/dir/file1"));
+        assertEquals(1, summary.getObjects());
+    }
+
+    @Test
+    public void syncUploadDeletesExtras() throws IOException {
+        Files.write(localDir.resolve("file1"), "content1".getBytes());
+
+        provider.syncRecursive(localDir, fileSystem.getPath("/bucketA/dir"), true, S3ProgressListener.NONE);
+
+        assertEquals("content1", read("/bucketA/dir/file1"));
+        assertFalse(Files.exists(fileSystem.getPath("/bucketA/dir/a/file2")));
+        assertFalse(Files.exists(fileSystem.getPath("/bucketA/dir/a")));
+        assertFalse(Files.exists(fileSystem.getPath("/bucketA/dir/empty")));
+        assertTrue(Files.isDirectory(fileSystem.getPath("/bucketA/dir")));
+    }
+
+    @Test
+    public void syncComparesWithS3NotWithTheSnapshotInUse() throws IOException {
+        Files.write(localDir.resolve("file1"), "content1".getBytes());
+        fileSystem.useSnapshot(provider.newListingSnapshot(fileSystem.getPath("/bucketA/dir")));
+        client.bucket("bucketA").file("dir/new", "new".getBytes());
+
+        provider.syncRecursive(localDir, fileSystem.getPath("/bucketA/dir"), true, S3ProgressListener.NONE);
+
+        assertFalse(Files.exists(fileSystem.getPath("/bucketA/dir/new")));
+        assertEquals("content1", read("/bucketA/dir/file1"));
+    }
+
+    @Test
+    public void syncDownloadsTheObjectsCreatedAfterTheSnapshotInUse() throws IOException {
+        Path target = localDir.resolve("down");
+        fileSystem.useSnapshot(provider.newListingSnapshot(fileSystem.getPath("/bucketA/dir")));
+        client.bucket("bucketA").file("dir/new", "new".getBytes());
+
+        provider.syncRecursive(fileSystem.getPath("/bucketA/dir"), target, true, S3ProgressListener.NONE);
+
+        assertEquals("new", new String(Files.readAllBytes(target.resolve("new"))));
+    }
+
+    @Test
+    public void syncUploadKeepsExtrasByDefault() throws IOException {
+        Files.write(localDir.resolve("file1"), "content1".getBytes());
+        reset(client);
+
+        provider.syncRecursive(localDir, fileSystem.getPath("/bucketA/dir"), false, S3ProgressListener.NONE);
+
+        assertEquals("content2", read("/bucketA/dir/a/file2"));
+        verify(client, never()).deleteObjects(any(DeleteObjectsRequest.class));
+    }
+
+    @Test
+    public void syncDownloadsAndThenNothing() throws IOException {
+        Path target = localDir.resolve("down");
+
+        S3TransferSummary first = provider.syncRecursive(fileSystem.getPath("/bucketA/dir"), target, false, S3ProgressListener.NONE);
+        reset(client);
+        S3TransferSummary second = provider.syncRecursive(fileSystem.getPath("/bucketA/dir"), target, false, S3ProgressListener.NONE);
+
+        assertEquals("content1", new String(Files.readAllBytes(target.resolve("file1"))));
+        assertEquals("content2", new String(Files.readAllBytes(target.resolve("a").resolve("file2"))));
+        assertTrue(Files.isDirectory(target.resolve("empty")));
+        assertEquals(2, first.getObjects());
+        assertEquals(0, second.getObjects());
+        verify(client, never()).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void syncDownloadDeletesExtras() throws IOException {
+        Path target = localDir.resolve("down");
+        Files.createDirectories(target.resolve("other").resolve("deep"));
+        Files.write(target.resolve("other").resolve("deep").resolve("extra"), "extra".getBytes());
+        Files.write(target.resolve("extra"), "extra".getBytes());
+
+        provider.syncRecursive(fileSystem.getPath("/bucketA/dir"), target, true, S3ProgressListener.NONE);
+
+        assertEquals("content1", new String(Files.readAllBytes(target.resolve("file1"))));
+        assertTrue(Files.isDirectory(target.resolve("empty")));
+        assertFalse(Files.exists(target.resolve("extra")));
+        assertFalse(Files.exists(target.resolve("other")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void syncBetweenTwoDirectoriesIsNotSupported() throws IOException {
+        provider.syncRecursive(fileSystem.getPath("/bucketA/dir"), fileSystem.getPath("/bucketB/dir"), false, S3ProgressListener.NONE);
+    }
+
+    private void localTree() throws IOException {
+        Files.write(localDir.resolve("file1"), "content1".getBytes());
+        Files.createDirectories(localDir.resolve("a"));
+        Files.write(localDir.resolve("a").resolve("big"), "more than two parts".getBytes());
+        Files.createDirectory(localDir.resolve("empty"));
+    }
+
+    private String read(String path) throws IOException {
+        return new String(Files.readAllBytes(fileSystem.getPath(path)));
+    }
+}
@@ -0,0 +1,186 @@
+package com.upplication.s3fs.FileSystemProvider;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3Path;
+import com.upplication.s3fs.S3UnitTestBase;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class WalkFileTreeTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+    private S3FileSystemProvider provider;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/a").file("dir/a.txt", "dir/a/file1", "dir/a/deep/file2",
+                "dir/b/file3", "dir/c");
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, "1");
+        fileSystem = new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+        provider = (S3FileSystemProvider) fileSystem.provider();
+    }
+
+    @Test
+    public void visitsInKeyOrder() throws IOException {
+        Recorder recorder = new Recorder();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir"), recorder);
+
+        assertEquals(Arrays.asList("pre dir", "file dir/a.txt", "pre dir/a", "pre dir/a/deep", "file dir/a/deep/file2",
+                "post dir/a/deep", "file dir/a/file1", "post dir/a", "pre dir/b", "file dir/b/file3", "post dir/b",
+                "file dir/c", "post dir"), recorder.events);
+    }
+
+    @Test
+    public void visitsTheSameAsTheDefaultWalk() throws IOException {
+        Recorder flat = new Recorder();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/"), flat);
+        Recorder standard = new Recorder();
+        Files.walkFileTree(fileSystem.getPath("/bucketA/"), standard);
+
+        assertEquals(standard.events.size(), flat.events.size());
+        assertEquals(new HashSet<>(standard.events), new HashSet<>(flat.events));
+    }
+
+    @Test
+    public void attributesComeFromTheListing() throws IOException {
+        reset(client);
+        final List<String> directories = new ArrayList<>();
+        final List<Long> sizes = new ArrayList<>();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir"), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                assertTrue(attrs.isDirectory());
+                directories.add(dir.toString());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                assertTrue(attrs.isRegularFile());
+                sizes.add(attrs.size());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        assertEquals(4, directories.size());
+        assertEquals(5, sizes.size());
+        // the lookup of the start directory (HEAD and a listing of one key) and one listing for everything below it
+        verify(client, times(1)).getObjectMetadata(anyString(), anyString());
+        verify(client, times(2)).listObjects(any(ListObjectsRequest.class));
+    }
+
+    @Test
+    public void maxDepth() throws IOException {
+        Recorder recorder = new Recorder();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir"), 1, recorder);
+
+        assertEquals(Arrays.asList("pre dir", "file dir/a.txt", "file dir/a", "file dir/b", "file dir/c", "post dir"), recorder.events);
+    }
+
+    @Test
+    public void skipSubtree() throws IOException {
+        Recorder recorder = new Recorder();
+        recorder.results.put("pre dir/a", FileVisitResult.SKIP_SUBTREE);
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir"), recorder);
+
+        assertEquals(Arrays.asList("pre dir", "file dir/a.txt", "pre dir/a", "pre dir/b", "file dir/b/file3", "post dir/b",
+                "file dir/c", "post dir"), recorder.events);
+    }
+
+    @Test
+    public void skipSiblings() throws IOException {
+        Recorder recorder = new Recorder();
+        recorder.results.put("pre dir/a/deep", FileVisitResult.SKIP_SIBLINGS);
+        recorder.results.put("file dir/b/file3", FileVisitResult.SKIP_SIBLINGS);
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir"), recorder);
+
+        assertEquals(Arrays.asList("pre dir", "file dir/a.txt", "pre dir/a", "pre dir/a/deep", "post dir/a",
+                "pre dir/b", "file dir/b/file3", "post dir/b", "file dir/c", "post dir"), recorder.events);
+    }
+
+    @Test
+    public void terminate() throws IOException {
+        Recorder recorder = new Recorder();
+        recorder.results.put("file dir/a/deep/file2", FileVisitResult.TERMINATE);
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir"), recorder);
+
+        assertEquals(Arrays.asList("pre dir", "file dir/a.txt", "pre dir/a", "pre dir/a/deep", "file dir/a/deep/file2"), recorder.events);
+    }
+
+    @Test
+    public void startAtAFile() throws IOException {
+        Recorder recorder = new Recorder();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir/c"), recorder);
+
+        assertEquals(Arrays.asList("file dir/c"), recorder.events);
+    }
+
+    @Test
+    public void startAtAMissingPath() throws IOException {
+        Recorder recorder = new Recorder();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/missing"), recorder);
+
+        assertEquals(Arrays.asList("failed missing"), recorder.events);
+    }
+
+    /**
+     * record the events with the key of the paths
+     */
+    private static class Recorder extends SimpleFileVisitor<Path> {
+        private final List<String> events = new ArrayList<>();
+        private final Map<String, FileVisitResult> results = new HashMap<>();
+
+        private FileVisitResult record(String event, Path path) {
+            String key = ((S3Path) path).getKey();
+            String recorded = event + " " + (key.endsWith("/") ? key.substring(0, key.length() - 1) : key);
+            events.add(recorded);
+            return results.containsKey(recorded) ? results.get(recorded) : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            return record("pre", dir);
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            return record("file", file);
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            return record("failed", file);
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+            return record("post", dir);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.InFlightRequests;
+import com.upplication.s3fs.util.S3EndpointConstant;
+import com.upplication.s3fs.util.S3Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class InFlightRequestsTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentIdenticalRequestsRunOnce() throws Exception {
+        final InFlightRequests inFlight = new InFlightRequests();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final Callable<String> request = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "result";
+            }
+        };
+
+        Future<String> first = submit(inFlight, "HEAD", "key", request);
+        started.await();
+        Future<String> second = submit(inFlight, "HEAD", "key", request);
+        Future<String> third = submit(inFlight, "HEAD", "key", request);
+        waitUntilWaiting(inFlight, 2);
+        assertEquals(1, inFlight.size());
+        release.countDown();
+
+        assertEquals("result", first.get(5, TimeUnit.SECONDS));
+        assertEquals("result", second.get(5, TimeUnit.SECONDS));
+        assertEquals("result", third.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+        assertEquals(0, inFlight.size());
+    }
+
+    @Test
+    public void differentRequestsAreNotShared() throws Exception {
+        InFlightRequests inFlight = new InFlightRequests();
+        final AtomicInteger executions = new AtomicInteger();
+        Callable<Integer> request = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return executions.incrementAndGet();
+            }
+        };
+
+        assertEquals(1, (int) inFlight.execute("HEAD", "bucket", "key", null, request));
+        assertEquals(2, (int) inFlight.execute("HEAD", "bucket", "key", null, request));
+        assertEquals(3, (int) inFlight.execute("GET", "bucket", "key", "0-10", request));
+        assertEquals(4, (int) inFlight.execute("GET", "bucket", "key", "10-20", request));
+        assertEquals(0, inFlight.size());
+    }
+
+    @Test
+    public void failureIsSharedWithTheWaitingCallers() throws Exception {
+        final InFlightRequests inFlight = new InFlightRequests();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> request = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                release.await();
+                throw new NoSuchFileException("key");
+            }
+        };
+
+        Future<String> first = submit(inFlight, "HEAD", "key", request);
+        started.await();
+        Future<String> second = submit(inFlight, "HEAD", "key", request);
+        waitUntilWaiting(inFlight, 1);
+        release.countDown();
+
+        for (Future<String> future : new Future[]{first, second}) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("expected NoSuchFileException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof NoSuchFileException);
+            }
+        }
+        assertEquals(0, inFlight.size());
+    }
+
+    @Test
+    public void concurrentMetadataLookupsShareTheRequests() throws Exception {
+        client.bucket("bucketA").file("config");
+        final S3FileSystem fileSystem = (S3FileSystem) FileSystems.newFileSystem(S3EndpointConstant.S3_GLOBAL_URI_TEST, null);
+        final S3Path config = fileSystem.getPath("/bucketA/config");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        reset(client);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                started.countDown();
+                release.await();
+                return invocation.callRealMethod();
+            }
+        }).when(client).getObjectMetadata("bucketA", "config");
+
+        Callable<S3ObjectSummary> lookup = new Callable<S3ObjectSummary>() {
+            @Override
+            public S3ObjectSummary call() throws Exception {
+                return new S3Utils().getS3ObjectSummary(config);
+            }
+        };
+        Future<S3ObjectSummary> first = executor.submit(lookup);
+        started.await();
+        Future<S3ObjectSummary> second = executor.submit(lookup);
+        waitUntilWaiting(fileSystem.getInFlightRequests(), 1);
+        release.countDown();
+
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        verify(client, times(1)).getObjectMetadata("bucketA", "config");
+        verify(client, times(1)).getObjectAcl("bucketA", "config");
+    }
+
+    @Test
+    public void rangedReadKeepsItsResult() throws IOException {
+        client.bucket("bucketA").file("file", "0123456789".getBytes());
+        S3FileSystem fileSystem = (S3FileSystem) FileSystems.newFileSystem(S3EndpointConstant.S3_GLOBAL_URI_TEST, null);
+        S3Path file = fileSystem.getPath("/bucketA/file");
+
+        try (SeekableByteChannel channel = fileSystem.provider().newByteChannel(file, EnumSet.of(StandardOpenOption.READ, StandardOpenOption.SPARSE))) {
+            assertTrue(channel instanceof S3RangeBasedSeekableByteChannel);
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            channel.position(2);
+            assertEquals(0, channel.read(buffer));
+            assertArrayEquals("2345".getBytes(), buffer.array());
+            assertEquals(6, channel.position());
+
+            buffer = ByteBuffer.allocate(8);
+            assertEquals(-1, channel.read(buffer));
+            assertEquals("6789", new String(buffer.array(), 0, 4));
+            assertEquals(10, channel.position());
+        }
+        verify(client, times(2)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void concurrentRangedReadsGetTheirOwnBytes() throws Exception {
+        client.bucket("bucketA").file("file", "0123456789".getBytes());
+        final S3FileSystem fileSystem = (S3FileSystem) FileSystems.newFileSystem(S3EndpointConstant.S3_GLOBAL_URI_TEST, null);
+        final S3Path file = fileSystem.getPath("/bucketA/file");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        reset(client);
+        try {
+            doAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) throws Throwable {
+                    started.countDown();
+                    release.await();
+                    return invocation.callRealMethod();
+                }
+            }).when(client).getObject(any(GetObjectRequest.class));
+
+            Callable<ByteBuffer> read = new Callable<ByteBuffer>() {
+                @Override
+                public ByteBuffer call() throws Exception {
+                    try (SeekableByteChannel channel = fileSystem.provider().newByteChannel(file, EnumSet.of(StandardOpenOption.READ, StandardOpenOption.SPARSE))) {
+                        ByteBuffer buffer = ByteBuffer.allocate(4);
+                        channel.position(2);
+                        channel.read(buffer);
+                        return buffer;
+                    }
+                }
+            };
+            Future<ByteBuffer> first = executor.submit(read);
+            started.await();
+            Future<ByteBuffer> second = executor.submit(read);
+            waitUntilWaiting(fileSystem.getInFlightRequests(), 1);
+            release.countDown();
+
+            ByteBuffer firstBuffer = first.get(5, TimeUnit.SECONDS);
+            ByteBuffer secondBuffer = second.get(5, TimeUnit.SECONDS);
+            assertArrayEquals("2345".getBytes(), firstBuffer.array());
+            assertArrayEquals("2345".getBytes(), secondBuffer.array());
+            firstBuffer.array()[0] = 'x';
+            assertArrayEquals("2345".getBytes(), secondBuffer.array());
+            verify(client, times(1)).getObject(any(GetObjectRequest.class));
+        } finally {
+            reset(client);
+        }
+    }
+
+    @Test
+    public void rangedReadIntoADirectBuffer() throws IOException {
+        client.bucket("bucketA").file("file", "0123456789".getBytes());
+        S3FileSystem fileSystem = (S3FileSystem) FileSystems.newFileSystem(S3EndpointConstant.S3_GLOBAL_URI_TEST, null);
+        S3Path file = fileSystem.getPath("/bucketA/file");
+
+        try (SeekableByteChannel channel = fileSystem.provider().newByteChannel(file, EnumSet.of(StandardOpenOption.READ, StandardOpenOption.SPARSE))) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+            channel.position(2);
+            assertEquals(0, channel.read(buffer));
+            byte[] bytes = new byte[4];
+            buffer.get(bytes);
+            assertArrayEquals("2345".getBytes(), bytes);
+            assertEquals(6, channel.position());
+        }
+    }
+
+    private <T> Future<T> submit(final InFlightRequests inFlight, final String operation, final String key, final Callable<T> request) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return inFlight.execute(operation, "bucket", key, null, request);
+            }
+        });
+    }
+
+    /**
+     * wait until the expected number of threads of the executor are blocked waiting for the shared result
+     */
+    private void waitUntilWaiting(InFlightRequests inFlight, int waiting) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (countWaiting() < waiting) {
+            assertTrue("threads not waiting for the request in flight", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        assertTrue(inFlight.size() > 0);
+    }
+
+    private int countWaiting() {
+        int waiting = 0;
+        for (StackTraceElement[] stack : Thread.getAllStackTraces().values()) {
+            for (StackTraceElement element : stack) {
+                if (element.getClassName().equals("java.util.concurrent.FutureTask") && element.getMethodName().equals("awaitDone")) {
+                    waiting++;
+                    break;
+                }
+            }
+        }
+        return waiting;
+    }
+}
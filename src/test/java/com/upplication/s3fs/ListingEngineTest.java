@@ -0,0 +1,168 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.ListingEngine;
+import com.upplication.s3fs.util.MockBucket;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ListingEngineTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+    }
+
+    @Test
+    public void v2ListsLikeV1() throws IOException {
+        client.bucket("bucketA").dir("dir", "dir/sub").file("dir/file1", "dir/sub/file2", "dir/virtual/file3", "dir/file4");
+
+        List<String> v1 = names(new S3Iterator(fileSystem(1).getPath("/bucketA/dir")));
+        List<String> v2 = names(new S3Iterator(fileSystem(2).getPath("/bucketA/dir")));
+
+        assertEquals(Arrays.asList("dir/sub", "dir/virtual", "dir/file1", "dir/file4"), v2);
+        assertEquals(v1, v2);
+    }
+
+    @Test
+    public void v2DoesntFetchTheOwner() throws IOException {
+        client.bucket("bucketA").file("file1");
+        reset(client);
+
+        names(new S3Iterator(fileSystem(2).getPath("/bucketA/")));
+
+        verify(client, never()).listObjects(any(ListObjectsRequest.class));
+        verify(client).listObjectsV2(argThat(new ArgumentMatcher<ListObjectsV2Request>() {
+            @Override
+            public boolean matches(Object argument) {
+                return !((ListObjectsV2Request) argument).isFetchOwner();
+            }
+        }));
+    }
+
+    @Test
+    public void v2FollowsTheContinuationTokens() throws IOException {
+        createFiles(client.bucket("bucketA"), 2100);
+        reset(client);
+
+        List<String> names = names(new S3Iterator(fileSystem(2).getPath("/bucketA/")));
+
+        assertEquals(2100, names.size());
+        assertEquals("file-0000", names.get(0));
+        assertEquals("file-2099", names.get(2099));
+        verify(client, times(3)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void resumeAfterAFinishedPage() throws IOException {
+        createFiles(client.bucket("bucketA"), 1050);
+        for (int version = 1; version <= 2; version++) {
+            S3FileSystem fileSystem = fileSystem(version);
+            S3Iterator iterator = new S3Iterator(fileSystem.getPath("/bucketA/"));
+            assertNull(iterator.getResumeKey());
+            for (int i = 0; i < 1000; i++) {
+                iterator.next();
+            }
+            String resumeKey = iterator.getResumeKey();
+            assertEquals("file-0999", resumeKey);
+
+            List<String> names = names(new S3Iterator(fileSystem.getPath("/bucketA/"), false, resumeKey));
+            assertEquals(50, names.size());
+            assertEquals("file-1000", names.get(0));
+        }
+    }
+
+    @Test
+    public void resumeInTheMiddleOfAPageRepeatsThePage() throws IOException {
+        createFiles(client.bucket("bucketA"), 1050);
+        S3FileSystem fileSystem = fileSystem(2);
+        S3Iterator iterator = new S3Iterator(fileSystem.getPath("/bucketA/"));
+        for (int i = 0; i < 1010; i++) {
+            iterator.next();
+        }
+
+        List<String> names = names(new S3Iterator(fileSystem.getPath("/bucketA/"), false, iterator.getResumeKey()));
+        assertEquals(50, names.size());
+    }
+
+    @Test
+    public void resumeDoesntRepeatTheDirectories() throws IOException {
+        client.bucket("bucketA").dir("dir").file("dir/a/file1", "dir/a/file2", "dir/b", "dir/c/file3");
+        S3FileSystem fileSystem = fileSystem(2);
+
+        assertEquals(Arrays.asList("dir/c", "dir/b"), names(new S3Iterator(fileSystem.getPath("/bucketA/dir"), false, "dir/a/file1")));
+        assertEquals(Arrays.asList("dir/c"), names(new S3Iterator(fileSystem.getPath("/bucketA/dir"), false, "dir/b")));
+        assertEquals(Arrays.asList("dir/c", "dir/c/file3"), names(new S3Iterator(fileSystem.getPath("/bucketA/dir"), true, "dir/b")));
+    }
+
+    @Test
+    public void resumeADirectoryStream() throws IOException {
+        client.bucket("bucketA").dir("dir").file("dir/file1", "dir/file2", "dir/file3");
+        S3FileSystem fileSystem = fileSystem(1);
+
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = fileSystem.provider().newDirectoryStream(fileSystem.getPath("/bucketA/dir"), "dir/file1")) {
+            for (Path path : stream) {
+                names.add(path.getFileName().toString());
+            }
+        }
+        assertEquals(Arrays.asList("file2", "file3"), names);
+    }
+
+    @Test
+    public void emptyPageAfterTheLastOne() throws IOException {
+        client.bucket("bucketA").file("file1");
+        ListObjectsRequest request = new ListObjectsRequest("bucketA", "", null, "/", null);
+
+        ObjectListing page = ListingEngine.V2.list(client, request, null);
+        assertFalse(page.isTruncated());
+        ObjectListing next = ListingEngine.V2.next(client, page);
+        assertTrue(next.getObjectSummaries().isEmpty());
+        assertFalse(next.isTruncated());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedVersion() {
+        fileSystem(3);
+    }
+
+    private S3FileSystem fileSystem(int version) {
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.LISTING_VERSION, String.valueOf(version));
+        return new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+    }
+
+    private void createFiles(MockBucket mocket, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            mocket.file(String.format("file-%04d", i));
+        }
+    }
+
+    private static List<String> names(Iterator<Path> iterator) {
+        List<String> names = new ArrayList<>();
+        while (iterator.hasNext()) {
+            names.add(((S3Path) iterator.next()).getKey());
+        }
+        return names;
+    }
+}
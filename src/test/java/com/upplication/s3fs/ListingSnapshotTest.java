@@ -0,0 +1,280 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.ListingEngine;
+import com.upplication.s3fs.util.ListingSnapshot;
+import com.upplication.s3fs.util.MockBucket;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ListingSnapshotTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+    private S3FileSystemProvider provider;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir", "dir/a").file("dir/file1", new byte[10]).file("dir/a/file2", new byte[20])
+                .file("dir/a/b/file3", new byte[30]).file("dir/c/file4", new byte[40]).file("other/file5");
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, "2");
+        fileSystem = new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+        provider = (S3FileSystemProvider) fileSystem.provider();
+    }
+
+    @Test
+    public void savedAndLoaded() throws IOException {
+        ListingSnapshot snapshot = provider.newListingSnapshot(fileSystem.getPath("/bucketA/dir"));
+        Path file = Files.createTempFile("snapshot", ".bin");
+        try {
+            snapshot.save(file);
+            ListingSnapshot loaded = ListingSnapshot.load(file);
+
+            assertEquals("bucketA", loaded.getBucket());
+            assertEquals("dir/", loaded.getPrefix());
+            assertEquals(6, loaded.size());
+            Iterator<S3ObjectSummary> expected = snapshot.iterator("dir/");
+            Iterator<S3ObjectSummary> actual = loaded.iterator("dir/");
+            while (expected.hasNext()) {
+                S3ObjectSummary summary = expected.next();
+                S3ObjectSummary other = actual.next();
+                assertEquals(summary.getKey(), other.getKey());
+                assertEquals(summary.getSize(), other.getSize());
+                assertEquals(summary.getETag(), other.getETag());
+                assertEquals(summary.getLastModified(), other.getLastModified());
+            }
+            assertFalse(actual.hasNext());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void loadOfAnotherFile() throws IOException {
+        Path file = Files.createTempFile("snapshot", ".bin");
+        try {
+            Files.write(file, "not a snapshot".getBytes());
+            ListingSnapshot.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void directoryStreamsAndWalksAreServedFromTheSnapshot() throws IOException {
+        Path dir = fileSystem.getPath("/bucketA/dir");
+        List<String> expected = names(dir);
+        fileSystem.useSnapshot(provider.newListingSnapshot(dir));
+        // not in the snapshot
+        client.bucket("bucketA").file("dir/new");
+        reset(client);
+
+        assertEquals(expected, names(dir));
+        final List<String> walked = new ArrayList<>();
+        provider.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                walked.add(file.getFileName().toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        assertEquals(Arrays.asList("file3", "file2", "file4", "file1"), walked);
+        verify(client, never()).listNextBatchOfObjects(any(ObjectListing.class));
+        // out of the snapshot
+        assertEquals(Collections.singletonList("file5"), names(fileSystem.getPath("/bucketA/other")));
+    }
+
+    @Test
+    public void lookupsOfVirtualDirectoriesRequestS3() throws IOException {
+        fileSystem.useSnapshot(provider.newListingSnapshot(fileSystem.getPath("/bucketA/dir")));
+        // a directory without marker, not in the snapshot
+        client.bucket("bucketA").file("dir/new/file6");
+
+        assertTrue(Files.isDirectory(fileSystem.getPath("/bucketA/dir/new")));
+    }
+
+    @Test
+    public void theWritesOfTheFileSystemAreListed() throws IOException {
+        Path dir = fileSystem.getPath("/bucketA/dir");
+        fileSystem.useSnapshot(provider.newListingSnapshot(dir));
+
+        Files.write(fileSystem.getPath("/bucketA/dir/c/written"), "written".getBytes());
+        Files.delete(fileSystem.getPath("/bucketA/dir/file1"));
+
+        List<String> written = names(fileSystem.getPath("/bucketA/dir/c"));
+        assertTrue(written.contains("written"));
+        assertTrue(written.contains("file4"));
+        assertFalse(names(dir).contains("file1"));
+        // the rest is still served from the snapshot
+        client.bucket("bucketA").file("dir/a/new");
+        assertFalse(names(fileSystem.getPath("/bucketA/dir/a")).contains("new"));
+    }
+
+    @Test
+    public void aRecursiveOperationOnlyListsItsDirectoryFromS3() throws IOException {
+        Path dir = fileSystem.getPath("/bucketA/dir");
+        fileSystem.useSnapshot(provider.newListingSnapshot(dir));
+
+        provider.deleteRecursive(fileSystem.getPath("/bucketA/dir/a/b"));
+
+        assertFalse(names(fileSystem.getPath("/bucketA/dir/a")).contains("b"));
+        // the rest is still served from the snapshot
+        client.bucket("bucketA").file("dir/c/new");
+        assertFalse(names(fileSystem.getPath("/bucketA/dir/c")).contains("new"));
+        assertNotSame(fileSystem.getS3ListingEngine(), fileSystem.getListingEngine());
+    }
+
+    @Test
+    public void aRecursiveOperationOfTheBucketListsEverythingFromS3() throws IOException {
+        Path dir = fileSystem.getPath("/bucketA/dir");
+        fileSystem.useSnapshot(provider.newListingSnapshot(dir));
+        client.bucket("bucketA").file("dir/c/new");
+
+        provider.deleteRecursive(fileSystem.getPath("/bucketA/other"));
+        assertFalse(names(fileSystem.getPath("/bucketA/dir/c")).contains("new"));
+        provider.deleteRecursive(fileSystem.getPath("/bucketA/"));
+
+        assertTrue(names(fileSystem.getPath("/bucketA")).isEmpty());
+    }
+
+    @Test
+    public void aSnapshotCanBeDetached() throws IOException {
+        Path dir = fileSystem.getPath("/bucketA/dir");
+        fileSystem.useSnapshot(provider.newListingSnapshot(dir));
+        client.bucket("bucketA").file("dir/new");
+
+        fileSystem.useSnapshot(null);
+
+        assertSame(fileSystem.getS3ListingEngine(), fileSystem.getListingEngine());
+        assertTrue(names(dir).contains("new"));
+    }
+
+    @Test
+    public void aSnapshotReplacesThePreviousOne() throws IOException {
+        Path dir = fileSystem.getPath("/bucketA/dir");
+        fileSystem.useSnapshot(provider.newListingSnapshot(dir));
+        client.bucket("bucketA").file("dir/new");
+
+        fileSystem.useSnapshot(provider.newListingSnapshot(fileSystem.getPath("/bucketA/other")));
+
+        assertTrue(names(dir).contains("new"));
+    }
+
+    @Test
+    public void pagesAreLikeTheOnesOfS3() throws IOException {
+        MockBucket bucket = client.bucket("bucketB");
+        for (int i = 0; i < 1500; i++) {
+            bucket.file(String.format("dir/file-%04d", i));
+        }
+        bucket.file("dir/sub/file1", "dir/sub/file2", "dir/zz");
+        ListingSnapshot snapshot = provider.newListingSnapshot(fileSystem.getPath("/bucketB/dir"));
+        ListingEngine engine = snapshot.asListingEngine(ListingEngine.V1);
+        reset(client);
+
+        ObjectListing page = engine.list(client, new ListObjectsRequest("bucketB", "dir/", null, null, null), null);
+        assertEquals(1000, page.getObjectSummaries().size());
+        assertTrue(page.isTruncated());
+        page = engine.next(client, page);
+        assertEquals(503, page.getObjectSummaries().size());
+        assertFalse(page.isTruncated());
+
+        ObjectListing delimited = engine.list(client, new ListObjectsRequest("bucketB", "dir/", null, "/", null), "dir/file-1499");
+        assertEquals(Collections.singletonList("dir/sub/"), delimited.getCommonPrefixes());
+        assertEquals(1, delimited.getObjectSummaries().size());
+        assertEquals("dir/zz", delimited.getObjectSummaries().get(0).getKey());
+        ObjectListing afterPrefix = engine.list(client, new ListObjectsRequest("bucketB", "dir/", null, "/", null), "dir/sub/file1");
+        assertEquals(Collections.emptyList(), afterPrefix.getCommonPrefixes());
+        assertEquals(1, afterPrefix.getObjectSummaries().size());
+        verifyZeroInteractions(client);
+    }
+
+    @Test
+    public void refreshListsOnlyThePrefixes() throws IOException {
+        ListingSnapshot snapshot = provider.newListingSnapshot(fileSystem.getPath("/bucketA/dir"));
+        client.bucket("bucketA").file("dir/a/new", "dir/c/new");
+
+        ListingSnapshot refreshed = snapshot.refresh(client, ListingEngine.V1, Arrays.asList("dir/a/", "dir/a/b/"));
+
+        assertEquals(Arrays.asList("dir/", "dir/a/", "dir/a/b/file3", "dir/a/file2", "dir/a/new", "dir/c/file4", "dir/file1"),
+                keys(refreshed));
+        assertEquals(6, snapshot.size());
+    }
+
+    @Test
+    public void applyTheChangesOfTheCaller() throws IOException {
+        ListingSnapshot snapshot = provider.newListingSnapshot(fileSystem.getPath("/bucketA/dir"));
+        S3ObjectSummary changed = new S3ObjectSummary();
+        changed.setKey("dir/file1");
+        changed.setSize(100);
+        S3ObjectSummary created = new S3ObjectSummary();
+        created.setKey("dir/b/file6");
+        created.setSize(60);
+
+        ListingSnapshot applied = snapshot.apply(Arrays.asList(changed, created), Collections.singletonList("dir/c/file4"));
+
+        assertEquals(Arrays.asList("dir/", "dir/a/", "dir/a/b/file3", "dir/a/file2", "dir/b/file6", "dir/file1"), keys(applied));
+        Iterator<S3ObjectSummary> file1 = applied.iterator("dir/file1");
+        assertEquals(100, file1.next().getSize());
+    }
+
+    @Test
+    public void changedDirectoriesByTheirMarker() throws IOException {
+        ListingSnapshot snapshot = provider.newListingSnapshot(fileSystem.getPath("/bucketA/"));
+        assertEquals(Collections.emptyList(), snapshot.getChangedDirectories(client));
+
+        ObjectMetadata touched = new ObjectMetadata();
+        touched.setLastModified(new Date(0));
+        doReturn(touched).when(client).getObjectMetadata("bucketA", "dir/");
+        try {
+            assertEquals(Collections.singletonList("dir/"), snapshot.getChangedDirectories(client));
+        } finally {
+            // the client is shared by all the tests
+            reset(client);
+        }
+    }
+
+    private List<String> names(Path dir) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                names.add(path.getFileName().toString());
+            }
+        }
+        return names;
+    }
+
+    private static List<String> keys(ListingSnapshot snapshot) {
+        List<String> keys = new ArrayList<>();
+        Iterator<S3ObjectSummary> iterator = snapshot.iterator(snapshot.getPrefix());
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().getKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,175 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.ListingEngine;
+import com.upplication.s3fs.util.MockBucket;
+import com.upplication.s3fs.util.ParallelListing;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ParallelListingTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        MockBucket bucket = client.bucket("bucketA");
+        bucket.dir("dir", "dir/a", "dir/b.d").file("dir/0file", "dir/a.txt", "dir/a/file1", "dir/a/deep/file2",
+                "dir/b.d/file3", "dir/c-file", "dir/virtual/x/y/file4", "dir/z", "other/file5");
+    }
+
+    @Test
+    public void sortedListsEverythingInKeyOrder() throws IOException {
+        for (int version = 1; version <= 2; version++) {
+            S3FileSystem fileSystem = fileSystem(version, 4);
+            List<String> expected = serialKeys("dir/");
+
+            try (ParallelListing listing = provider(fileSystem).listRecursive(fileSystem.getPath("/bucketA/dir"), true)) {
+                assertTrue(listing.getPartitionCount() > 1);
+                assertEquals(expected, keys(listing));
+            }
+        }
+    }
+
+    @Test
+    public void unsortedListsTheSameObjects() throws IOException {
+        S3FileSystem fileSystem = fileSystem(2, 3);
+        List<String> expected = serialKeys("");
+
+        try (ParallelListing listing = provider(fileSystem).listRecursive(fileSystem.getPath("/bucketA/"), false)) {
+            List<String> keys = keys(listing);
+            assertEquals(expected.size(), keys.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(keys));
+        }
+    }
+
+    @Test
+    public void subPrefixesAreListedOnTheirOwn() throws IOException {
+        S3FileSystem fileSystem = fileSystem(1, 2);
+        reset(client);
+
+        try (ParallelListing listing = provider(fileSystem).listRecursive(fileSystem.getPath("/bucketA/dir"), true)) {
+            keys(listing);
+        }
+
+        // the delimited listing of dir/ finds 3 sub prefixes, more than the parallelism: they are listed without delimiter
+        verify(client, times(1)).listObjects(argThat(delimited(true)));
+        verify(client, times(3)).listObjects(argThat(delimited(false)));
+    }
+
+    @Test
+    public void prefixWithManyChildrenIsListedAsAWhole() throws IOException {
+        MockBucket bucket = client.bucket("bucketB");
+        for (int i = 0; i < 1100; i++) {
+            bucket.file(String.format("file-%04d", i));
+        }
+        bucket.file("sub/file");
+        S3FileSystem fileSystem = fileSystem(2, 4);
+
+        try (ParallelListing listing = provider(fileSystem).listRecursive(fileSystem.getPath("/bucketB/"), true)) {
+            assertEquals(1, listing.getPartitionCount());
+            List<String> keys = keys(listing);
+            assertEquals(1101, keys.size());
+            assertEquals("file-0000", keys.get(0));
+            assertEquals("sub/file", keys.get(1100));
+        }
+    }
+
+    @Test
+    public void failureOfASubPrefixIsThrown() throws IOException {
+        S3FileSystem fileSystem = fileSystem(1, 2);
+        doThrow(new AmazonClientException("boom")).when(client).listObjects(argThat(new ArgumentMatcher<ListObjectsRequest>() {
+            @Override
+            public boolean matches(Object argument) {
+                ListObjectsRequest request = (ListObjectsRequest) argument;
+                return request.getDelimiter() == null && "dir/b.d/".equals(request.getPrefix());
+            }
+        }));
+
+        try (ParallelListing listing = provider(fileSystem).listRecursive(fileSystem.getPath("/bucketA/dir"), true)) {
+            try {
+                keys(listing);
+                fail("expected AmazonClientException");
+            } catch (AmazonClientException e) {
+                assertEquals("boom", e.getMessage());
+            }
+            // another consumer of the listing gets the failure too instead of waiting forever
+            try {
+                listing.hasNext();
+                fail("expected AmazonClientException");
+            } catch (AmazonClientException e) {
+                assertEquals("boom", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void emptyDirectory() throws IOException {
+        S3FileSystem fileSystem = fileSystem(1, 4);
+
+        try (ParallelListing listing = provider(fileSystem).listRecursive(fileSystem.getPath("/bucketA/missing"), false)) {
+            assertFalse(listing.hasNext());
+        }
+    }
+
+    private S3FileSystem fileSystem(int version, int parallelism) {
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.LISTING_VERSION, String.valueOf(version));
+        props.setProperty(S3FileSystemProvider.MAX_CONCURRENT_REQUESTS, String.valueOf(parallelism));
+        return new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+    }
+
+    private static S3FileSystemProvider provider(S3FileSystem fileSystem) {
+        return (S3FileSystemProvider) fileSystem.provider();
+    }
+
+    private List<String> serialKeys(String prefix) {
+        List<String> keys = new ArrayList<>();
+        ObjectListing page = ListingEngine.V1.list(client, new ListObjectsRequest("bucketA", prefix, null, null, null), null);
+        while (true) {
+            for (S3ObjectSummary summary : page.getObjectSummaries()) {
+                keys.add(summary.getKey());
+            }
+            if (!page.isTruncated())
+                break;
+            page = ListingEngine.V1.next(client, page);
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static List<String> keys(ParallelListing listing) {
+        List<String> keys = new ArrayList<>();
+        while (listing.hasNext()) {
+            keys.add(listing.next().getKey());
+        }
+        return keys;
+    }
+
+    private static ArgumentMatcher<ListObjectsRequest> delimited(final boolean delimited) {
+        return new ArgumentMatcher<ListObjectsRequest>() {
+            @Override
+            public boolean matches(Object argument) {
+                return (((ListObjectsRequest) argument).getDelimiter() != null) == delimited;
+            }
+        };
+    }
+}
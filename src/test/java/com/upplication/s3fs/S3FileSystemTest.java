@@ -9,6 +9,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.ClosedFileSystemException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
@@ -118,11 +119,16 @@ public class S3FileSystemTest extends S3UnitTestBase {
         assertEquals("/", S3Path.PATH_SEPARATOR);
     }
 
-    @Test(expected = UnsupportedOperationException.class)
-    public void getPathMatcherThrowException() {
+    @Test(expected = IllegalArgumentException.class)
+    public void getPathMatcherWithoutSyntaxThrowException() {
         fs.getPathMatcher("");
     }
 
+    @Test(expected = UnsupportedOperationException.class)
+    public void getPathMatcherUnknownSyntaxThrowException() {
+        fs.getPathMatcher("other:*.txt");
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void getUserPrincipalLookupServiceThrowException() {
         fs.getUserPrincipalLookupService();
@@ -193,6 +199,15 @@ public class S3FileSystemTest extends S3UnitTestBase {
         assertTrue(!fs.isOpen());
     }
 
+    @Test(expected = ClosedFileSystemException.class)
+    public void noExecutorOnceClosed() throws IOException {
+        S3FileSystem s3fs = (S3FileSystem) fs;
+        s3fs.getExecutor();
+        fs.close();
+
+        s3fs.getExecutor();
+    }
+
     private static void assertNotEquals(Object a, Object b) {
         assertTrue(a + " are not equal to: " + b, !a.equals(b));
     }
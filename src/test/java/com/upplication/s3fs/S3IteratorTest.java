@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
@@ -22,6 +23,7 @@ import java.util.Properties;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.upplication.s3fs.util.AmazonS3ClientMock;
 import com.upplication.s3fs.util.AmazonS3MockFactory;
@@ -215,6 +217,124 @@ public class S3IteratorTest extends S3UnitTestBase {
         verify(client, times(1)).listNextBatchOfObjects(any(ObjectListing.class));
     }
 
+    @Test
+    public void nextPageIsRequestedWhileTheCurrentOneIsIterated() throws IOException {
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        createFiles(client.bucket("bucketD"), 1050);
+        S3FileSystem s3FileSystem = (S3FileSystem) FileSystems.getFileSystem(endpoint);
+
+        S3Iterator iterator = new S3Iterator(s3FileSystem.getPath("/bucketD"));
+        iterator.next();
+
+        verify(client, timeout(5000).times(1)).listNextBatchOfObjects(any(ObjectListing.class));
+        int count = 1;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(1050, count);
+        verify(client, times(1)).listNextBatchOfObjects(any(ObjectListing.class));
+    }
+
+    @Test
+    public void prefetchDisabled() throws IOException {
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        createFiles(client.bucket("bucketD"), 1050);
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.LISTING_PREFETCH, "false");
+        S3FileSystem s3FileSystem = new S3FileSystem(null, null, client, "endpoint", props);
+        assertFalse(s3FileSystem.isListingPrefetch());
+
+        S3Iterator iterator = new S3Iterator(s3FileSystem.getPath("/bucketD"));
+        for (int i = 0; i < 1000; i++) {
+            iterator.next();
+        }
+        verify(client, never()).listNextBatchOfObjects(any(ObjectListing.class));
+        assertTrue(iterator.hasNext());
+        iterator.next();
+        verify(client, times(1)).listNextBatchOfObjects(any(ObjectListing.class));
+    }
+
+    @Test
+    public void prefetchFailureIsThrownByNext() throws IOException {
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        createFiles(client.bucket("bucketD"), 1050);
+        doThrow(new AmazonClientException("listing failed")).when(client).listNextBatchOfObjects(any(ObjectListing.class));
+        S3FileSystem s3FileSystem = (S3FileSystem) FileSystems.getFileSystem(endpoint);
+
+        S3Iterator iterator = new S3Iterator(s3FileSystem.getPath("/bucketD"));
+        for (int i = 0; i < 1000; i++) {
+            iterator.next();
+        }
+        try {
+            iterator.next();
+            fail("expected AmazonClientException");
+        } catch (AmazonClientException e) {
+            assertEquals("listing failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void incrementalVirtualDirsOfManyFilesAreReturnedOnce() throws IOException {
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        MockBucket mocket = client.bucket("bucketA");
+        for (int i = 0; i < 900; i++) {
+            mocket.file(String.format("dir/sub-%d/deep/file-%03d", i % 3, i));
+        }
+
+        S3FileSystem s3FileSystem = (S3FileSystem) FileSystems.getFileSystem(endpoint);
+        S3Iterator iterator = new S3Iterator(s3FileSystem.getPath("/bucketA/dir"), true);
+        List<String> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            keys.add(((S3Path) iterator.next()).getKey());
+        }
+
+        assertEquals(907, keys.size());
+        assertEquals(Arrays.asList("dir", "dir/sub-0", "dir/sub-0/deep", "dir/sub-0/deep/file-000"), keys.subList(0, 4));
+        assertEquals("dir/sub-1", keys.get(303));
+        assertEquals("dir/sub-1/deep", keys.get(304));
+    }
+
+    @Test
+    public void incrementalVirtualDirsRememberOnlyTheCurrentAncestors() throws IOException {
+        AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
+        MockBucket mocket = client.bucket("bucketA");
+        for (int i = 0; i < 1500; i++) {
+            mocket.file(String.format("dir/sub-%04d/deep/file-%d", i / 2, i % 2));
+        }
+        mocket.file("dir/sub-0000/other");
+
+        S3FileSystem s3FileSystem = (S3FileSystem) FileSystems.getFileSystem(endpoint);
+        S3Iterator iterator = new S3Iterator(s3FileSystem.getPath("/bucketA/dir/"), true);
+        List<String> keys = new ArrayList<>();
+        int maxRemembered = 0;
+        while (iterator.hasNext()) {
+            keys.add(((S3Path) iterator.next()).getKey());
+            maxRemembered = Math.max(maxRemembered, iterator.getRememberedDirectories());
+        }
+
+        // 750 sub directories with a deep directory and two files each, and the other file
+        assertEquals(750 * 4 + 1, keys.size());
+        assertEquals(Arrays.asList("dir/sub-0000", "dir/sub-0000/deep", "dir/sub-0000/deep/file-0", "dir/sub-0000/deep/file-1",
+                "dir/sub-0000/other", "dir/sub-0001"), keys.subList(0, 6));
+        assertTrue("remembered " + maxRemembered, maxRemembered <= 3);
+    }
+
+    @Test
+    public void pathsOfTheListingAreEqualToTheSplitOnes() throws IOException {
+        S3FileSystem s3FileSystem = (S3FileSystem) FileSystems.getFileSystem(endpoint);
+        S3FileStore fileStore = s3FileSystem.getPath("/bucketA").getFileStore();
+
+        for (String key : new String[]{"file", "dir/", "dir/sub/file", "dir//file", "", "/file", "dir/sub/"}) {
+            S3Path expected = new S3Path(s3FileSystem, "/bucketA", s3FileSystem.key2Parts(key));
+            S3Path path = S3Path.forKey(fileStore, key);
+            assertEquals(key, expected, path);
+            assertEquals(key, expected.hashCode(), path.hashCode());
+            assertEquals(key, expected.getKey(), path.getKey());
+            assertEquals(key, expected.toString(), path.toString());
+        }
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void remove() throws IOException {
         AmazonS3ClientMock client = AmazonS3MockFactory.getAmazonClientMock();
@@ -226,6 +346,12 @@ public class S3IteratorTest extends S3UnitTestBase {
         iterator.remove();
     }
 
+    private void createFiles(MockBucket mocket, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            mocket.file(String.format("file-%04d", i));
+        }
+    }
+
     private void assertIterator(Iterator<Path> iterator, final String... files) {
         assertNotNull(iterator);
         assertTrue(iterator.hasNext());
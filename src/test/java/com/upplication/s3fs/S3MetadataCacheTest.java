@@ -0,0 +1,182 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.collect.ImmutableMap;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.S3EndpointConstant;
+import com.upplication.s3fs.util.S3MetadataCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class S3MetadataCacheTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").dir("dir").file("dir/file", "content".getBytes()).file("dir2/child", "x".getBytes());
+        fileSystem = (S3FileSystem) getS3fsProvider().newFileSystem(S3EndpointConstant.S3_GLOBAL_URI_TEST,
+                ImmutableMap.<String, Object>of(S3FileSystemProvider.METADATA_CACHE_TTL, "60000"));
+        reset(client);
+    }
+
+    @Test
+    public void disabledByDefault() throws IOException {
+        S3FileSystem noCache = new S3FileSystem(getS3fsProvider(), null, client, "endpoint");
+        assertFalse(noCache.getMetadataCache().isEnabled());
+
+        assertTrue(Files.exists(noCache.getPath("/bucketA/dir/file")));
+        assertTrue(Files.exists(noCache.getPath("/bucketA/dir/file")));
+
+        verify(client, times(2)).getObjectMetadata("bucketA", "dir/file");
+    }
+
+    @Test
+    public void foundPathsAreCached() throws IOException {
+        assertTrue(Files.exists(fileSystem.getPath("/bucketA/dir/file")));
+        BasicFileAttributes attributes = Files.readAttributes(fileSystem.getPath("/bucketA/dir/file"), BasicFileAttributes.class);
+
+        assertEquals(7L, attributes.size());
+        verify(client, times(1)).getObjectMetadata("bucketA", "dir/file");
+        verify(client, times(1)).getObjectAcl("bucketA", "dir/file");
+    }
+
+    @Test
+    public void missingPathsAreNotCached() throws IOException {
+        assertFalse(Files.exists(fileSystem.getPath("/bucketA/dir/missing")));
+        assertFalse(Files.exists(fileSystem.getPath("/bucketA/dir/missing")));
+
+        verify(client, times(2)).getObjectMetadata("bucketA", "dir/missing");
+    }
+
+    @Test
+    public void expiredEntriesAreLoadedAgain() {
+        S3MetadataCache cache = spy(new S3MetadataCache(1000, null));
+        S3Path path = fileSystem.getPath("/bucketA/dir/file");
+        doReturn(0L).when(cache).getCurrentTime();
+        cache.put(path, new S3ObjectSummary(), cache.generation());
+
+        doReturn(1000L).when(cache).getCurrentTime();
+        assertNotNull(cache.get(path));
+        doReturn(1001L).when(cache).getCurrentTime();
+        assertNull(cache.get(path));
+    }
+
+    @Test
+    public void loadStartedBeforeAChangeIsNotCached() {
+        S3MetadataCache cache = fileSystem.getMetadataCache();
+        S3Path path = fileSystem.getPath("/bucketA/dir/file");
+        long generation = cache.generation();
+        cache.invalidate(fileSystem.getPath("/bucketA/other"));
+        cache.put(path, new S3ObjectSummary(), generation);
+
+        assertNull(cache.get(path));
+    }
+
+    @Test
+    public void writeStoresTheNewSummary() throws IOException {
+        S3Path file = fileSystem.getPath("/bucketA/dir/file");
+        assertEquals(7L, Files.size(file));
+
+        Files.write(file, "new content".getBytes());
+
+        assertEquals(11L, Files.size(fileSystem.getPath("/bucketA/dir/file")));
+        assertFalse(Files.exists(fileSystem.getPath("/bucketA/dir/new")));
+        Files.write(fileSystem.getPath("/bucketA/dir/new"), "abc".getBytes());
+        assertEquals(3L, Files.size(fileSystem.getPath("/bucketA/dir/new")));
+        verify(client, times(1)).getObjectMetadata("bucketA", "dir/file");
+        verify(client, times(1)).getObjectMetadata("bucketA", "dir/new");
+    }
+
+    @Test
+    public void writeWithFileChannelStoresTheNewSummary() throws IOException {
+        S3Path file = fileSystem.getPath("/bucketA/dir/file");
+        assertEquals(7L, Files.size(file));
+
+        try (FileChannel channel = fileSystem.provider().newFileChannel(file,
+                EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            channel.write(ByteBuffer.wrap("12345".getBytes()));
+        }
+
+        assertEquals(5L, Files.size(fileSystem.getPath("/bucketA/dir/file")));
+        verify(client, times(1)).getObjectMetadata("bucketA", "dir/file");
+    }
+
+    @Test
+    public void deleteForgetsThePathAndItsParents() throws IOException {
+        S3Path file = fileSystem.getPath("/bucketA/dir2/child");
+        assertTrue(Files.exists(file));
+        // dir2 is a virtual directory, resolved with the summary of dir2/child
+        assertTrue(Files.isDirectory(fileSystem.getPath("/bucketA/dir2")));
+
+        Files.delete(fileSystem.getPath("/bucketA/dir2/child"));
+
+        assertFalse(Files.exists(fileSystem.getPath("/bucketA/dir2/child")));
+        assertFalse(Files.exists(fileSystem.getPath("/bucketA/dir2")));
+    }
+
+    @Test
+    public void createDirectoryForgetsThePath() throws IOException {
+        assertTrue(Files.exists(fileSystem.getPath("/bucketA/dir2")));
+        Files.delete(fileSystem.getPath("/bucketA/dir2/child"));
+        Files.createDirectory(fileSystem.getPath("/bucketA/dir2"));
+
+        assertTrue(Files.isDirectory(fileSystem.getPath("/bucketA/dir2")));
+    }
+
+    @Test
+    public void copyAndMoveForgetTheTarget() throws IOException {
+        S3Path target = fileSystem.getPath("/bucketA/dir2/child");
+        assertEquals(1L, Files.size(target));
+
+        Files.copy(fileSystem.getPath("/bucketA/dir/file"), target, StandardCopyOption.REPLACE_EXISTING);
+        assertEquals(7L, Files.size(fileSystem.getPath("/bucketA/dir2/child")));
+
+        Files.move(target, fileSystem.getPath("/bucketA/dir/moved"));
+        assertFalse(Files.exists(fileSystem.getPath("/bucketA/dir2/child")));
+        assertEquals(7L, Files.size(fileSystem.getPath("/bucketA/dir/moved")));
+    }
+
+    @Test
+    public void setTimesForgetsThePath() throws IOException {
+        S3Path file = fileSystem.getPath("/bucketA/dir/file");
+        Files.getLastModifiedTime(file);
+
+        assertNotNull(fileSystem.getMetadataCache().get(file));
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+
+        assertNull(fileSystem.getMetadataCache().get(file));
+        Files.getLastModifiedTime(fileSystem.getPath("/bucketA/dir/file"));
+        // the first read, the copy in place and the read after the change
+        verify(client, times(3)).getObjectMetadata("bucketA", "dir/file");
+    }
+
+    @Test
+    public void directoriesAreCached() throws IOException {
+        assertTrue(Files.isDirectory(fileSystem.getPath("/bucketA/dir2")));
+        assertTrue(Files.isDirectory(fileSystem.getPath("/bucketA/dir2")));
+
+        verify(client, times(1)).getObjectMetadata(anyString(), anyString());
+        verify(client, times(1)).listObjects(any(ListObjectsRequest.class));
+    }
+}
@@ -0,0 +1,131 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.Md5Utils;
+import com.google.common.collect.ImmutableMap;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.S3EndpointConstant;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class S3OpenOptionTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+    private S3FileSystem fileSystem;
+    private S3Path file;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        client.bucket("bucketA").file("file", "content".getBytes());
+        fileSystem = (S3FileSystem) getS3fsProvider().newFileSystem(S3EndpointConstant.S3_GLOBAL_URI_TEST, null);
+        file = fileSystem.getPath("/bucketA/file");
+    }
+
+    @Test
+    public void readWithTheSameETag() throws IOException {
+        try (InputStream in = Files.newInputStream(file, S3OpenOption.ifMatch(eTag("content")))) {
+            assertArrayEquals("content".getBytes(), IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readWithOtherETagFails() throws IOException {
+        Files.newInputStream(file, S3OpenOption.ifMatch(eTag("other content")));
+    }
+
+    @Test(expected = IOException.class)
+    public void byteChannelWithOtherETagFails() throws IOException {
+        Files.newByteChannel(file, StandardOpenOption.READ, S3OpenOption.ifMatch(eTag("other content")));
+    }
+
+    @Test
+    public void readAVersion() throws IOException {
+        reset(client);
+        try (InputStream in = Files.newInputStream(file, S3OpenOption.versionId("v1"))) {
+            in.read();
+        }
+
+        verify(client).getObject(argThat(new ArgumentMatcher<GetObjectRequest>() {
+            @Override
+            public boolean matches(Object argument) {
+                return "v1".equals(((GetObjectRequest) argument).getVersionId());
+            }
+        }));
+    }
+
+    @Test
+    public void rangedReadsPinTheFirstETag() throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ, StandardOpenOption.SPARSE)) {
+            assertTrue(channel instanceof S3RangeBasedSeekableByteChannel);
+            ByteBuffer buffer = ByteBuffer.allocate(3);
+            assertEquals(0, channel.read(buffer));
+            assertArrayEquals("con".getBytes(), buffer.array());
+
+            // overwritten by another client
+            Files.write(client.bucket("bucketA").resolve("file"), "changed".getBytes());
+            try {
+                channel.read(ByteBuffer.allocate(3));
+                fail("the object has changed");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("has changed"));
+            }
+        }
+    }
+
+    @Test
+    public void rangedReadsWithAPinnedETag() throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ, StandardOpenOption.SPARSE,
+                S3OpenOption.ifMatch(eTag("content")))) {
+            assertTrue(channel instanceof S3RangeBasedSeekableByteChannel);
+            ByteBuffer buffer = ByteBuffer.allocate(7);
+            assertEquals(0, channel.read(buffer));
+            assertArrayEquals("content".getBytes(), buffer.array());
+        }
+    }
+
+    @Test
+    public void immutableObjectsAreCachedForever() throws IOException {
+        fileSystem.close();
+        fileSystem = (S3FileSystem) getS3fsProvider().newFileSystem(S3EndpointConstant.S3_GLOBAL_URI_TEST,
+                ImmutableMap.<String, Object>of(S3FileSystemProvider.IMMUTABLE_OBJECTS, "true"));
+        assertTrue(fileSystem.isImmutableObjects());
+        assertTrue(fileSystem.getMetadataCache().isEnabled());
+        reset(client);
+
+        assertTrue(Files.exists(fileSystem.getPath("/bucketA/file")));
+        assertTrue(Files.exists(fileSystem.getPath("/bucketA/file")));
+
+        verify(client, times(1)).getObjectMetadata("bucketA", "file");
+    }
+
+    @Test
+    public void equality() {
+        assertEquals(S3OpenOption.ifMatch("a"), S3OpenOption.ifMatch("a"));
+        assertEquals(S3OpenOption.ifMatch("a").hashCode(), S3OpenOption.ifMatch("a").hashCode());
+        assertNotEquals(S3OpenOption.ifMatch("a"), S3OpenOption.versionId("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void eTagIsMandatory() {
+        S3OpenOption.ifMatch(null);
+    }
+
+    private static String eTag(String content) {
+        return BinaryUtils.toHex(Md5Utils.computeMD5Hash(content.getBytes()));
+    }
+}
@@ -0,0 +1,156 @@
+package com.upplication.s3fs;
+
+import com.upplication.s3fs.util.S3EndpointConstant;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+public class S3PathMatcherTest extends S3UnitTestBase {
+
+    private S3FileSystem fileSystem;
+
+    @Before
+    public void setup() throws IOException {
+        fileSystem = (S3FileSystem) FileSystems.newFileSystem(S3EndpointConstant.S3_GLOBAL_URI_TEST, null);
+    }
+
+    @Test
+    public void globStarDoesntCrossDirectories() {
+        S3PathMatcher matcher = new S3PathMatcher("glob:*.gz");
+
+        assertTrue(matcher.matches("file.gz"));
+        assertTrue(matcher.matches(".gz"));
+        assertFalse(matcher.matches("dir/file.gz"));
+        assertFalse(matcher.matches("file.gzip"));
+    }
+
+    @Test
+    public void globDoubleStarCrossesDirectories() {
+        S3PathMatcher matcher = new S3PathMatcher("glob:logs/**.gz");
+
+        assertTrue(matcher.matches("logs/file.gz"));
+        assertTrue(matcher.matches("logs/2026/10/file.gz"));
+        assertFalse(matcher.matches("other/file.gz"));
+    }
+
+    @Test
+    public void globQuestionMarkBracketsAndGroups() {
+        assertTrue(new S3PathMatcher("glob:file?.txt").matches("file1.txt"));
+        assertFalse(new S3PathMatcher("glob:file?.txt").matches("file/.txt"));
+        assertTrue(new S3PathMatcher("glob:file[0-9].txt").matches("file7.txt"));
+        assertFalse(new S3PathMatcher("glob:file[!0-9].txt").matches("file7.txt"));
+        assertTrue(new S3PathMatcher("glob:file[!0-9].txt").matches("fileA.txt"));
+        assertTrue(new S3PathMatcher("glob:*.{gz,txt}").matches("file.txt"));
+        assertTrue(new S3PathMatcher("glob:*.{gz,txt}").matches("file.gz"));
+        assertFalse(new S3PathMatcher("glob:*.{gz,txt}").matches("file.zip"));
+    }
+
+    @Test
+    public void globEscapesAndRegexCharacters() {
+        assertTrue(new S3PathMatcher("glob:file\\*.txt").matches("file*.txt"));
+        assertFalse(new S3PathMatcher("glob:file\\*.txt").matches("file1.txt"));
+        assertTrue(new S3PathMatcher("glob:a+b(c).txt").matches("a+b(c).txt"));
+        assertFalse(new S3PathMatcher("glob:a.txt").matches("abtxt"));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void globWithUnclosedGroup() {
+        new S3PathMatcher("glob:*.{gz,txt");
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void globWithUnclosedBracket() {
+        new S3PathMatcher("glob:file[0-9.txt");
+    }
+
+    @Test
+    public void regex() {
+        S3PathMatcher matcher = new S3PathMatcher("regex:part-[0-9]+\\.gz");
+
+        assertTrue(matcher.matches("part-12.gz"));
+        assertFalse(matcher.matches("part-.gz"));
+    }
+
+    @Test
+    public void literalPrefixes() {
+        assertEquals("logs/2026-10-", new S3PathMatcher("glob:logs/2026-10-*/part-*.gz").getLiteralPrefix());
+        assertEquals("file*", new S3PathMatcher("glob:file\\*{1,2}").getLiteralPrefix());
+        assertEquals("", new S3PathMatcher("glob:*.gz").getLiteralPrefix());
+        assertEquals("part-", new S3PathMatcher("regex:part-[0-9]+").getLiteralPrefix());
+        assertEquals("par", new S3PathMatcher("regex:part?-1").getLiteralPrefix());
+        assertEquals("part", new S3PathMatcher("regex:part+-1").getLiteralPrefix());
+        assertEquals("", new S3PathMatcher("regex:part|other").getLiteralPrefix());
+    }
+
+    @Test
+    public void multiLevel() {
+        assertTrue(new S3PathMatcher("glob:logs/*.gz").isMultiLevel());
+        assertTrue(new S3PathMatcher("glob:**.gz").isMultiLevel());
+        assertFalse(new S3PathMatcher("glob:*.gz").isMultiLevel());
+        assertTrue(new S3PathMatcher("regex:logs/.*").isMultiLevel());
+        assertFalse(new S3PathMatcher("regex:.*").isMultiLevel());
+    }
+
+    @Test
+    public void matchesPaths() {
+        PathMatcher absolute = fileSystem.getPathMatcher("glob:/bucketA/dir/*.txt");
+        assertTrue(absolute.matches(fileSystem.getPath("/bucketA/dir/file.txt")));
+        assertFalse(absolute.matches(fileSystem.getPath("/bucketB/dir/file.txt")));
+
+        PathMatcher directory = fileSystem.getPathMatcher("glob:/bucketA/di?");
+        assertTrue(directory.matches(fileSystem.getPath("/bucketA/dir/")));
+
+        PathMatcher relative = fileSystem.getPathMatcher("glob:dir/*.txt");
+        assertTrue(relative.matches(fileSystem.getPath("dir/file.txt")));
+        assertFalse(relative.matches(fileSystem.getPath("/bucketA/dir/file.txt")));
+    }
+
+    @Test
+    public void acceptsByFileName() throws IOException {
+        S3PathMatcher matcher = (S3PathMatcher) fileSystem.getPathMatcher("glob:*.txt");
+
+        assertTrue(matcher.accept(fileSystem.getPath("/bucketA/dir/file.txt")));
+        assertFalse(matcher.accept(fileSystem.getPath("/bucketA/dir/file.gz")));
+        assertFalse(matcher.accept(fileSystem.getPath("/bucketA")));
+    }
+
+    @Test
+    public void acceptsByPathRelativeToTheDirectory() {
+        S3PathMatcher matcher = (S3PathMatcher) fileSystem.getPathMatcher("glob:dir/*.txt");
+        S3Path bucket = (S3Path) fileSystem.getPath("/bucketA");
+        S3Path dir = (S3Path) fileSystem.getPath("/bucketA/dir/");
+
+        assertTrue(matcher.accept(bucket, (S3Path) fileSystem.getPath("/bucketA/dir/file.txt")));
+        assertFalse(matcher.accept(bucket, (S3Path) fileSystem.getPath("/bucketA/other/file.txt")));
+        assertFalse(matcher.accept(dir, (S3Path) fileSystem.getPath("/bucketA/dir/file.txt")));
+        assertTrue(((S3PathMatcher) fileSystem.getPathMatcher("glob:*.txt")).accept(dir, (S3Path) fileSystem.getPath("/bucketA/dir/file.txt")));
+        assertTrue(((S3PathMatcher) fileSystem.getPathMatcher("glob:d?r")).accept(bucket, (S3Path) fileSystem.getPath("/bucketA/dir/")));
+        assertFalse(((S3PathMatcher) fileSystem.getPathMatcher("glob:**")).accept(dir, dir));
+    }
+
+    @Test
+    public void patternWithoutWildcardsIsItsLiteralPrefix() {
+        S3PathMatcher file = (S3PathMatcher) fileSystem.getPathMatcher("glob:part-1.gz");
+        S3PathMatcher directory = (S3PathMatcher) fileSystem.getPathMatcher("glob:sub");
+        S3Path dir = (S3Path) fileSystem.getPath("/bucketA/dir");
+
+        assertEquals("part-1.gz", file.getLiteralPrefix());
+        assertFalse(file.isMultiLevel());
+        assertTrue(file.accept(dir, (S3Path) fileSystem.getPath("/bucketA/dir/part-1.gz")));
+        assertFalse(file.accept(dir, (S3Path) fileSystem.getPath("/bucketA/dir/part-1.gz.md5")));
+        assertTrue(directory.accept(dir, (S3Path) fileSystem.getPath("/bucketA/dir/sub/")));
+        assertFalse(directory.accept(dir, (S3Path) fileSystem.getPath("/bucketA/dir/sub/file")));
+    }
+
+    @Test
+    public void syntaxIsCaseInsensitive() {
+        assertTrue(new S3PathMatcher("GLOB:*.txt").matches("a.txt"));
+        assertTrue(new S3PathMatcher("Regex:a.*").matches("abc"));
+    }
+}
@@ -0,0 +1,173 @@
+package com.upplication.s3fs;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.AmazonS3MockFactory;
+import com.upplication.s3fs.util.ListingEngine;
+import com.upplication.s3fs.util.MockBucket;
+import com.upplication.s3fs.util.SplittableListing;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class SplittableListingTest extends S3UnitTestBase {
+
+    private AmazonS3ClientMock client;
+
+    @Before
+    public void setup() throws IOException {
+        client = AmazonS3MockFactory.getAmazonClientMock();
+        MockBucket bucket = client.bucket("bucketA");
+        bucket.dir("dir", "dir/b").file("dir/0file", "dir/a/file1", "dir/a/file2", "dir/b/file3", "dir/c/d/file4",
+                "dir/d", "dir/e/file5", "dir/f/file6", "other/file7");
+    }
+
+    @Test
+    public void withoutSplitsListsEverythingInKeyOrder() {
+        S3FileSystem fileSystem = fileSystem(1);
+        List<String> keys = keys(provider(fileSystem).newSplittableListing(fileSystem.getPath("/bucketA/dir")));
+
+        assertEquals(serialKeys("dir/"), keys);
+    }
+
+    @Test
+    public void splitsAtTheCommonPrefixes() {
+        for (int version = 1; version <= 2; version++) {
+            S3FileSystem fileSystem = fileSystem(version);
+            List<SplittableListing> parts = new ArrayList<>();
+            parts.add(provider(fileSystem).newSplittableListing(fileSystem.getPath("/bucketA/dir")));
+            splitAll(parts);
+
+            // dir/a/, dir/b/, dir/c/, dir/e/ and dir/f/ split the range in six parts
+            assertEquals(6, parts.size());
+            List<String> keys = new ArrayList<>();
+            for (SplittableListing part : parts) {
+                List<String> partKeys = keys(part);
+                List<String> sorted = new ArrayList<>(partKeys);
+                Collections.sort(sorted);
+                assertEquals(sorted, partKeys);
+                keys.addAll(partKeys);
+            }
+            Collections.sort(keys);
+            assertEquals(serialKeys("dir/"), keys);
+        }
+    }
+
+    @Test
+    public void partsAreListedIndependently() throws Exception {
+        S3FileSystem fileSystem = fileSystem(2);
+        SplittableListing first = provider(fileSystem).newSplittableListing(fileSystem.getPath("/bucketA/dir"));
+        final SplittableListing second = first.trySplit();
+        assertNotNull(second);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<String>> secondKeys = executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    return keys(second);
+                }
+            });
+            List<String> keys = keys(first);
+            keys.addAll(secondKeys.get());
+            assertEquals(serialKeys("dir/"), keys);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void splitsTheRemainingPagesWithoutCommonPrefixes() throws IOException {
+        MockBucket bucket = client.bucket("bucketB");
+        for (int i = 0; i < 2500; i++) {
+            bucket.file(String.format("file-%04d", i));
+        }
+        S3FileSystem fileSystem = fileSystem(1);
+        SplittableListing first = provider(fileSystem).newSplittableListing(fileSystem.getPath("/bucketB/"));
+
+        assertNull(first.trySplit());
+        assertEquals(Long.MAX_VALUE, first.estimateSize());
+        assertEquals("file-0000", first.next().getKey());
+        assertEquals(1999, first.estimateSize());
+
+        SplittableListing second = first.trySplit();
+        assertNotNull(second);
+        assertEquals("file-0999", first.getLast());
+        assertEquals(999, first.estimateSize());
+        reset(client);
+
+        assertEquals(999, keys(first).size());
+        verify(client, never()).listNextBatchOfObjects(any(ObjectListing.class));
+        List<String> secondKeys = keys(second);
+        assertEquals(1500, secondKeys.size());
+        assertEquals("file-1000", secondKeys.get(0));
+        assertEquals(0, second.estimateSize());
+    }
+
+    @Test
+    public void splitOfAFinishedListing() {
+        S3FileSystem fileSystem = fileSystem(2);
+        SplittableListing listing = provider(fileSystem).newSplittableListing(fileSystem.getPath("/bucketA/other"));
+        keys(listing);
+
+        assertNull(listing.trySplit());
+        assertEquals(0, listing.estimateSize());
+    }
+
+    private S3FileSystem fileSystem(int version) {
+        Properties props = new Properties();
+        props.setProperty(S3FileSystemProvider.LISTING_VERSION, String.valueOf(version));
+        return new S3FileSystem(getS3fsProvider(), null, client, "endpoint", props);
+    }
+
+    private static S3FileSystemProvider provider(S3FileSystem fileSystem) {
+        return (S3FileSystemProvider) fileSystem.provider();
+    }
+
+    private static void splitAll(List<SplittableListing> parts) {
+        for (int i = 0; i < parts.size(); i++) {
+            SplittableListing split;
+            while ((split = parts.get(i).trySplit()) != null) {
+                parts.add(i + 1, split);
+            }
+        }
+    }
+
+    private List<String> serialKeys(String prefix) {
+        List<String> keys = new ArrayList<>();
+        ObjectListing page = ListingEngine.V1.list(client, new ListObjectsRequest("bucketA", prefix, null, null, null), null);
+        while (true) {
+            for (S3ObjectSummary summary : page.getObjectSummaries()) {
+                keys.add(summary.getKey());
+            }
+            if (!page.isTruncated())
+                break;
+            page = ListingEngine.V1.next(client, page);
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static List<String> keys(SplittableListing listing) {
+        List<String> keys = new ArrayList<>();
+        while (listing.hasNext()) {
+            keys.add(listing.next().getKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,111 @@
+package com.upplication.s3fs.spike;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.Owner;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.S3FileSystem;
+import com.upplication.s3fs.S3FileSystemProvider;
+import com.upplication.s3fs.S3Iterator;
+import com.upplication.s3fs.S3Path;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Timing harness of the cost of parsing one listing page in {@link S3Iterator}: a synthetic page of objects is
+ * returned by a mocked client, so only the parsing is measured, not the requests. It prints the time and the bytes
+ * allocated per entry, for the first level listing and the incremental one (that adds the parent directories too).
+ * <p>
+ * Not a test, run it from the test classpath with the sizes of the pages as arguments:
+ * <pre>
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) com.upplication.s3fs.spike.ListingPageBenchmark 1000 10000
+ * </pre>
+ */
+public class ListingPageBenchmark {
+
+    private static final int FILES_PER_DIRECTORY = 100;
+    private static final long MEASURE_NANOS = 2000000000L;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[]{1000, 10000};
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        for (int size : sizes) {
+            S3FileSystem fileSystem = fileSystem(page(size));
+            S3Path dir = fileSystem.getPath("/bucket/dir/");
+            measure("first level ", dir, false, size);
+            measure("incremental ", dir, true, size);
+        }
+    }
+
+    private static void measure(String name, S3Path dir, boolean incremental, int size) {
+        // warm up for MEASURE_NANOS, then measure the runs of MEASURE_NANOS at least
+        long end = System.nanoTime() + MEASURE_NANOS;
+        while (System.nanoTime() < end) {
+            list(dir, incremental);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int runs = 0;
+        long entries = 0;
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            entries += list(dir, incremental);
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while (runs < 3 || elapsed < MEASURE_NANOS);
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        System.out.println(String.format("%s page of %6d objects, %6d paths: %8.1f ns/object %8.1f bytes/object",
+                name, size, entries / runs, (double) elapsed / runs / size, (double) allocated / runs / size));
+    }
+
+    private static int list(S3Path dir, boolean incremental) {
+        int count = 0;
+        S3Iterator iterator = new S3Iterator(dir, incremental);
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return ObjectListing not truncated with the objects of directories of FILES_PER_DIRECTORY files below dir/,
+     * and one file of dir/ for each directory
+     */
+    private static ObjectListing page(int size) {
+        ObjectListing listing = new ObjectListing();
+        listing.setBucketName("bucket");
+        listing.setPrefix("dir/");
+        Owner owner = new Owner("1", "owner");
+        Date lastModified = new Date();
+        for (int i = 0; i < size; i++) {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName("bucket");
+            summary.setKey(i % FILES_PER_DIRECTORY == 0 ? "dir/file" + i : "dir/sub" + i / FILES_PER_DIRECTORY + "/file" + i);
+            summary.setSize(i);
+            summary.setETag("etag" + i);
+            summary.setLastModified(lastModified);
+            summary.setOwner(owner);
+            summary.setStorageClass("STANDARD");
+            listing.getObjectSummaries().add(summary);
+        }
+        return listing;
+    }
+
+    private static S3FileSystem fileSystem(ObjectListing page) {
+        AmazonS3 client = mock(AmazonS3.class);
+        doReturn(page).when(client).listObjects(any(ListObjectsRequest.class));
+        return new S3FileSystem(new S3FileSystemProvider(), null, client, "endpoint");
+    }
+}
@@ -18,18 +18,24 @@ package com.upplication.s3fs.util;
  */
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.file.FileSystemException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
@@ -42,6 +48,10 @@ import com.amazonaws.services.s3.S3ClientOptions;
 import com.amazonaws.services.s3.S3ResponseMetadata;
 import com.amazonaws.services.s3.model.*;
 import com.amazonaws.services.s3.waiters.AmazonS3Waiters;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.Md5Utils;
 import com.amazonaws.util.StringUtils;
 import org.apache.http.MethodNotSupportedException;
 
@@ -63,6 +73,13 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
 
     private Path base;
     private Map<String, Owner> bucketOwners = new HashMap<>();
+    /** list the objects with the md5 of their content as ETag */
+    private volatile boolean eTagsInListings;
+    /** user metadata set by a copy with new metadata, by bucket and key */
+    private Map<String, Map<String, String>> userMetadata = new ConcurrentHashMap<>();
+    private Map<String, ObjectMetadata> multipartMetadata = new ConcurrentHashMap<>();
+    /** parts of the multipart uploads in progress by upload id */
+    private Map<String, SortedMap<Integer, byte[]>> multipartUploads = new ConcurrentHashMap<>();
 
     public AmazonS3ClientMock(Path base) {
         this.base = base;
@@ -89,8 +106,8 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
         final TreeMap<String, S3Element> elems = new TreeMap<>();
         try {
             for (Path elem : Files.newDirectoryStream(bucket)) {
-                S3Element element = parse(elem, bucket);
-                if (!elems.containsKey(element.getS3Object().getKey()))
+                S3Element element = parseIfExists(elem, bucket);
+                if (element != null && !elems.containsKey(element.getS3Object().getKey()))
                     elems.put(element.getS3Object().getKey(), element);
             }
         } catch (IOException e) {
@@ -104,11 +121,9 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
             if (elem.getS3Object().getKey().equals("/"))
                 continue;
             String key = elem.getS3Object().getKey();
-            if (waitForMarker) {
-                waitForMarker = !key.startsWith(marker);
-                if (waitForMarker)
-                    continue;
-            }
+            // like S3 the marker is exclusive
+            if (waitForMarker && key.compareTo(marker) <= 0)
+                continue;
 
             if (prefix != null && key.startsWith(prefix)) {
                 int beginIndex = key.indexOf(prefix) + prefix.length();
@@ -152,9 +167,66 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
         return null;
     }
 
+    /**
+     * list the objects in key order, starting after the startAfter key or the continuation token (the last key of the
+     * previous page) and grouping the keys with the delimiter in common prefixes
+     */
     @Override
     public ListObjectsV2Result listObjectsV2(ListObjectsV2Request listObjectsV2Request) throws AmazonClientException {
-        return null;
+        String bucketName = listObjectsV2Request.getBucketName();
+        String prefix = listObjectsV2Request.getPrefix() != null ? listObjectsV2Request.getPrefix() : "";
+        String delimiter = listObjectsV2Request.getDelimiter();
+        String after = listObjectsV2Request.getContinuationToken() != null ? listObjectsV2Request.getContinuationToken() : listObjectsV2Request.getStartAfter();
+        int maxKeys = listObjectsV2Request.getMaxKeys() != null ? listObjectsV2Request.getMaxKeys() : LIMIT_AWS_MAX_ELEMENTS;
+
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(bucketName);
+        result.setPrefix(listObjectsV2Request.getPrefix());
+        result.setDelimiter(delimiter);
+        result.setStartAfter(listObjectsV2Request.getStartAfter());
+        result.setContinuationToken(listObjectsV2Request.getContinuationToken());
+        result.setMaxKeys(maxKeys);
+
+        final Path bucket = find(bucketName);
+        TreeMap<String, S3Element> elems = new TreeMap<>();
+        try {
+            for (Path elem : Files.newDirectoryStream(bucket)) {
+                S3Element element = parseIfExists(elem, bucket);
+                if (element != null && !elems.containsKey(element.getS3Object().getKey()))
+                    elems.put(element.getS3Object().getKey(), element);
+            }
+        } catch (IOException e) {
+            throw new AmazonClientException(e);
+        }
+
+        int count = 0;
+        String last = null;
+        String currentPrefix = null;
+        for (Map.Entry<String, S3Element> entry : (after != null ? elems.tailMap(after, false) : elems).entrySet()) {
+            String key = entry.getKey();
+            if (key.equals("/") || !key.startsWith(prefix))
+                continue;
+            if (currentPrefix != null && key.startsWith(currentPrefix)) {
+                last = key;
+                continue;
+            }
+            if (count == maxKeys) {
+                result.setTruncated(true);
+                result.setNextContinuationToken(last);
+                break;
+            }
+            String rest = key.substring(prefix.length());
+            if (delimiter != null && !delimiter.isEmpty() && rest.contains(delimiter)) {
+                currentPrefix = prefix + rest.substring(0, rest.indexOf(delimiter) + delimiter.length());
+                result.getCommonPrefixes().add(currentPrefix);
+            } else {
+                result.getObjectSummaries().add(parseToS3ObjectSummary(entry.getValue()));
+            }
+            last = key;
+            count++;
+        }
+        result.setKeyCount(count);
+        return result;
     }
 
     @Override
@@ -173,7 +245,9 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
         List<S3Element> elems = new ArrayList<>();
         try {
             for (Path elem : Files.newDirectoryStream(bucket)) {
-                elems.add(parse(elem, bucket));
+                S3Element element = parseIfExists(elem, bucket);
+                if (element != null)
+                    elems.add(element);
             }
         } catch (IOException e) {
             throw new AmazonClientException(e);
@@ -193,7 +267,7 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
 
             S3Element elem = iterator.next();
 
-            if (!continueElement && elem.getS3Object().getKey().equals(previousObjectListing.getNextMarker())) {
+            if (!continueElement && elem.getS3Object().getKey().compareTo(previousObjectListing.getNextMarker()) >= 0) {
                 continueElement = true;
             }
 
@@ -237,10 +311,25 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
         s3ObjectSummary.setLastModified(objectMetadata.getLastModified());
         s3ObjectSummary.setOwner(getOwner(s3Object.getBucketName()));
         s3ObjectSummary.setETag(objectMetadata.getETag());
+        if (eTagsInListings && s3Object.getObjectContent() != null) {
+            try (InputStream in = s3Object.getObjectContent()) {
+                // the md5 of the content, like a single part upload
+                s3ObjectSummary.setETag(BinaryUtils.toHex(Md5Utils.computeMD5Hash(IOUtils.toByteArray(in))));
+            } catch (IOException e) {
+                throw new AmazonServiceException("Problem getting Mock Object: ", e);
+            }
+        }
         s3ObjectSummary.setSize(objectMetadata.getContentLength());
         return s3ObjectSummary;
     }
 
+    /**
+     * @param eTagsInListings boolean true to list the objects with the md5 of their content as ETag, like S3
+     */
+    public void setETagsInListings(boolean eTagsInListings) {
+        this.eTagsInListings = eTagsInListings;
+    }
+
     private Owner getOwner(String bucketName) {
         if (!bucketOwners.containsKey(bucketName))
             return defaultOwner;
@@ -406,11 +495,13 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
 
     @Override
     public void deleteObject(String bucketName, String key) throws AmazonClientException {
+        userMetadata.remove(bucketName + "/" + key);
         Path bucket = find(bucketName);
         Path resolve = bucket.resolve(key);
+        // like S3, deleting a missing object (maybe deleted at the same time by another request) is not an error
         if (Files.exists(resolve))
             try {
-                Files.delete(resolve);
+                deleteIfExists(resolve);
             } catch (IOException e) {
                 throw new AmazonServiceException("Problem deleting mock object: ", e);
             }
@@ -418,13 +509,34 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
             resolve = bucket.resolve(key.replaceAll("/", "%2F"));
             if (Files.exists(resolve))
                 try {
-                    Files.delete(resolve);
+                    deleteIfExists(resolve);
                 } catch (IOException e) {
                     throw new AmazonServiceException("Problem deleting mock object: ", e);
                 }
         }
     }
 
+    /**
+     * the memory fileSystem refuses to delete a file that is being read (by a listing running at the same time),
+     * S3 does not: try again for a while
+     */
+    private static void deleteIfExists(Path path) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Files.deleteIfExists(path);
+                return;
+            } catch (FileSystemException e) {
+                if (!"file still open".equals(e.getReason()) || attempt == 100)
+                    throw e;
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
     private S3Element parse(InputStream stream, String bucketName, String key) {
         try (S3Object object = new S3Object()){
             object.setBucketName(bucketName);
@@ -445,6 +557,23 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
         }
     }
 
+    /**
+     * like S3, the objects deleted while they are listed are not returned
+     *
+     * @return S3Element or null if the path does not exist anymore
+     */
+    private S3Element parseIfExists(Path elem, Path bucket) throws IOException {
+        try {
+            return parse(elem, bucket);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof NoSuchFileException)
+                return null;
+            throw e;
+        }
+    }
+
     private S3Element parse(Path elem, Path bucket) throws IOException {
         S3Object object = new S3Object();
 
@@ -456,6 +585,9 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
         object.setKey(key);
 
         ObjectMetadata metadata = new ObjectMetadata();
+        Map<String, String> stored = userMetadata.get(bucketName + "/" + key);
+        if (stored != null)
+            metadata.setUserMetadata(new HashMap<>(stored));
         BasicFileAttributes attr = Files.readAttributes(elem, BasicFileAttributes.class);
         metadata.setLastModified(new Date(attr.lastAccessTime().toMillis()));
         if (dir) {
@@ -610,6 +742,21 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
                     }
                     return FileVisitResult.CONTINUE;
                 }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    // deleted at the same time by another request
+                    if (exc instanceof NoSuchFileException)
+                        return FileVisitResult.CONTINUE;
+                    throw exc;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null && !(exc instanceof NoSuchFileException))
+                        throw exc;
+                    return FileVisitResult.CONTINUE;
+                }
             });
             if (!matches.isEmpty())
                 return matches.iterator().next();
@@ -706,7 +853,12 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
 
     @Override
     public HeadBucketResult headBucket(HeadBucketRequest headBucketRequest) throws AmazonClientException {
-        return null;
+        if (!Files.exists(base.resolve(headBucketRequest.getBucketName()))) {
+            AmazonS3Exception amazonS3Exception = new AmazonS3Exception("bucket not found: " + headBucketRequest.getBucketName());
+            amazonS3Exception.setStatusCode(404);
+            throw amazonS3Exception;
+        }
+        return new HeadBucketResult();
     }
 
     public MockBucket bucket(String bucketName) throws IOException {
@@ -766,6 +918,7 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
     }
 
     public void clear() {
+        userMetadata.clear();
         try {
             Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
                 @Override
@@ -934,7 +1087,31 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
 
     @Override
     public S3Object getObject(GetObjectRequest getObjectRequest) throws AmazonClientException {
-        throw new UnsupportedOperationException();
+        S3Object object = getObject(getObjectRequest.getBucketName(), getObjectRequest.getKey());
+        if (object.getObjectContent() == null)
+            return object;
+        byte[] content;
+        try (InputStream in = object.getObjectContent()) {
+            content = IOUtils.toByteArray(in);
+        } catch (IOException e) {
+            throw new AmazonServiceException("Problem getting Mock Object: ", e);
+        }
+        // the ETag is the md5 of the content, like a single part upload
+        String eTag = BinaryUtils.toHex(Md5Utils.computeMD5Hash(content));
+        object.getObjectMetadata().setHeader(Headers.ETAG, eTag);
+        List<String> matchingETags = getObjectRequest.getMatchingETagConstraints();
+        if (!matchingETags.isEmpty() && !matchingETags.contains(eTag)) {
+            // like the client: null when the constraints are not met
+            return null;
+        }
+        long[] range = getObjectRequest.getRange();
+        if (range != null) {
+            int start = (int) Math.min(range[0], content.length);
+            int end = (int) Math.min(range[1] + 1, content.length);
+            content = Arrays.copyOfRange(content, start, end);
+        }
+        object.setObjectContent(new ByteArrayInputStream(content));
+        return object;
     }
 
     @Override
@@ -955,7 +1132,9 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
     @Override
     public PutObjectResult putObject(PutObjectRequest putObjectRequest) throws AmazonClientException {
         if (putObjectRequest.getBucketName() != null && putObjectRequest.getKey() != null && putObjectRequest.getFile() != null) {
-            return putObject(putObjectRequest.getBucketName(), putObjectRequest.getKey(), putObjectRequest.getFile());
+            PutObjectResult result = putObject(putObjectRequest.getBucketName(), putObjectRequest.getKey(), putObjectRequest.getFile());
+            storeUserMetadata(putObjectRequest.getBucketName(), putObjectRequest.getKey(), putObjectRequest.getMetadata());
+            return result;
         }
         else {
             throw new UnsupportedOperationException();
@@ -969,10 +1148,21 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
             Path bucket = find(request.getDestinationBucketName());
             Path dest = bucket.resolve(request.getDestinationKey().replaceAll("/", "%2F"));
             try {
-                Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING);
+                if (!src.equals(dest))
+                    Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING);
             } catch (IOException e) {
                 throw new AmazonServiceException("Problem copying mock objects: ", e);
             }
+            if (request.getNewObjectMetadata() != null)
+                storeUserMetadata(request.getDestinationBucketName(), request.getDestinationKey(), request.getNewObjectMetadata());
+            else {
+                String destKey = request.getDestinationBucketName() + "/" + request.getDestinationKey();
+                Map<String, String> metadata = userMetadata.get(request.getSourceBucketName() + "/" + request.getSourceKey());
+                if (metadata != null)
+                    userMetadata.put(destKey, new HashMap<>(metadata));
+                else
+                    userMetadata.remove(destKey);
+            }
 
             return new CopyObjectResult();
         }
@@ -993,7 +1183,34 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
 
     @Override
     public DeleteObjectsResult deleteObjects(DeleteObjectsRequest deleteObjectsRequest) throws AmazonClientException {
-        throw new UnsupportedOperationException();
+        List<DeleteObjectsRequest.KeyVersion> keys = new ArrayList<>(deleteObjectsRequest.getKeys());
+        // the children before the parent directory, that can only be deleted when it is empty
+        Collections.sort(keys, new Comparator<DeleteObjectsRequest.KeyVersion>() {
+            @Override
+            public int compare(DeleteObjectsRequest.KeyVersion first, DeleteObjectsRequest.KeyVersion second) {
+                return second.getKey().compareTo(first.getKey());
+            }
+        });
+        List<DeleteObjectsResult.DeletedObject> deleted = new ArrayList<>();
+        List<MultiObjectDeleteException.DeleteError> errors = new ArrayList<>();
+        for (DeleteObjectsRequest.KeyVersion keyVersion : keys) {
+            try {
+                deleteObject(deleteObjectsRequest.getBucketName(), keyVersion.getKey());
+                DeleteObjectsResult.DeletedObject deletedObject = new DeleteObjectsResult.DeletedObject();
+                deletedObject.setKey(keyVersion.getKey());
+                deleted.add(deletedObject);
+            } catch (AmazonServiceException e) {
+                MultiObjectDeleteException.DeleteError error = new MultiObjectDeleteException.DeleteError();
+                error.setKey(keyVersion.getKey());
+                error.setCode("InternalError");
+                error.setMessage(e.getMessage());
+                errors.add(error);
+            }
+        }
+        List<DeleteObjectsResult.DeletedObject> reported = deleteObjectsRequest.getQuiet() ? new ArrayList<DeleteObjectsResult.DeletedObject>() : deleted;
+        if (!errors.isEmpty())
+            throw new MultiObjectDeleteException(errors, reported);
+        return new DeleteObjectsResult(reported);
     }
 
     @Override
@@ -1221,14 +1438,46 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * like S3, the user metadata of a request replaces the one of the object
+     */
+    private void storeUserMetadata(String bucketName, String key, ObjectMetadata metadata) {
+        if (metadata != null && !metadata.getUserMetadata().isEmpty())
+            userMetadata.put(bucketName + "/" + key, new HashMap<>(metadata.getUserMetadata()));
+        else
+            userMetadata.remove(bucketName + "/" + key);
+    }
+
     @Override
     public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) throws AmazonClientException {
-        throw new UnsupportedOperationException();
+        String uploadId = UUID.randomUUID().toString();
+        multipartUploads.put(uploadId, Collections.synchronizedSortedMap(new TreeMap<Integer, byte[]>()));
+        if (request.getObjectMetadata() != null)
+            multipartMetadata.put(uploadId, request.getObjectMetadata());
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
     }
 
     @Override
     public UploadPartResult uploadPart(UploadPartRequest request) throws AmazonClientException {
-        throw new UnsupportedOperationException();
+        SortedMap<Integer, byte[]> parts = multipartUploads.get(request.getUploadId());
+        if (parts == null)
+            throw new AmazonServiceException("upload not found: " + request.getUploadId());
+        byte[] part = new byte[(int) request.getPartSize()];
+        try (RandomAccessFile file = new RandomAccessFile(request.getFile(), "r")) {
+            file.seek(request.getFileOffset());
+            file.readFully(part);
+        } catch (IOException e) {
+            throw new AmazonServiceException("Problem reading mock part: ", e);
+        }
+        parts.put(request.getPartNumber(), part);
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(BinaryUtils.toHex(Md5Utils.computeMD5Hash(part)));
+        return result;
     }
 
     @Override
@@ -1238,12 +1487,27 @@ public class AmazonS3ClientMock extends AbstractAmazonS3 {
 
     @Override
     public void abortMultipartUpload(AbortMultipartUploadRequest request) throws AmazonClientException {
-        throw new UnsupportedOperationException();
+        multipartUploads.remove(request.getUploadId());
+        multipartMetadata.remove(request.getUploadId());
     }
 
     @Override
     public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) throws AmazonClientException {
-        throw new UnsupportedOperationException();
+        SortedMap<Integer, byte[]> parts = multipartUploads.remove(request.getUploadId());
+        ObjectMetadata metadata = multipartMetadata.remove(request.getUploadId());
+        if (parts == null)
+            throw new AmazonServiceException("upload not found: " + request.getUploadId());
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (PartETag partETag : request.getPartETags()) {
+            byte[] part = parts.get(partETag.getPartNumber());
+            content.write(part, 0, part.length);
+        }
+        persist(request.getBucketName(), parse(new ByteArrayInputStream(content.toByteArray()), request.getBucketName(), request.getKey()));
+        storeUserMetadata(request.getBucketName(), request.getKey(), metadata);
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        return result;
     }
 
     @Override